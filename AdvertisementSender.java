@@ -0,0 +1,202 @@
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class fans out the route updates to all the neighbors.
+ * Neighbors which have acknowledged the same version of our table get the same
+ * routes, so the routes are taken from the table once per distinct version.
+ * Every neighbor gets its own encoding, with the routes through it poisoned
+ * (split horizon with poison reverse), which is cached in a direct buffer of
+ * the neighbor. While our table and the neighbor's base version don't change
+ * the cached fragments are sent again as they are, only the ack in their
+ * header is rewritten. When neighbors need different versions the encodings
+ * run in parallel on a small bounded pool of threads. Datagrams are handed to
+ * the event loop with the pre-resolved address of every neighbor, so no name
+ * lookup is done and the loop records send latency and failures
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class AdvertisementSender {
+
+    // maximum number of threads encoding advertisements
+    public static final int MAX_THREADS = 4;
+
+    // maximum number of encodings waiting for a thread, the caller encodes when it is full
+    public static final int MAX_QUEUED = 256;
+
+    // router whose routes are sent
+    private MyRouter router;
+
+    // event loop which sends the datagrams
+    private RouterEventLoop eventLoop;
+
+    // port number on which the neighbors receive updates
+    private int port;
+
+    // threads encoding advertisements
+    private ThreadPoolExecutor executor;
+
+
+    /**
+     * This constructor initializes the sender
+     * @param router    router whose routes are sent
+     * @param eventLoop event loop which sends the datagrams
+     * @param port      port number on which the neighbors receive updates
+     */
+    public AdvertisementSender(MyRouter router, RouterEventLoop eventLoop, int port) {
+        this.router = router;
+        this.eventLoop = eventLoop;
+        this.port = port;
+        int threads = Math.max(1, Math.min(MAX_THREADS,
+                Runtime.getRuntime().availableProcessors()));
+        this.executor = new ThreadPoolExecutor(threads, threads,
+                30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED),
+                new ThreadFactory() {
+                    private AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "advertisement-sender-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+
+    /**
+     * This method sends the periodic advertisement to every neighbor. Every
+     * neighbor gets the routes changed since the version it has acknowledged
+     */
+    public void sendAdvertisements(){
+        Neighbor[] neighbors = this.router.getNeighbors();
+
+        // grouping the neighbors by the version their advertisement starts from
+        Map<Integer, List<Neighbor>> groups = new LinkedHashMap<>();
+        for(Neighbor neighbor: neighbors){
+            int base = this.router.getAdvertisementBase(neighbor);
+            List<Neighbor> group = groups.get(base);
+            if(group == null){
+                group = new ArrayList<>();
+                groups.put(base, group);
+            }
+            group.add(neighbor);
+        }
+
+        for(Map.Entry<Integer, List<Neighbor>> entry: groups.entrySet()){
+            final int base = entry.getKey();
+            final List<Neighbor> group = entry.getValue();
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    RIPPacket packet = null;
+                    for(Neighbor neighbor: group){
+                        packet = sendAdvertisement(neighbor, base, packet);
+                    }
+                }
+            };
+            if(groups.size() == 1){
+                // nothing to run in parallel
+                task.run();
+            }else{
+                this.executor.execute(task);
+            }
+        }
+    }
+
+
+    /**
+     * This method sends the periodic advertisement to a neighbor, from its cache
+     * if the neighbor has been sent the same advertisement before
+     * @param neighbor  state of the neighbor
+     * @param base      version the advertisement starts from
+     * @param packet    routes changed since base, null if not taken from the table yet
+     * @return routes changed since base, if they have been taken from the table
+     */
+    private RIPPacket sendAdvertisement(Neighbor neighbor, int base, RIPPacket packet){
+        int ackEpoch;
+        int ackVersion;
+        synchronized (this.router){
+            // the listener updates both together under the router's lock
+            ackEpoch = neighbor.epoch;
+            ackVersion = neighbor.receivedVersion;
+        }
+        int entries = this.router.getMaxEntriesPerMessage();
+        int version = this.router.getSnapshot().getVersion();
+        InetSocketAddress address = neighbor.getSocketAddress(this.port);
+        ByteBuffer[] fragments;
+        synchronized (neighbor){
+            fragments = neighbor.getCachedAdvertisement(base, version, entries);
+            if(fragments == null){
+                long start = System.nanoTime();
+                if(packet == null || packet.getTableVersion() != version){
+                    packet = this.router.getAdvertisement(base);
+                }
+                fragments = neighbor.cacheAdvertisement(base, packet, entries);
+                this.router.getMetrics().getSerializationLatency().record(System.nanoTime() - start);
+            }
+            for(ByteBuffer fragment: fragments){
+                RIPPacket.writeAck(fragment, ackEpoch, ackVersion);
+
+                // counted before the lock is released, so another send to the
+                // neighbor neither rewrites nor reuses the buffer meanwhile
+                neighbor.sendQueued();
+            }
+        }
+        for(ByteBuffer fragment: fragments){
+            this.eventLoop.sendReserved(fragment.duplicate(), address, neighbor);
+        }
+        return packet;
+    }
+
+
+    /**
+     * This method sends the same routes to every neighbor. They are encoded once
+     * for all the neighbors, except for the neighbors which are the next hop of
+     * some of the routes, which get them poisoned
+     * @param packet message with the routes, null if there is nothing to send
+     */
+    public void sendToAll(RIPPacket packet){
+        if(packet == null){
+            return;
+        }
+        int entries = this.router.getMaxEntriesPerMessage();
+        byte[][] shared = null;
+        for(Neighbor neighbor: this.router.getNeighbors()){
+            byte[][] fragments;
+            if(packet.hasNextHop(neighbor.getAddress())){
+                long start = System.nanoTime();
+                fragments = packet.toFragments(entries, neighbor.getAddress());
+                this.router.getMetrics().getSerializationLatency().record(System.nanoTime() - start);
+            }else{
+                if(shared == null){
+                    long start = System.nanoTime();
+                    shared = packet.toFragments(entries);
+                    this.router.getMetrics().getSerializationLatency().record(System.nanoTime() - start);
+                }
+                fragments = shared;
+            }
+            for(byte[] fragment: fragments){
+                this.eventLoop.send(fragment, neighbor.getSocketAddress(this.port), neighbor);
+            }
+        }
+    }
+
+
+    /**
+     * This method stops the encoding threads
+     */
+    public void stop(){
+        this.executor.shutdown();
+    }
+}
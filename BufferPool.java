@@ -0,0 +1,78 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * This class keeps a pool of direct byte buffers which are reused for
+ * receiving and decoding route update messages, so that a steady stream of
+ * updates doesn't produce garbage
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class BufferPool {
+
+    // free buffers of the pool
+    private ArrayBlockingQueue<ByteBuffer> buffers;
+
+    // size of every buffer in bytes
+    private int bufferSize;
+
+
+    /**
+     * This constructor allocates all the buffers of the pool up front
+     * @param count         number of buffers in the pool
+     * @param bufferSize    size of every buffer in bytes
+     */
+    public BufferPool(int count, int bufferSize) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(count);
+        for(int i = 0; i < count; i++){
+            this.buffers.offer(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+
+    /**
+     * This method returns size of every buffer in the pool
+     * @return
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+
+    /**
+     * This method takes a cleared buffer out of the pool.
+     * A new buffer is allocated only if the pool is empty
+     * @return buffer ready to be written
+     */
+    public ByteBuffer acquire(){
+        ByteBuffer buffer = this.buffers.poll();
+        if(buffer == null){
+            buffer = ByteBuffer.allocateDirect(this.bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+
+    /**
+     * This method takes a cleared buffer out of the pool without allocating
+     * @return buffer ready to be written, null if the pool is empty
+     */
+    public ByteBuffer poll(){
+        ByteBuffer buffer = this.buffers.poll();
+        if(buffer != null){
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+
+    /**
+     * This method gives a buffer back to the pool. Buffers which don't fit
+     * in the pool are left to the garbage collector
+     * @param buffer buffer taken by acquire()
+     */
+    public void release(ByteBuffer buffer){
+        this.buffers.offer(buffer);
+    }
+}
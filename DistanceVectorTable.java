@@ -0,0 +1,1643 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class stores the distance vector of a router with primitive values.
+ * Destinations and next hops are 32 bit IPv4 addresses, a destination is a
+ * prefix, i.e. an address and a length (32 for hosts), so 10.1.0.0/16 and
+ * 10.1.0.0/24 are different destinations. Each gets a dense index (slot for
+ * destinations, column for next hops) and costs are kept in one int row per
+ * destination. The index finds the longest prefix of an address, the shorter
+ * ones with the same address are chained behind it. A destination also has a
+ * route id, which it keeps while it is in the table. Un-reachable paths use the INFINITY
+ * sentinel and next hops which were never learned for a destination use NO_PATH.
+ * The table also keeps the best route of every destination, which is updated
+ * incrementally as costs change. Every change of a best route increments the
+ * table version and stamps the destination with it. Destinations are also kept
+ * in a list ordered by their change version, so routes changed since a version
+ * can be found without scanning the whole table. Removing a destination moves
+ * the one in the last slot into its slot, so slots stay dense.
+ * Every destination also has a summary state, which says whether it is
+ * advertised on its own, covered by a summary and withdrawn, or is itself a
+ * summary, i.e. a supernet of a block of longer destinations which has the
+ * route of its block, or a summary which broke up. A change of the
+ * summary state also stamps the destination with a new version, and so does
+ * a next hop joining or leaving the equal cost next hops of a destination,
+ * i.e. the neighbors through which it is reached at its minimum cost.
+ * A read-only snapshot of the table can be taken at any time. The per destination
+ * arrays and the index are paged (PagedIntArray), a snapshot shares their pages
+ * and a page is copied on its first write after the snapshot. Cost rows are
+ * shared the same way and copied on their next write, so taking a snapshot
+ * copies the page tables, and the writes after it copy only the pages and rows
+ * they change instead of the whole table.
+ * Changes to every path through one next hop (a neighbor going away or its link
+ * cost changing) are applied in bulk: large tables are split into ranges of
+ * slots which are updated in parallel on the fork-join pool, and the changed
+ * best routes are stamped with their versions in slot order once all the ranges
+ * are done, so the result is the same as updating the slots one by one.
+ * Costs set during a batch, e.g. the route update messages of several
+ * neighbors, are collected and applied together in the same way: they are
+ * grouped by the page of their destination, the pages are written in parallel
+ * on the fork-join pool if there are many costs, every destination takes its
+ * costs in the order they were set, and the changed destinations are stamped
+ * once all the pages are done
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class DistanceVectorTable {
+
+    // cost of an un-reachable path
+    public static final int INFINITY = Integer.MAX_VALUE;
+
+    // cost of a next hop which has no path to the destination
+    public static final int NO_PATH = Integer.MIN_VALUE;
+
+    // index returned when a destination or next hop is not in the table
+    public static final int NONE = IntIndexMap.MISSING;
+
+    // prefix length of a destination which is a single host
+    public static final int HOST_PREFIX_LENGTH = 32;
+
+    // summary state of a destination which is advertised on its own
+    public static final int NOT_SUMMARIZED = 0;
+
+    // summary state of a destination which is covered by the summary of another destination
+    public static final int COVERED = -1;
+
+    // summary state of a summary which broke up, it is withdrawn unless it has a route of its own
+    public static final int SUMMARY_WITHDRAWN = -2;
+
+    // kinds of changes found by a bulk update of a next hop column
+    private static final byte UNCHANGED = 0;
+    private static final byte ROUTE_CHANGED = 1;
+    private static final byte EQUAL_COST_CHANGED = 2;
+
+    // change of a path's cost, found with the kinds above when a cost is set
+    private static final byte PATH_CHANGED = 4;
+
+    // number of slots below which a bulk update is not split any further
+    public static final int PARALLEL_THRESHOLD = 8192;
+
+    // number of costs of a batch below which they are not split any further
+    public static final int PARALLEL_COSTS = 1024;
+
+    /**
+     * This interface computes the new cost of a path in a bulk update. It is
+     * called from several threads at once, so it must not change any state
+     */
+    public interface CostUpdate {
+
+        /**
+         * This method returns the new cost of a path
+         * @param cost current cost, INFINITY if un-reachable
+         * @return new cost, INFINITY if un-reachable
+         */
+        int apply(int cost);
+    }
+
+    // destination address -> slot of the longest prefix with that address
+    private IntIndexMap destinationIndex;
+
+    // slot -> slot of the next longest prefix with the same address, NONE if none
+    private PagedIntArray sameAddress;
+
+    // slot -> route id of the destination
+    private PagedIntArray routeIds;
+
+    // route id -> slot, NONE if the id is free. Null in a snapshot
+    private int[] routeSlots;
+
+    // route ids of removed destinations which can be given out again, null in a snapshot
+    private int[] freeIds;
+    private int freeIdCount;
+
+    // number of route ids ever given out
+    private int routeIdCount;
+
+    // highest change version of a removed destination, the changes after an
+    // older version can't all be found in the list of changed slots
+    private int removedVersion;
+
+    // slot -> destination address
+    private PagedIntArray destinations;
+
+    // slot -> cost through every next hop column
+    private RowPages costs;
+
+    // slot -> column of the best next hop, NONE if un-reachable
+    private PagedIntArray bestHops;
+
+    // slot -> cost through the best next hop
+    private PagedIntArray bestCosts;
+
+    // slot -> prefix length of the destination
+    private PagedIntArray prefixLengths;
+
+    // slot -> length of the prefixes a summary is made of, or NOT_SUMMARIZED, COVERED or SUMMARY_WITHDRAWN
+    private PagedIntArray summaryLengths;
+
+    // slot -> table version at which its summary state last changed, 0 if never
+    private PagedIntArray summaryVersions;
+
+    // number of destinations
+    private int destinationCount;
+
+    // number of slots the arrays hold
+    private int capacity;
+
+    // version of the table, incremented on every change of a best route or its equal cost next hops
+    private int version;
+
+    // version of the latest change which is advertised, i.e. not only of equal cost next hops
+    private int routeVersion;
+
+    // slot -> table version at which its best route, equal cost next hops or summary state last changed, 0 if never
+    private PagedIntArray changeVersions;
+
+    // slot -> previous and next slot in the list of changed slots, which is
+    // ordered by change version
+    private PagedIntArray previousChanged;
+    private PagedIntArray nextChanged;
+
+    // slot with the latest change, NONE if nothing changed yet
+    private int lastChanged;
+
+    // next hop address -> column
+    private IntIndexMap hopIndex;
+
+    // column -> next hop address
+    private int[] hops;
+
+    // column -> whether the next hop is a neighbor, only neighbors can be best next hops
+    private boolean[] neighbors;
+
+    // number of next hops
+    private int hopCount;
+
+    // number of modifications made to the table, also changes which don't affect best routes
+    private int modificationCount;
+
+    // flag to show if this table is a snapshot which can't be modified
+    private boolean readOnly;
+
+    // costs set in the current batch which are not applied yet, null in a snapshot
+    private PendingCosts pending;
+
+    // flag to show if setCost() collects the costs into a batch
+    private boolean batching;
+
+
+    /**
+     * This constructor initializes an empty table
+     */
+    public DistanceVectorTable() {
+        this.destinationIndex = new IntIndexMap(16);
+        this.sameAddress = new PagedIntArray(16, 0);
+        this.routeIds = new PagedIntArray(16, 0);
+        this.routeSlots = new int[16];
+        this.freeIds = new int[16];
+        this.freeIdCount = 0;
+        this.routeIdCount = 0;
+        this.removedVersion = 0;
+        this.destinations = new PagedIntArray(16, 0);
+        this.prefixLengths = new PagedIntArray(16, 0);
+        this.summaryLengths = new PagedIntArray(16, 0);
+        this.summaryVersions = new PagedIntArray(16, 0);
+        this.costs = new RowPages(16);
+        this.bestHops = new PagedIntArray(16, 0);
+        this.bestCosts = new PagedIntArray(16, 0);
+        this.destinationCount = 0;
+        this.capacity = 16;
+        this.version = 0;
+        this.routeVersion = 0;
+        this.changeVersions = new PagedIntArray(16, 0);
+        this.previousChanged = new PagedIntArray(16, 0);
+        this.nextChanged = new PagedIntArray(16, 0);
+        this.lastChanged = NONE;
+        this.hopIndex = new IntIndexMap(8);
+        this.hops = new int[8];
+        this.neighbors = new boolean[8];
+        this.hopCount = 0;
+        this.modificationCount = 0;
+        this.readOnly = false;
+        this.pending = new PendingCosts();
+        this.batching = false;
+    }
+
+
+    /**
+     * This constructor makes a read-only copy of a table which shares its pages
+     * and cost rows. It takes time proportional to the number of pages, the
+     * table copies a page or row when it writes it next
+     * @param table table to be copied
+     */
+    private DistanceVectorTable(DistanceVectorTable table) {
+        this.destinationIndex = new IntIndexMap(table.destinationIndex);
+        this.sameAddress = table.sameAddress.copy();
+        this.routeIds = table.routeIds.copy();
+        this.routeSlots = null;
+        this.freeIds = null;
+        this.freeIdCount = 0;
+        this.routeIdCount = table.routeIdCount;
+        this.removedVersion = table.removedVersion;
+        this.destinations = table.destinations.copy();
+        this.prefixLengths = table.prefixLengths.copy();
+        this.summaryLengths = table.summaryLengths.copy();
+        this.summaryVersions = table.summaryVersions.copy();
+        this.costs = table.costs.copy();
+        this.bestHops = table.bestHops.copy();
+        this.bestCosts = table.bestCosts.copy();
+        this.destinationCount = table.destinationCount;
+        this.capacity = table.capacity;
+        this.version = table.version;
+        this.routeVersion = table.routeVersion;
+        this.changeVersions = table.changeVersions.copy();
+        this.previousChanged = table.previousChanged.copy();
+        this.nextChanged = table.nextChanged.copy();
+        this.lastChanged = table.lastChanged;
+        this.hopIndex = new IntIndexMap(table.hopIndex);
+        this.hops = Arrays.copyOf(table.hops, table.hopCount);
+        this.neighbors = Arrays.copyOf(table.neighbors, table.hopCount);
+        this.hopCount = table.hopCount;
+        this.modificationCount = table.modificationCount;
+        this.readOnly = true;
+        this.pending = null;
+        this.batching = false;
+    }
+
+
+    /**
+     * This method returns a read-only snapshot of the table. The snapshot doesn't
+     * change when this table is modified, so it can be read without any lock.
+     * Only the page tables are copied here, the costs of a batch are applied first
+     * @return
+     */
+    public DistanceVectorTable snapshot(){
+        this.applyPending();
+        return new DistanceVectorTable(this);
+    }
+
+
+    /**
+     * This method returns number of modifications made to the table. Two tables
+     * with the same count have the same content if one is a snapshot of the other
+     * @return
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+
+    /**
+     * This method returns number of destinations in the table
+     * @return
+     */
+    public int size() {
+        return destinationCount;
+    }
+
+
+    /**
+     * This method returns the slot of the longest prefix with an address
+     * @param destination destination address
+     * @return slot of the destination or NONE
+     */
+    public int indexOf(int destination){
+        return this.destinationIndex.get(destination);
+    }
+
+
+    /**
+     * This method returns the slot of a destination
+     * @param destination   destination address, the bits beyond the prefix are ignored
+     * @param length        length of the prefix, 0 to 32
+     * @return slot of the destination or NONE
+     */
+    public int indexOf(int destination, int length){
+        int slot = this.destinationIndex.get(destination & IPv4.toMask(length));
+        while(slot != NONE && this.prefixLengths.get(slot) > length){
+            slot = this.sameAddress.get(slot);
+        }
+        return slot != NONE && this.prefixLengths.get(slot) == length ? slot : NONE;
+    }
+
+
+    /**
+     * This method returns the route id of the destination stored in a slot. A
+     * destination keeps its id while it is in the table, even if it moves to another slot
+     * @param slot slot of the destination
+     * @return route id
+     */
+    public int routeIdAt(int slot){
+        return this.routeIds.get(slot);
+    }
+
+
+    /**
+     * This method returns the slot of a destination by its route id. It can't
+     * be called on a snapshot
+     * @param routeId route id of the destination
+     * @return slot of the destination or NONE if the id is not in use
+     */
+    public int slotOfRoute(int routeId){
+        this.checkWritable();
+        return routeId < this.routeIdCount ? this.routeSlots[routeId] : NONE;
+    }
+
+
+    /**
+     * This method returns the destination address stored in a slot
+     * @param slot slot of the destination
+     * @return destination address
+     */
+    public int destinationAt(int slot){
+        return this.destinations.get(slot);
+    }
+
+
+    /**
+     * This method returns the prefix length of the destination stored in a slot
+     * @param slot slot of the destination
+     * @return length of the prefix, 0 to 32
+     */
+    public int prefixLengthAt(int slot){
+        return this.prefixLengths.get(slot);
+    }
+
+
+    /**
+     * This method returns the summary state of the destination stored in a slot
+     * @param slot slot of the destination
+     * @return length of the prefixes the destination summarizes, NOT_SUMMARIZED if it
+     * is advertised on its own, COVERED if a summary covers it or SUMMARY_WITHDRAWN
+     * if it was a summary which broke up
+     */
+    public int summaryLengthAt(int slot){
+        return this.summaryLengths.get(slot);
+    }
+
+
+    /**
+     * This method returns the table version at which the summary state of a
+     * destination last changed
+     * @param slot slot of the destination
+     * @return version, 0 if the summary state never changed
+     */
+    public int summaryVersionAt(int slot){
+        return this.summaryVersions.get(slot);
+    }
+
+
+    /**
+     * This method sets the summary state of a destination. A new state counts
+     * as a change of the destination's route, so it is advertised again
+     * @param slot      slot of the destination
+     * @param length    length of the prefixes it summarizes, NOT_SUMMARIZED, COVERED or SUMMARY_WITHDRAWN
+     */
+    public void setSummaryLength(int slot, int length){
+        this.checkWritable();
+        this.applyPending();
+        if(this.summaryLengths.get(slot) == length){
+            return;
+        }
+        this.summaryLengths.set(slot, length);
+        this.modificationCount++;
+        this.markChanged(slot);
+        this.summaryVersions.set(slot, this.version);
+    }
+
+
+    /**
+     * This method makes a prefix the summary of a block of longer prefixes,
+     * adding it to the table if it is not in it. The summary counts as changed
+     * even if it already was one, so a new route of the block is advertised
+     * @param destination       address of the summary
+     * @param length            prefix length of the summary
+     * @param componentLength   prefix length of the destinations it is made of
+     * @return slot of the summary
+     */
+    public int setSummary(int destination, int length, int componentLength){
+        this.checkWritable();
+        this.applyPending();
+        int slot = this.slotFor(destination & IPv4.toMask(length), length);
+        this.summaryLengths.set(slot, componentLength);
+        this.modificationCount++;
+        this.markChanged(slot);
+        this.summaryVersions.set(slot, this.version);
+        return slot;
+    }
+
+
+    /**
+     * This method returns number of next hops known to the table
+     * @return
+     */
+    public int hopCount() {
+        return hopCount;
+    }
+
+
+    /**
+     * This method returns the next hop address stored in a column
+     * @param column column of the next hop
+     * @return next hop address
+     */
+    public int hopAt(int column){
+        return this.hops[column];
+    }
+
+
+    /**
+     * This method returns the cost to a destination through a next hop column
+     * @param slot      slot of the destination
+     * @param column    column of the next hop
+     * @return cost, INFINITY if un-reachable, NO_PATH if there is no such path
+     */
+    public int costAt(int slot, int column){
+        if(this.batching){
+            int index = this.pending.find(slot, column);
+            if(index != NONE){
+                return this.pending.costs[index];
+            }
+        }
+        int[] row = this.costs.get(slot);
+        if(column >= row.length){
+            return NO_PATH;
+        }
+        return row[column];
+    }
+
+
+    /**
+     * This method returns the cost to the longest prefix with an address through a next hop
+     * @param destination   destination address
+     * @param nextHop       next hop address
+     * @return cost, INFINITY if un-reachable, NO_PATH if there is no such path
+     */
+    public int getCost(int destination, int nextHop){
+        int slot = this.destinationIndex.get(destination);
+        int column = this.hopIndex.get(nextHop);
+        if(slot == NONE || column == NONE){
+            return NO_PATH;
+        }
+        return this.costAt(slot, column);
+    }
+
+
+    /**
+     * This method returns the cost to a destination through a next hop
+     * @param destination   destination address
+     * @param length        length of the prefix, 0 to 32
+     * @param nextHop       next hop address
+     * @return cost, INFINITY if un-reachable, NO_PATH if there is no such path
+     */
+    public int getCost(int destination, int length, int nextHop){
+        int slot = this.indexOf(destination, length);
+        int column = this.hopIndex.get(nextHop);
+        if(slot == NONE || column == NONE){
+            return NO_PATH;
+        }
+        return this.costAt(slot, column);
+    }
+
+
+    /**
+     * This method returns the best next hop of a destination slot
+     * @param slot slot of the destination
+     * @return next hop address or 0 if destination is un-reachable
+     */
+    public int bestHopAt(int slot){
+        this.settle(slot);
+        int column = this.bestHops.get(slot);
+        return column == NONE ? 0 : this.hops[column];
+    }
+
+
+    /**
+     * This method returns the minimum cost of a destination slot
+     * @param slot slot of the destination
+     * @return cost or INFINITY if destination is un-reachable
+     */
+    public int bestCostAt(int slot){
+        this.settle(slot);
+        return this.bestCosts.get(slot);
+    }
+
+
+    /**
+     * This method returns the best next hop to the longest prefix with an address
+     * @param destination destination address
+     * @return next hop address or 0 if destination is un-reachable or unknown
+     */
+    public int getBestNextHop(int destination){
+        int slot = this.destinationIndex.get(destination);
+        return slot == NONE ? 0 : this.bestHopAt(slot);
+    }
+
+
+    /**
+     * This method returns the minimum cost to the longest prefix with an address
+     * @param destination destination address
+     * @return cost or INFINITY if destination is un-reachable or unknown
+     */
+    public int getBestCost(int destination){
+        int slot = this.destinationIndex.get(destination);
+        if(slot == NONE){
+            return INFINITY;
+        }
+        if(this.batching && this.pending.contains(slot)){
+            // the best cost is the cheapest reachable neighbor, found without ending the batch
+            return this.pendingBestCost(slot);
+        }
+        return this.bestCosts.get(slot);
+    }
+
+
+    /**
+     * This method sets the cost to a destination through a next hop and keeps
+     * the best route of the destination up to date. The destination is rescanned
+     * only when its current best route gets worse. Setting the cost it already
+     * has changes nothing. During a batch the cost is only collected
+     * @param destination   destination address, the bits beyond the prefix are ignored
+     * @param length        length of the prefix, 0 to 32
+     * @param nextHop       next hop address
+     * @param cost          cost through the next hop, INFINITY if un-reachable
+     */
+    public void setCost(int destination, int length, int nextHop, int cost){
+        this.checkWritable();
+        int slot = this.slotFor(destination & IPv4.toMask(length), length);
+        int column = this.columnFor(nextHop);
+        if(this.batching){
+            if(this.costAt(slot, column) != cost){
+                this.pending.add(slot, column, cost);
+            }
+            return;
+        }
+        int change = this.applyCost(slot, column, cost);
+        if(change == UNCHANGED){
+            return;
+        }
+        this.modificationCount++;
+        if((change & ROUTE_CHANGED) != 0){
+            this.markChanged(slot);
+        }else if((change & EQUAL_COST_CHANGED) != 0){
+            this.markChanged(slot, false);
+        }
+    }
+
+
+    /**
+     * This method writes the cost of a path and updates the best route of its
+     * destination, without stamping the destination. Only the pages of the slot
+     * are written, so slots of different pages can be written at once
+     * @param slot      slot of the destination
+     * @param column    column of the next hop
+     * @param cost      cost through the next hop, INFINITY if un-reachable
+     * @return UNCHANGED if the path had that cost, else PATH_CHANGED with
+     *         ROUTE_CHANGED or EQUAL_COST_CHANGED if either changed too
+     */
+    private int applyCost(int slot, int column, int cost){
+        int[] row = this.costs.get(slot);
+        int oldCost = column < row.length ? row[column] : NO_PATH;
+        if(oldCost == cost){
+            // nothing changes, the row is not copied and the snapshot stays current
+            return UNCHANGED;
+        }
+        if(column >= row.length){
+            int oldLength = row.length;
+            row = Arrays.copyOf(row, Math.max(this.hops.length, column + 1));
+            Arrays.fill(row, oldLength, row.length, NO_PATH);
+            this.costs.set(slot, row);
+        }else{
+            // copied first if a snapshot still reads this row
+            row = this.costs.writableRow(slot);
+        }
+        row[column] = cost;
+
+        int bestHop = this.bestHops.get(slot);
+        int bestCost = this.bestCosts.get(slot);
+        if(bestHop == column){
+            if(cost > bestCost){
+                // best route got worse, some other next hop may be better now
+                bestHop = this.scanBestHop(row);
+            }
+        }else if(cost != INFINITY && this.neighbors[column] && (bestHop == NONE || cost < bestCost)){
+            bestHop = column;
+        }else if(this.isEqualCostChange(slot, column, oldCost, cost)){
+            // a next hop joined or left the equal cost next hops
+            return PATH_CHANGED | EQUAL_COST_CHANGED;
+        }
+        int newCost = bestHop == NONE ? INFINITY : row[bestHop];
+        if(bestHop == this.bestHops.get(slot) && newCost == bestCost){
+            return PATH_CHANGED;
+        }
+        this.bestHops.set(slot, bestHop);
+        this.bestCosts.set(slot, newCost);
+        return PATH_CHANGED | ROUTE_CHANGED;
+    }
+
+
+    /**
+     * This method sets the cost to a host through a next hop, see setCost() with a prefix length
+     * @param destination   host address
+     * @param nextHop       next hop address
+     * @param cost          cost through the next hop, INFINITY if un-reachable
+     */
+    public void setCost(int destination, int nextHop, int cost){
+        this.setCost(destination, HOST_PREFIX_LENGTH, nextHop, cost);
+    }
+
+
+    /**
+     * This method starts a batch of cost changes. Until applyBatch() the costs
+     * set are collected instead of applied, and costs of paths read back
+     * include them. Reading the best next hop of a destination with collected
+     * costs, any other change to the table and a snapshot apply the costs
+     * collected so far first, the versions of the table move only then
+     */
+    public void startBatch(){
+        this.checkWritable();
+        this.batching = true;
+    }
+
+
+    /**
+     * This method applies the costs collected since startBatch() and ends the batch
+     */
+    public void applyBatch(){
+        this.applyPending();
+        this.batching = false;
+    }
+
+
+    /**
+     * This method applies the collected costs of a batch if a destination has
+     * some, so its best route can be read
+     * @param slot slot of the destination
+     */
+    private void settle(int slot){
+        if(this.batching && this.pending.contains(slot)){
+            this.applyPending();
+        }
+    }
+
+
+    /**
+     * This method returns the minimum cost of a destination including its
+     * collected costs. The best route kept by setCost() always has the cost
+     * of the cheapest reachable neighbor, so this is what it will have
+     * @param slot slot of the destination
+     * @return cost or INFINITY if destination is un-reachable
+     */
+    private int pendingBestCost(int slot){
+        int bestCost = INFINITY;
+        for(int column = 0; column < this.hopCount; column++){
+            int cost = this.costAt(slot, column);
+            if(cost != NO_PATH && this.neighbors[column] && cost < bestCost){
+                bestCost = cost;
+            }
+        }
+        return bestCost;
+    }
+
+
+    /**
+     * This method applies the collected costs of a batch. They are grouped by
+     * the page of their slot and the pages are written in parallel if there are
+     * many costs. A destination takes its costs in the order they were set, so
+     * it ends up as if they were set one by one, and the changed destinations
+     * are stamped at the end, in the order of their pages and last costs
+     */
+    private void applyPending(){
+        PendingCosts pending = this.pending;
+        if(pending == null || pending.count == 0){
+            return;
+        }
+        try {
+            int pageCount = (this.destinationCount + PagedIntArray.PAGE_SIZE - 1) >>> PagedIntArray.PAGE_SHIFT;
+            pending.sortByPage(pageCount);
+            if(pending.count > PARALLEL_COSTS){
+                ForkJoinPool.commonPool().invoke(new PendingTask(this, 0, pageCount));
+            }else{
+                this.applyPages(0, pageCount);
+            }
+            for(int i = 0; i < pending.count; i++){
+                int index = pending.order[i];
+                int last = pending.last[pending.slots[index]];
+                if(index != last){
+                    // the last cost of the slot comes later in the same page
+                    pending.changes[last] |= pending.changes[index];
+                    continue;
+                }
+                int change = pending.changes[index];
+                if(change == UNCHANGED){
+                    continue;
+                }
+                this.modificationCount++;
+                if((change & ROUTE_CHANGED) != 0){
+                    this.markChanged(pending.slots[index]);
+                }else if((change & EQUAL_COST_CHANGED) != 0){
+                    this.markChanged(pending.slots[index], false);
+                }
+            }
+        } finally {
+            pending.clear();
+        }
+    }
+
+
+    /**
+     * This method applies the collected costs of a range of pages for
+     * applyPending(). Ranges which don't overlap can be applied at once
+     * @param from  first page
+     * @param to    page after the last one
+     */
+    private void applyPages(int from, int to){
+        PendingCosts pending = this.pending;
+        for(int i = pending.pageStarts[from]; i < pending.pageStarts[to]; i++){
+            int index = pending.order[i];
+            pending.changes[index] = (byte) this.applyCost(pending.slots[index],
+                    pending.columns[index], pending.costs[index]);
+        }
+    }
+
+
+    /**
+     * This method checks if a new cost through a next hop, which is not the
+     * best one, changes the equal cost next hops of a destination
+     * @param slot      slot of the destination
+     * @param column    column of the next hop
+     * @param oldCost   cost through the next hop before
+     * @param cost      cost through the next hop now
+     * @return true if the next hop joined or left the equal cost next hops
+     */
+    private boolean isEqualCostChange(int slot, int column, int oldCost, int cost){
+        int bestCost = this.bestCosts.get(slot);
+        return oldCost != cost && this.neighbors[column] && this.bestHops.get(slot) != NONE
+                && this.bestHops.get(slot) != column && (oldCost == bestCost || cost == bestCost);
+    }
+
+
+    /**
+     * This method returns the next hops through which a destination slot is
+     * reached at its minimum cost, i.e. the equal cost multipath group. The
+     * best next hop comes first, the others follow in the order of their columns
+     * @param slot      slot of the destination
+     * @param nextHops  array the next hop addresses are written to
+     * @return number of next hops written, 0 if destination is un-reachable
+     */
+    public int equalCostHopsAt(int slot, int[] nextHops){
+        this.settle(slot);
+        int bestHop = this.bestHops.get(slot);
+        if(bestHop == NONE || nextHops.length == 0){
+            return 0;
+        }
+        int bestCost = this.bestCosts.get(slot);
+        int[] row = this.costs.get(slot);
+        int count = 0;
+        nextHops[count++] = this.hops[bestHop];
+        for(int column = 0; column < row.length && count < nextHops.length; column++){
+            if(column != bestHop && row[column] == bestCost && this.neighbors[column]){
+                nextHops[count++] = this.hops[column];
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * This method returns the version of the table
+     * @return
+     */
+    public int getVersion() {
+        return version;
+    }
+
+
+    /**
+     * This method returns the highest change version of a removed destination,
+     * e.g. the version at which it was withdrawn. The changed slots only have
+     * all the changes after a version which is not older than this
+     * @return version, 0 if no destination was removed
+     */
+    public int getRemovedVersion() {
+        return removedVersion;
+    }
+
+
+    /**
+     * This method returns the version of the latest change which neighbors
+     * have to be told about. Changes of only the equal cost next hops of a
+     * destination don't change what is advertised
+     * @return
+     */
+    public int getRouteVersion() {
+        return routeVersion;
+    }
+
+
+    /**
+     * This method returns the table version at which the best route of a
+     * destination last changed
+     * @param slot slot of the destination
+     * @return change version, 0 if the best route never changed
+     */
+    public int changeVersionAt(int slot){
+        return this.changeVersions.get(slot);
+    }
+
+
+    /**
+     * This method returns the slot with the latest change. Together with
+     * previousChangedSlot() it walks the destinations from the newest change
+     * to the oldest, stop walking once changeVersionAt() is not newer than needed
+     * @return slot or NONE if no best route has changed yet
+     */
+    public int lastChangedSlot(){
+        return this.lastChanged;
+    }
+
+
+    /**
+     * This method returns the slot which changed just before the given one
+     * @param slot slot of a changed destination
+     * @return slot or NONE if this is the oldest change
+     */
+    public int previousChangedSlot(int slot){
+        return this.previousChanged.get(slot);
+    }
+
+
+    /**
+     * This method returns whether a next hop is a neighbor
+     * @param nextHop next hop address
+     * @return
+     */
+    public boolean isNeighbor(int nextHop){
+        int column = this.hopIndex.get(nextHop);
+        return column != NONE && this.neighbors[column];
+    }
+
+
+    /**
+     * This method marks a next hop as neighbor or not and recomputes the
+     * best route of every destination which has a path through it
+     * @param nextHop   next hop address
+     * @param neighbor  true if next hop is a neighbor
+     */
+    public void setNeighbor(int nextHop, boolean neighbor){
+        this.checkWritable();
+        this.applyPending();
+        int column = this.columnFor(nextHop);
+        if(this.neighbors[column] == neighbor){
+            return;
+        }
+        this.neighbors[column] = neighbor;
+        this.modificationCount++;
+        this.updateColumn(column, null);
+    }
+
+
+    /**
+     * This method changes the cost of every path through a next hop and updates
+     * the best routes of their destinations. Large tables are updated in parallel
+     * @param nextHop   next hop address
+     * @param update    new cost of a path from its current cost
+     */
+    public void updateCosts(int nextHop, CostUpdate update){
+        this.checkWritable();
+        this.applyPending();
+        int column = this.hopIndex.get(nextHop);
+        if(column == NONE){
+            return;
+        }
+        this.modificationCount++;
+        this.updateColumn(column, update);
+    }
+
+
+    /**
+     * This method updates every destination which has a path through a next hop
+     * column, splitting the slots over the fork-join pool if there are many. The
+     * changed best routes are stamped with new versions in slot order at the end
+     * @param column    column of the next hop
+     * @param update    new cost of a path, null to only recompute the best routes
+     */
+    private void updateColumn(int column, CostUpdate update){
+        int count = this.destinationCount;
+        byte[] changed = new byte[count];
+        if(count > PARALLEL_THRESHOLD){
+            ForkJoinPool.commonPool().invoke(new ColumnTask(this, column, update, changed, 0, count));
+        }else{
+            this.updateSlots(column, update, changed, 0, count);
+        }
+        for(int slot = 0; slot < count; slot++){
+            if(changed[slot] != UNCHANGED){
+                this.markChanged(slot, changed[slot] == ROUTE_CHANGED);
+            }
+        }
+    }
+
+
+    /**
+     * This method updates a range of slots for updateColumn(). Only the given
+     * slots are written, so ranges which don't overlap can be updated at once
+     * @param column    column of the next hop
+     * @param update    new cost of a path, null to only recompute the best routes
+     * @param changed   slot -> set to ROUTE_CHANGED or EQUAL_COST_CHANGED if it changed
+     * @param from      first slot
+     * @param to        slot after the last one
+     */
+    private void updateSlots(int column, CostUpdate update, byte[] changed, int from, int to){
+        for(int slot = from; slot < to; slot++){
+            int[] row = this.costs.get(slot);
+            if(column >= row.length || row[column] == NO_PATH){
+                continue;
+            }
+            int bestHop = this.bestHops.get(slot);
+            int bestCost = this.bestCosts.get(slot);
+            int oldCost = row[column];
+            if(update == null){
+                bestHop = this.scanBestHop(row);
+            }else{
+                int cost = update.apply(oldCost);
+
+                // copied first if a snapshot still reads this row
+                row = this.costs.writableRow(slot);
+                row[column] = cost;
+                if(bestHop == column && cost > bestCost){
+                    // best route got worse, some other next hop may be better now
+                    bestHop = this.scanBestHop(row);
+                }else if(bestHop == column || (cost != INFINITY && this.neighbors[column]
+                        && (bestHop == NONE || cost < bestCost))){
+                    bestHop = column;
+                }
+            }
+            bestCost = bestHop == NONE ? INFINITY : row[bestHop];
+            if(bestHop != this.bestHops.get(slot) || bestCost != this.bestCosts.get(slot)){
+                this.bestHops.set(slot, bestHop);
+                this.bestCosts.set(slot, bestCost);
+                changed[slot] = ROUTE_CHANGED;
+            }else if(update == null ? bestHop != NONE && bestHop != column && row[column] == bestCost
+                    : this.isEqualCostChange(slot, column, oldCost, row[column])){
+                // the next hop joined or left the equal cost next hops, for update == null
+                // it stopped or started being a neighbor
+                changed[slot] = EQUAL_COST_CHANGED;
+            }
+        }
+    }
+
+
+    /**
+     * This method makes sure the table is not a snapshot
+     */
+    private void checkWritable(){
+        if(this.readOnly){
+            throw new IllegalStateException("snapshot of a distance vector table can't be modified");
+        }
+    }
+
+
+    /**
+     * This method returns the column of the cheapest reachable neighbor in a cost row
+     * @param row cost row of a destination
+     * @return column or NONE if the destination is un-reachable
+     */
+    private int scanBestHop(int[] row){
+        int bestHop = NONE;
+        int bestCost = INFINITY;
+        for(int column = 0; column < row.length; column++){
+            int cost = row[column];
+            if(cost != NO_PATH && cost != INFINITY && this.neighbors[column]
+                    && (bestHop == NONE || cost < bestCost)){
+                bestHop = column;
+                bestCost = cost;
+            }
+        }
+        return bestHop;
+    }
+
+
+    /**
+     * This method stamps a destination with a new table version and moves it
+     * to the end of the list of changed slots
+     * @param slot slot of the destination
+     */
+    private void markChanged(int slot){
+        this.markChanged(slot, true);
+    }
+
+
+    /**
+     * This method stamps a destination with a new table version and moves it
+     * to the end of the list of changed slots
+     * @param slot          slot of the destination
+     * @param advertised    false if only the equal cost next hops changed
+     */
+    private void markChanged(int slot, boolean advertised){
+        this.version++;
+        if(advertised){
+            this.routeVersion = this.version;
+        }
+        this.changeVersions.set(slot, this.version);
+
+        // moving the slot to the end of the list of changed slots
+        if(this.lastChanged == slot){
+            return;
+        }
+        this.unlinkChanged(slot);
+        this.previousChanged.set(slot, this.lastChanged);
+        this.nextChanged.set(slot, NONE);
+        if(this.lastChanged != NONE){
+            this.nextChanged.set(this.lastChanged, slot);
+        }
+        this.lastChanged = slot;
+    }
+
+
+    /**
+     * This method takes a slot out of the list of changed slots
+     * @param slot slot of the destination
+     */
+    private void unlinkChanged(int slot){
+        if(this.previousChanged.get(slot) != NONE){
+            this.nextChanged.set(this.previousChanged.get(slot), this.nextChanged.get(slot));
+        }
+        if(this.nextChanged.get(slot) != NONE){
+            this.previousChanged.set(this.nextChanged.get(slot), this.previousChanged.get(slot));
+        }
+        if(this.lastChanged == slot){
+            this.lastChanged = this.previousChanged.get(slot);
+        }
+    }
+
+
+    /**
+     * This method removes a destination and all its paths from the table. The
+     * destination in the last slot is moved into the freed slot, keeping its
+     * place in the list of changed slots. Removing doesn't change the version,
+     * neighbors have been told about the destination becoming un-reachable before.
+     * Its route id is given out again to a later destination
+     * @param destination   destination address
+     * @param length        length of the prefix, 0 to 32
+     */
+    public void removeDestination(int destination, int length){
+        this.checkWritable();
+        this.applyPending();
+        int slot = this.indexOf(destination, length);
+        if(slot == NONE){
+            return;
+        }
+        this.unlinkAddress(slot);
+        this.unlinkChanged(slot);
+        this.removedVersion = Math.max(this.removedVersion, this.changeVersions.get(slot));
+        int routeId = this.routeIds.get(slot);
+        this.routeSlots[routeId] = NONE;
+        if(this.freeIdCount == this.freeIds.length){
+            this.freeIds = Arrays.copyOf(this.freeIds, this.freeIdCount * 2);
+        }
+        this.freeIds[this.freeIdCount++] = routeId;
+        int last = --this.destinationCount;
+        if(slot != last){
+            // pointing the index or the longer prefix with the same address to the new slot
+            int longer = this.longerPrefixOf(last);
+            if(longer == NONE){
+                this.destinationIndex.put(this.destinations.get(last), slot);
+            }else{
+                this.sameAddress.set(longer, slot);
+            }
+            this.sameAddress.set(slot, this.sameAddress.get(last));
+            this.routeIds.set(slot, this.routeIds.get(last));
+            this.routeSlots[this.routeIds.get(slot)] = slot;
+            this.destinations.set(slot, this.destinations.get(last));
+            this.prefixLengths.set(slot, this.prefixLengths.get(last));
+            this.summaryLengths.set(slot, this.summaryLengths.get(last));
+            this.summaryVersions.set(slot, this.summaryVersions.get(last));
+            this.costs.move(last, slot);
+            this.bestHops.set(slot, this.bestHops.get(last));
+            this.bestCosts.set(slot, this.bestCosts.get(last));
+            this.changeVersions.set(slot, this.changeVersions.get(last));
+            this.previousChanged.set(slot, this.previousChanged.get(last));
+            this.nextChanged.set(slot, this.nextChanged.get(last));
+
+            // pointing the neighbors of the moved slot in the list to its new slot
+            if(this.previousChanged.get(slot) != NONE){
+                this.nextChanged.set(this.previousChanged.get(slot), slot);
+            }
+            if(this.nextChanged.get(slot) != NONE){
+                this.previousChanged.set(this.nextChanged.get(slot), slot);
+            }
+            if(this.lastChanged == last){
+                this.lastChanged = slot;
+            }
+        }
+        this.costs.set(last, null);
+        this.modificationCount++;
+    }
+
+
+    /**
+     * This method takes a slot out of the prefixes with its address
+     * @param slot slot of the destination
+     */
+    private void unlinkAddress(int slot){
+        int longer = this.longerPrefixOf(slot);
+        int shorter = this.sameAddress.get(slot);
+        if(longer != NONE){
+            this.sameAddress.set(longer, shorter);
+        }else if(shorter != NONE){
+            this.destinationIndex.put(this.destinations.get(slot), shorter);
+        }else{
+            this.destinationIndex.remove(this.destinations.get(slot));
+        }
+    }
+
+
+    /**
+     * This method returns the slot of the prefix with the same address chained
+     * in front of a slot
+     * @param slot slot of the destination
+     * @return slot of the next longer prefix with the address, NONE if the slot is the longest
+     */
+    private int longerPrefixOf(int slot){
+        int longer = NONE;
+        int other = this.destinationIndex.get(this.destinations.get(slot));
+        while(other != slot){
+            longer = other;
+            other = this.sameAddress.get(other);
+        }
+        return longer;
+    }
+
+
+    /**
+     * This method returns the slot of a destination, adding it if needed. The
+     * prefixes with the same address are kept from the longest to the shortest
+     * @param destination   destination address with no bits beyond the prefix
+     * @param length        length of the prefix
+     * @return slot of the destination
+     */
+    private int slotFor(int destination, int length){
+        int longer = NONE;
+        int shorter = this.destinationIndex.get(destination);
+        while(shorter != NONE && this.prefixLengths.get(shorter) > length){
+            longer = shorter;
+            shorter = this.sameAddress.get(shorter);
+        }
+        if(shorter != NONE && this.prefixLengths.get(shorter) == length){
+            return shorter;
+        }
+        int slot = this.destinationCount++;
+        if(slot == this.capacity){
+            this.grow(slot << 1);
+        }
+        int routeId;
+        if(this.freeIdCount > 0){
+            routeId = this.freeIds[--this.freeIdCount];
+        }else{
+            routeId = this.routeIdCount++;
+            if(routeId == this.routeSlots.length){
+                this.routeSlots = Arrays.copyOf(this.routeSlots, routeId << 1);
+            }
+        }
+        this.routeIds.set(slot, routeId);
+        this.routeSlots[routeId] = slot;
+        this.sameAddress.set(slot, shorter);
+        if(longer == NONE){
+            this.destinationIndex.put(destination, slot);
+        }else{
+            this.sameAddress.set(longer, slot);
+        }
+        this.destinations.set(slot, destination);
+        this.prefixLengths.set(slot, length);
+        this.summaryLengths.set(slot, NOT_SUMMARIZED);
+        this.summaryVersions.set(slot, 0);
+        this.costs.set(slot, new int[0]);
+        this.bestHops.set(slot, NONE);
+        this.bestCosts.set(slot, INFINITY);
+        this.changeVersions.set(slot, 0);
+        this.previousChanged.set(slot, NONE);
+        this.nextChanged.set(slot, NONE);
+        return slot;
+    }
+
+
+    /**
+     * This method adds pages to the per destination arrays, the pages there
+     * are already are kept as they are
+     * @param capacity number of slots
+     */
+    private void grow(int capacity){
+        this.sameAddress.grow(capacity);
+        this.routeIds.grow(capacity);
+        this.destinations.grow(capacity);
+        this.prefixLengths.grow(capacity);
+        this.summaryLengths.grow(capacity);
+        this.summaryVersions.grow(capacity);
+        this.costs.grow(capacity);
+        this.bestHops.grow(capacity);
+        this.bestCosts.grow(capacity);
+        this.changeVersions.grow(capacity);
+        this.previousChanged.grow(capacity);
+        this.nextChanged.grow(capacity);
+        this.capacity = capacity;
+    }
+
+
+    /**
+     * This method returns the column of a next hop, adding it if needed
+     * @param nextHop next hop address
+     * @return column of the next hop
+     */
+    private int columnFor(int nextHop){
+        int column = this.hopIndex.get(nextHop);
+        if(column != NONE){
+            return column;
+        }
+        column = this.hopCount++;
+        if(column == this.hops.length){
+            this.hops = Arrays.copyOf(this.hops, column << 1);
+            this.neighbors = Arrays.copyOf(this.neighbors, column << 1);
+        }
+        this.hops[column] = nextHop;
+        this.neighbors[column] = false;
+        this.hopIndex.put(nextHop, column);
+        return column;
+    }
+
+
+    /**
+     * This class holds the cost rows of a table in pages of row references, which
+     * are shared with snapshots like the pages of a PagedIntArray. A row is shared
+     * too and copied on its first write after the snapshot: every row is stamped
+     * with the generation in which it was made or copied, and a snapshot starts a
+     * new generation, so it doesn't have to mark every row as shared
+     */
+    private static class RowPages {
+
+        // page -> row references of the page
+        int[][][] pages;
+
+        // page -> generation in which the page was made or copied
+        int[] pageOwners;
+
+        // slot -> generation in which the row was made or copied, null in a snapshot
+        int[] rowOwners;
+
+        // generation of the rows and pages, incremented by every snapshot
+        int generation;
+
+        // number of pages
+        int pageCount;
+
+        RowPages(int capacity) {
+            this.pages = new int[4][][];
+            this.pageOwners = new int[4];
+            this.rowOwners = new int[0];
+            this.generation = 0;
+            this.pageCount = 0;
+            this.grow(capacity);
+        }
+
+        RowPages(RowPages other) {
+            this.pages = Arrays.copyOf(other.pages, other.pageCount);
+            this.pageOwners = new int[other.pageCount];
+            this.rowOwners = null;
+            this.generation = 1;
+            this.pageCount = other.pageCount;
+        }
+
+        /**
+         * This method returns a copy sharing the pages and rows, for a snapshot
+         * @return
+         */
+        RowPages copy(){
+            this.generation++;
+            return new RowPages(this);
+        }
+
+        /**
+         * This method adds pages until there is room for a number of slots
+         * @param capacity number of slots
+         */
+        void grow(int capacity){
+            int pageCount = (capacity + PagedIntArray.PAGE_SIZE - 1) >>> PagedIntArray.PAGE_SHIFT;
+            if(pageCount > this.pages.length){
+                int length = Math.max(pageCount, this.pages.length * 2);
+                this.pages = Arrays.copyOf(this.pages, length);
+                this.pageOwners = Arrays.copyOf(this.pageOwners, length);
+            }
+            for(int page = this.pageCount; page < pageCount; page++){
+                this.pages[page] = new int[PagedIntArray.PAGE_SIZE][];
+                this.pageOwners[page] = this.generation;
+            }
+            this.pageCount = Math.max(this.pageCount, pageCount);
+            if(this.rowOwners.length < capacity){
+                this.rowOwners = Arrays.copyOf(this.rowOwners, capacity);
+            }
+        }
+
+        /**
+         * This method returns the cost row of a slot
+         * @param slot slot of the destination
+         * @return
+         */
+        int[] get(int slot){
+            return this.pages[slot >>> PagedIntArray.PAGE_SHIFT][slot & (PagedIntArray.PAGE_SIZE - 1)];
+        }
+
+        /**
+         * This method sets the cost row of a slot, a row which no snapshot reads
+         * @param slot  slot of the destination
+         * @param row   new cost row
+         */
+        void set(int slot, int[] row){
+            this.writablePage(slot)[slot & (PagedIntArray.PAGE_SIZE - 1)] = row;
+            this.rowOwners[slot] = this.generation;
+        }
+
+        /**
+         * This method returns the cost row of a slot to be written, it is copied
+         * first if a snapshot may read it
+         * @param slot slot of the destination
+         * @return
+         */
+        int[] writableRow(int slot){
+            int[] row = this.get(slot);
+            if(this.rowOwners[slot] != this.generation){
+                row = row.clone();
+                this.set(slot, row);
+            }
+            return row;
+        }
+
+        /**
+         * This method moves the cost row of a slot to another slot, the row
+         * keeps its generation
+         * @param from  slot the row is in
+         * @param to    slot the row is moved to
+         */
+        void move(int from, int to){
+            this.writablePage(to)[to & (PagedIntArray.PAGE_SIZE - 1)] = this.get(from);
+            this.rowOwners[to] = this.rowOwners[from];
+        }
+
+        /**
+         * This method returns the page of a slot, copying it first if it is shared
+         * @param slot slot of the destination
+         * @return
+         */
+        private int[][] writablePage(int slot){
+            int page = slot >>> PagedIntArray.PAGE_SHIFT;
+            if(this.pageOwners[page] != this.generation){
+                this.pages[page] = this.pages[page].clone();
+                this.pageOwners[page] = this.generation;
+            }
+            return this.pages[page];
+        }
+    }
+
+
+    /**
+     * This class updates a range of slots of a table, splitting it in halves
+     * which are run in parallel until it is below PARALLEL_THRESHOLD
+     */
+    private static class ColumnTask extends RecursiveAction {
+
+        // version of the serialized form, tasks are never serialized
+        private static final long serialVersionUID = 1L;
+
+        // table being updated
+        final DistanceVectorTable table;
+
+        // column of the next hop
+        final int column;
+
+        // new cost of a path, null to only recompute the best routes
+        final CostUpdate update;
+
+        // slot -> whether its best route or equal cost next hops changed
+        final byte[] changed;
+
+        // first slot and slot after the last one
+        final int from;
+        final int to;
+
+        ColumnTask(DistanceVectorTable table, int column, CostUpdate update,
+                   byte[] changed, int from, int to) {
+            this.table = table;
+            this.column = column;
+            this.update = update;
+            this.changed = changed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.to - this.from <= PARALLEL_THRESHOLD){
+                this.table.updateSlots(this.column, this.update, this.changed, this.from, this.to);
+                return;
+            }
+            // split at a page boundary, so no page is written by two threads
+            int middle = ((this.from + this.to) >>> 1) & ~(PagedIntArray.PAGE_SIZE - 1);
+            invokeAll(new ColumnTask(this.table, this.column, this.update, this.changed, this.from, middle),
+                    new ColumnTask(this.table, this.column, this.update, this.changed, middle, this.to));
+        }
+    }
+
+
+    /**
+     * This class holds the costs collected in a batch until they are applied.
+     * The costs of a slot are chained from its last one back, so the collected
+     * cost of a path is found without looking through the whole batch. The
+     * arrays are kept for the next batch, so batches allocate nothing once
+     * the arrays are big enough
+     */
+    private static class PendingCosts {
+
+        // slot, column and cost of every collected cost, in the order they were set
+        int[] slots;
+        int[] columns;
+        int[] costs;
+
+        // index of the previous cost of the same slot, NONE for its first
+        int[] previous;
+
+        // kinds of changes made by applying every cost
+        byte[] changes;
+
+        // number of collected costs
+        int count;
+
+        // slot -> index of its last cost, NONE if it has none
+        int[] last;
+
+        // slot -> bits of the columns with a cost, see columnBit(), so most
+        // paths without one are told apart without following the chain
+        long[] columnBits;
+
+        // indexes of the costs ordered by the page of their slot
+        int[] order;
+
+        // page -> first position of its costs in the order, followed by the end
+        int[] pageStarts;
+
+        PendingCosts() {
+            this.slots = new int[16];
+            this.columns = new int[16];
+            this.costs = new int[16];
+            this.previous = new int[16];
+            this.changes = new byte[16];
+            this.count = 0;
+            this.last = new int[16];
+            Arrays.fill(this.last, NONE);
+            this.columnBits = new long[16];
+            this.order = new int[16];
+            this.pageStarts = new int[2];
+        }
+
+        /**
+         * This method collects a cost
+         * @param slot      slot of the destination
+         * @param column    column of the next hop
+         * @param cost      cost through the next hop
+         */
+        void add(int slot, int column, int cost){
+            if(this.count == this.slots.length){
+                int length = this.count << 1;
+                this.slots = Arrays.copyOf(this.slots, length);
+                this.columns = Arrays.copyOf(this.columns, length);
+                this.costs = Arrays.copyOf(this.costs, length);
+                this.previous = Arrays.copyOf(this.previous, length);
+                this.changes = Arrays.copyOf(this.changes, length);
+                this.order = Arrays.copyOf(this.order, length);
+            }
+            this.slots[this.count] = slot;
+            this.columns[this.count] = column;
+            this.costs[this.count] = cost;
+            if(slot >= this.last.length){
+                int length = this.last.length;
+                this.last = Arrays.copyOf(this.last, Math.max(slot + 1, length << 1));
+                Arrays.fill(this.last, length, this.last.length, NONE);
+                this.columnBits = Arrays.copyOf(this.columnBits, this.last.length);
+            }
+            this.previous[this.count] = this.last[slot];
+            this.last[slot] = this.count;
+            this.columnBits[slot] |= columnBit(column);
+            this.count++;
+        }
+
+        /**
+         * This method tells if a slot has collected costs
+         * @param slot slot of the destination
+         * @return
+         */
+        boolean contains(int slot){
+            return this.count > 0 && slot < this.last.length && this.last[slot] != NONE;
+        }
+
+        /**
+         * This method returns the last collected cost of a path
+         * @param slot      slot of the destination
+         * @param column    column of the next hop
+         * @return index of the cost or NONE if the path has none
+         */
+        int find(int slot, int column){
+            if(this.count == 0 || slot >= this.last.length
+                    || (this.columnBits[slot] & columnBit(column)) == 0){
+                return NONE;
+            }
+            int index = this.last[slot];
+            while(index != NONE && this.columns[index] != column){
+                index = this.previous[index];
+            }
+            return index;
+        }
+
+        /**
+         * This method orders the costs by the page of their slot, keeping the
+         * order in which they were set within a page
+         * @param pageCount number of pages of the table
+         */
+        void sortByPage(int pageCount){
+            if(this.pageStarts.length < pageCount + 1){
+                this.pageStarts = new int[Math.max(pageCount + 1, this.pageStarts.length << 1)];
+            }
+            Arrays.fill(this.pageStarts, 0, pageCount + 1, 0);
+            for(int i = 0; i < this.count; i++){
+                this.pageStarts[(this.slots[i] >>> PagedIntArray.PAGE_SHIFT) + 1]++;
+            }
+            for(int page = 0; page < pageCount; page++){
+                this.pageStarts[page + 1] += this.pageStarts[page];
+            }
+
+            // placing moves every start to the end of its page, which is the next page's start
+            for(int i = 0; i < this.count; i++){
+                this.order[this.pageStarts[this.slots[i] >>> PagedIntArray.PAGE_SHIFT]++] = i;
+            }
+            for(int page = pageCount; page > 0; page--){
+                this.pageStarts[page] = this.pageStarts[page - 1];
+            }
+            this.pageStarts[0] = 0;
+        }
+
+        /**
+         * This method returns the bit of a column in columnBits
+         * @param column column of the next hop
+         * @return bit, all columns from 63 on share the highest one
+         */
+        static long columnBit(int column){
+            return 1L << Math.min(column, 63);
+        }
+
+        /**
+         * This method drops the collected costs, keeping the arrays
+         */
+        void clear(){
+            for(int i = 0; i < this.count; i++){
+                this.last[this.slots[i]] = NONE;
+                this.columnBits[this.slots[i]] = 0;
+            }
+            this.count = 0;
+        }
+    }
+
+
+    /**
+     * This class applies the collected costs of a range of pages, splitting it
+     * in halves which are run in parallel until it has at most PARALLEL_COSTS
+     * costs or is one page
+     */
+    private static class PendingTask extends RecursiveAction {
+
+        // version of the serialized form, tasks are never serialized
+        private static final long serialVersionUID = 1L;
+
+        // table being updated
+        final DistanceVectorTable table;
+
+        // first page and page after the last one
+        final int from;
+        final int to;
+
+        PendingTask(DistanceVectorTable table, int from, int to) {
+            this.table = table;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int[] pageStarts = this.table.pending.pageStarts;
+            if(this.to - this.from == 1 || pageStarts[this.to] - pageStarts[this.from] <= PARALLEL_COSTS){
+                this.table.applyPages(this.from, this.to);
+                return;
+            }
+            // split at a page, so no page is written by two threads
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new PendingTask(this.table, this.from, middle),
+                    new PendingTask(this.table, middle, this.to));
+        }
+    }
+}
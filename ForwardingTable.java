@@ -0,0 +1,472 @@
+import java.util.Arrays;
+
+/**
+ * This class is the forwarding table (FIB) of the router. It is derived from the
+ * best routes of the distance vector and answers which next hop handles a packet
+ * for an address, using the longest matching prefix.
+ *
+ * Prefixes are kept in path compressed binary tries (Patricia tries), so a lookup
+ * visits at most one node per distinct prefix length on the path instead of one
+ * node per bit. Like a poptrie the first 8 bits are not walked bit by bit, prefixes
+ * of 8 bits or more are put in one of 256 tries picked by the first octet, the
+ * few shorter prefixes have a trie of their own which is only searched when
+ * nothing longer matches. Nodes are immutable and an update copies only the nodes
+ * on the path to the changed prefix, then publishes the new root with a volatile write.
+ * Lookups therefore need no lock and never see a half done update. Updates must
+ * be done by one thread at a time, i.e. while holding the router lock.
+ *
+ * A prefix may have several next hops at the same cost (equal cost multipath).
+ * select() spreads flows over them by hashing the addresses, ports and protocol
+ * of a packet, so the packets of one flow always take the same next hop and
+ * different flows use all of them. The hash is mapped onto the next hops by
+ * hash-threshold (RFC 2992), which moves fewer flows than a modulo when a next
+ * hop joins or leaves. Selecting allocates nothing
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class ForwardingTable {
+
+    // number of leading bits used to pick the trie of a prefix
+    public static final int STRIDE = 8;
+
+    // maximum number of equal cost next hops of a prefix
+    public static final int MAX_NEXT_HOPS = 16;
+
+    // next hops of a node without route
+    private static final int[] NO_NEXT_HOPS = new int[0];
+
+    // first octet -> root of the trie of prefixes of STRIDE bits or more, null if empty
+    private volatile Entry[] roots;
+
+    // root of the trie of prefixes shorter than STRIDE bits, null if empty
+    private volatile Entry shortRoot;
+
+    // number of prefixes in the table
+    private int size;
+
+
+    /**
+     * This constructor initializes an empty table
+     */
+    public ForwardingTable() {
+        this.roots = new Entry[1 << STRIDE];
+        this.shortRoot = null;
+        this.size = 0;
+    }
+
+
+    /**
+     * This method returns number of prefixes in the table
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * This method finds the longest prefix which matches an address
+     * @param address 32 bit address
+     * @return entry of the prefix or null if no prefix matches
+     */
+    public Entry lookup(int address){
+        Entry best = lookup(this.roots[address >>> (32 - STRIDE)], address);
+        return best != null ? best : lookup(this.shortRoot, address);
+    }
+
+
+    /**
+     * This method picks the next hop of a flow. The longest prefix matching
+     * the destination is looked up and one of its equal cost next hops is
+     * chosen by the hash of the flow
+     * @param source            source address of the packet
+     * @param destination       destination address of the packet
+     * @param sourcePort        source port, 0 if the protocol has none
+     * @param destinationPort   destination port, 0 if the protocol has none
+     * @param protocol          IP protocol number
+     * @return address of the next hop or 0 if no prefix matches
+     */
+    public int select(int source, int destination, int sourcePort, int destinationPort, int protocol){
+        Entry entry = this.lookup(destination);
+        if(entry == null){
+            return 0;
+        }
+        return entry.select(flowHash(source, destination, sourcePort, destinationPort, protocol));
+    }
+
+
+    /**
+     * This method hashes the key of a flow. Every field is mixed in with the
+     * finalizer of MurmurHash3, so flows differing in one port spread evenly
+     * @return hash of the flow
+     */
+    public static int flowHash(int source, int destination, int sourcePort, int destinationPort,
+                                int protocol){
+        int hash = mix(0x9e3779b9 ^ source);
+        hash = mix(hash ^ destination);
+        hash = mix(hash ^ ((sourcePort << 16) | (destinationPort & 0xffff)));
+        return mix(hash ^ protocol);
+    }
+
+
+    /**
+     * This method scrambles the bits of an int (finalizer of MurmurHash3)
+     * @param hash value to be scrambled
+     * @return
+     */
+    private static int mix(int hash){
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+
+    /**
+     * This method finds the longest prefix in a trie which matches an address
+     * @param node      root of the trie
+     * @param address   32 bit address
+     * @return entry of the prefix or null if no prefix matches
+     */
+    private static Entry lookup(Entry node, int address){
+        Entry best = null;
+        while(node != null && matches(address, node.prefix, node.length)){
+            if(node.hasRoute){
+                best = node;
+            }
+            if(node.length == 32){
+                break;
+            }
+            node = bit(address, node.length) == 0 ? node.zero : node.one;
+        }
+        return best;
+    }
+
+
+    /**
+     * This method adds a prefix or changes its next hop and cost
+     * @param prefix    address of the prefix, host bits are ignored
+     * @param length    length of the prefix, 0 to 32
+     * @param nextHop   address of the next hop
+     * @param cost      cost through the next hop
+     */
+    public void put(int prefix, int length, int nextHop, int cost){
+        this.put(prefix, length, new int[]{nextHop}, cost);
+    }
+
+
+    /**
+     * This method adds a prefix with equal cost next hops or changes them and their cost.
+     * The next hops are kept in address order, so a group is stored and compared
+     * the same way whichever of its next hops the distance vector prefers, and a
+     * change of only the preferred next hop moves no flow
+     * @param prefix    address of the prefix, host bits are ignored
+     * @param length    length of the prefix, 0 to 32
+     * @param nextHops  addresses of the next hops in any order, the array is sorted
+     *                  and kept by the table and must not be changed
+     * @param cost      cost through the next hops
+     */
+    public void put(int prefix, int length, int[] nextHops, int cost){
+        sortNextHops(nextHops, nextHops.length);
+        prefix &= IPv4.toMask(length);
+        if(length < STRIDE){
+            this.shortRoot = this.put(this.shortRoot, prefix, length, nextHops, cost);
+            return;
+        }
+        int index = prefix >>> (32 - STRIDE);
+        this.setRoot(index, this.put(this.roots[index], prefix, length, nextHops, cost));
+    }
+
+
+    /**
+     * This method sorts equal cost next hops into the order of their addresses,
+     * compared unsigned like the dotted addresses read. Groups have at most
+     * MAX_NEXT_HOPS next hops, so an insertion sort is used
+     * @param nextHops  addresses of the next hops
+     * @param count     number of next hops in the array
+     */
+    public static void sortNextHops(int[] nextHops, int count){
+        for(int i = 1; i < count; i++){
+            int nextHop = nextHops[i];
+            int j = i - 1;
+            while(j >= 0 && Integer.compareUnsigned(nextHops[j], nextHop) > 0){
+                nextHops[j + 1] = nextHops[j];
+                j--;
+            }
+            nextHops[j + 1] = nextHop;
+        }
+    }
+
+
+    /**
+     * This method removes a prefix
+     * @param prefix    address of the prefix, host bits are ignored
+     * @param length    length of the prefix, 0 to 32
+     */
+    public void remove(int prefix, int length){
+        prefix &= IPv4.toMask(length);
+        if(length < STRIDE){
+            this.shortRoot = this.remove(this.shortRoot, prefix, length);
+            return;
+        }
+        int index = prefix >>> (32 - STRIDE);
+        this.setRoot(index, this.remove(this.roots[index], prefix, length));
+    }
+
+
+    /**
+     * This method publishes a new root of one of the tries, the array of roots
+     * is copied so lookups keep seeing the old one until the new one is complete
+     * @param index first octet of the trie's prefixes
+     * @param root  new root of the trie
+     */
+    private void setRoot(int index, Entry root){
+        if(this.roots[index] == root){
+            return;
+        }
+        Entry[] roots = this.roots.clone();
+        roots[index] = root;
+        this.roots = roots;
+    }
+
+
+    /**
+     * This method adds a prefix below a node
+     * @param node      node the prefix belongs under, may be null
+     * @param prefix    address of the prefix
+     * @param length    length of the prefix
+     * @param nextHops  addresses of the next hops
+     * @param cost      cost through the next hops
+     * @return the node replacing the given one
+     */
+    private Entry put(Entry node, int prefix, int length, int[] nextHops, int cost){
+        if(node == null){
+            this.size++;
+            return new Entry(prefix, length, true, nextHops, cost, null, null);
+        }
+        int common = commonLength(node.prefix, node.length, prefix, length);
+        if(common == node.length && common == length){
+            // same prefix
+            if(!node.hasRoute){
+                this.size++;
+            }else if(node.cost == cost && Arrays.equals(node.nextHops, nextHops)){
+                return node;
+            }
+            return new Entry(prefix, length, true, nextHops, cost, node.zero, node.one);
+        }
+        if(common == node.length){
+            // prefix is longer, it belongs in one of the children
+            if(bit(prefix, node.length) == 0){
+                return node.withChildren(this.put(node.zero, prefix, length, nextHops, cost), node.one);
+            }
+            return node.withChildren(node.zero, this.put(node.one, prefix, length, nextHops, cost));
+        }
+        this.size++;
+        if(common == length){
+            // prefix is shorter, the node goes below it
+            return bit(node.prefix, length) == 0
+                    ? new Entry(prefix, length, true, nextHops, cost, node, null)
+                    : new Entry(prefix, length, true, nextHops, cost, null, node);
+        }
+        // prefixes differ after the common bits, a node without route joins them
+        Entry leaf = new Entry(prefix, length, true, nextHops, cost, null, null);
+        int joint = prefix & IPv4.toMask(common);
+        return bit(prefix, common) == 0
+                ? new Entry(joint, common, false, NO_NEXT_HOPS, 0, leaf, node)
+                : new Entry(joint, common, false, NO_NEXT_HOPS, 0, node, leaf);
+    }
+
+
+    /**
+     * This method removes a prefix below a node
+     * @param node      node the prefix belongs under, may be null
+     * @param prefix    address of the prefix
+     * @param length    length of the prefix
+     * @return the node replacing the given one
+     */
+    private Entry remove(Entry node, int prefix, int length){
+        if(node == null || node.length > length || !matches(prefix, node.prefix, node.length)){
+            return node;
+        }
+        Entry replacement;
+        if(node.length == length){
+            if(!node.hasRoute){
+                return node;
+            }
+            this.size--;
+            replacement = new Entry(node.prefix, node.length, false, NO_NEXT_HOPS, 0, node.zero, node.one);
+        }else if(bit(prefix, node.length) == 0){
+            Entry zero = this.remove(node.zero, prefix, length);
+            if(zero == node.zero){
+                return node;
+            }
+            replacement = node.withChildren(zero, node.one);
+        }else{
+            Entry one = this.remove(node.one, prefix, length);
+            if(one == node.one){
+                return node;
+            }
+            replacement = node.withChildren(node.zero, one);
+        }
+
+        // nodes without route are only kept to join two children
+        if(!replacement.hasRoute){
+            if(replacement.zero == null){
+                return replacement.one;
+            }
+            if(replacement.one == null){
+                return replacement.zero;
+            }
+        }
+        return replacement;
+    }
+
+
+    /**
+     * This method returns a bit of an address, bit 0 is the most significant one
+     * @param address   32 bit address
+     * @param index     index of the bit, 0 to 31
+     * @return 0 or 1
+     */
+    private static int bit(int address, int index){
+        return (address >>> (31 - index)) & 1;
+    }
+
+
+    /**
+     * This method checks if an address is inside a prefix
+     * @param address   32 bit address
+     * @param prefix    address of the prefix
+     * @param length    length of the prefix
+     * @return
+     */
+    private static boolean matches(int address, int prefix, int length){
+        return ((address ^ prefix) & IPv4.toMask(length)) == 0;
+    }
+
+
+    /**
+     * This method returns the number of leading bits two prefixes have in common
+     * @return
+     */
+    private static int commonLength(int prefix1, int length1, int prefix2, int length2){
+        int common = Integer.numberOfLeadingZeros(prefix1 ^ prefix2);
+        return Math.min(common, Math.min(length1, length2));
+    }
+
+
+    /**
+     * This class is one node of the trie. Nodes with a route are the entries
+     * returned by lookup
+     */
+    public static class Entry {
+
+        // address and length of the prefix
+        private final int prefix;
+        private final int length;
+
+        // flag to show if the prefix has a route or only joins two children
+        private final boolean hasRoute;
+
+        // equal cost next hops of the route in address order
+        private final int[] nextHops;
+
+        // cost of the route
+        private final int cost;
+
+        // children whose next bit after the prefix is 0 and 1
+        private final Entry zero;
+        private final Entry one;
+
+        Entry(int prefix, int length, boolean hasRoute, int[] nextHops, int cost,
+              Entry zero, Entry one) {
+            this.prefix = prefix;
+            this.length = length;
+            this.hasRoute = hasRoute;
+            this.nextHops = nextHops;
+            this.cost = cost;
+            this.zero = zero;
+            this.one = one;
+        }
+
+        /**
+         * This method returns a copy of the node with other children
+         */
+        private Entry withChildren(Entry zero, Entry one){
+            return new Entry(this.prefix, this.length, this.hasRoute, this.nextHops, this.cost,
+                    zero, one);
+        }
+
+        /**
+         * This method returns the address of the prefix
+         * @return
+         */
+        public int getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * This method returns the length of the prefix
+         * @return
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * This method returns the address of the first next hop, the only one
+         * of a route without equal cost next hops
+         * @return
+         */
+        public int getNextHop() {
+            return nextHops[0];
+        }
+
+        /**
+         * This method returns the number of equal cost next hops
+         * @return
+         */
+        public int getNextHopCount() {
+            return nextHops.length;
+        }
+
+        /**
+         * This method returns one of the equal cost next hops
+         * @param index index of the next hop, in address order
+         * @return address of the next hop
+         */
+        public int getNextHop(int index) {
+            return nextHops[index];
+        }
+
+        /**
+         * This method picks the next hop of a flow by hash-threshold, i.e. the
+         * hash space is split into one equal range per next hop
+         * @param flowHash hash of the flow
+         * @return address of the next hop
+         */
+        public int select(int flowHash) {
+            int index = (int) (((flowHash & 0xffffffffL) * this.nextHops.length) >>> 32);
+            return this.nextHops[index];
+        }
+
+        /**
+         * This method returns the cost through the next hop
+         * @return
+         */
+        public int getCost() {
+            return cost;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder nextHops = new StringBuilder(IPv4.toString(this.nextHops[0]));
+            for(int i = 1; i < this.nextHops.length; i++){
+                nextHops.append(", ").append(IPv4.toString(this.nextHops[i]));
+            }
+            return IPv4.toString(this.prefix) + "/" + this.length + " via "
+                    + nextHops + " cost " + this.cost;
+        }
+    }
+}
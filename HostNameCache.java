@@ -0,0 +1,186 @@
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class caches the host names of IP addresses for printing.
+ * A name which is not cached is looked up by a background thread and the IP
+ * itself is returned until the name is known, so callers never wait for DNS.
+ * Names are kept for a TTL, addresses without a name are remembered for a
+ * shorter negative TTL so they are not looked up again on every print.
+ * An expired name is still returned while it is being looked up again
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class HostNameCache {
+
+    // time in milliseconds for which a name is kept
+    public static final long DEFAULT_TTL = 10 * 60 * 1000;
+
+    // time in milliseconds for which an address without a name is remembered
+    public static final long DEFAULT_NEGATIVE_TTL = 60 * 1000;
+
+    // maximum number of lookups waiting for the resolver thread
+    public static final int MAX_PENDING = 1024;
+
+    // IP -> cached name
+    private ConcurrentHashMap<String, CachedName> names;
+
+    // IPs being looked up
+    private Set<String> pending;
+
+    // thread looking up the names
+    private ThreadPoolExecutor executor;
+
+    // time in milliseconds for which names and missing names are kept
+    private long ttl;
+    private long negativeTtl;
+
+    // number of calls answered from the cache and calls which were not
+    private LongAdder hits;
+    private LongAdder misses;
+
+
+    /**
+     * This constructor initializes the cache with the default TTLs
+     */
+    public HostNameCache() {
+        this(DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+    }
+
+
+    /**
+     * This constructor initializes the cache
+     * @param ttl           time in milliseconds for which a name is kept
+     * @param negativeTtl   time in milliseconds for which an address without a name is remembered
+     */
+    public HostNameCache(long ttl, long negativeTtl) {
+        this.names = new ConcurrentHashMap<>();
+        this.pending = ConcurrentHashMap.newKeySet();
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "host-name-resolver");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+
+    /**
+     * This method returns the host name of an IP without waiting for DNS
+     * @param ip IP address
+     * @return host name, or the IP itself if the name is not known (yet)
+     */
+    public String getHostName(String ip){
+        CachedName cached = this.names.get(ip);
+        if(cached != null && cached.expiresAt - System.nanoTime() > 0){
+            this.hits.increment();
+            return cached.name;
+        }
+        this.misses.increment();
+        this.resolveLater(ip);
+        return cached != null ? cached.name : ip;
+    }
+
+
+    /**
+     * This method asks the resolver thread to look up an IP, unless it is
+     * already being looked up
+     * @param ip IP address
+     */
+    private void resolveLater(final String ip){
+        if(!this.pending.add(ip)){
+            return;
+        }
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    resolve(ip);
+                }
+            });
+        } catch (RejectedExecutionException e){
+            // too many lookups waiting, it is asked again on the next call
+            this.pending.remove(ip);
+        }
+    }
+
+
+    /**
+     * This method looks up the name of an IP and caches it
+     * @param ip IP address
+     */
+    private void resolve(String ip){
+        String name;
+        try {
+            name = InetAddress.getByName(ip).getHostName();
+        } catch (UnknownHostException e){
+            name = ip;
+        }
+
+        // the IP itself comes back when the address has no name
+        long ttl = name.equals(ip) ? this.negativeTtl : this.ttl;
+        this.names.put(ip, new CachedName(name,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl)));
+        this.pending.remove(ip);
+    }
+
+
+    /**
+     * This method returns number of calls answered from the cache
+     * @return
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+
+    /**
+     * This method returns number of calls which had no fresh name in the cache
+     * @return
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+
+    /**
+     * This method returns number of IPs in the cache
+     * @return
+     */
+    public int size() {
+        return names.size();
+    }
+
+
+    /**
+     * This class holds a cached name and the time it expires
+     */
+    private static class CachedName {
+
+        // host name, the IP itself if the address has no name
+        final String name;
+
+        // System.nanoTime() at which the name expires
+        final long expiresAt;
+
+        CachedName(String name, long expiresAt) {
+            this.name = name;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
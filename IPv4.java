@@ -0,0 +1,96 @@
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * This class has helper methods to convert IPv4 addresses between the dotted
+ * decimal string form used on the console and the 32 bit form used on the wire
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class IPv4 {
+
+    /**
+     * This method converts an IPv4 address into its 32 bit integer form.
+     * Dotted decimal addresses are parsed directly, anything else is resolved
+     * as a host name
+     * @param address IPv4 address or host name
+     * @return 32 bit integer form of the address
+     * @throws UnknownHostException if the address can't be resolved to an IPv4 address
+     */
+    public static int toInt(String address) throws UnknownHostException{
+        int value = 0;
+        int octet = 0;
+        int octets = 0;
+        boolean digitSeen = false;
+        for(int i = 0; i < address.length(); i++){
+            char c = address.charAt(i);
+            if(c >= '0' && c <= '9'){
+                octet = octet * 10 + (c - '0');
+                digitSeen = true;
+                if(octet > 255){
+                    return resolve(address);
+                }
+            }else if(c == '.' && digitSeen && octets < 3){
+                value = (value << 8) | octet;
+                octet = 0;
+                octets++;
+                digitSeen = false;
+            }else{
+                return resolve(address);
+            }
+        }
+        if(octets != 3 || !digitSeen){
+            return resolve(address);
+        }
+        return (value << 8) | octet;
+    }
+
+
+    /**
+     * This method converts a 32 bit address into dotted decimal form
+     * @param address 32 bit address
+     * @return dotted decimal string of the address
+     */
+    public static String toString(int address){
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "."
+                + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+
+    /**
+     * This method converts a prefix length into a subnet mask
+     * @param length length of the prefix, 0 to 32
+     * @return 32 bit subnet mask
+     */
+    public static int toMask(int length){
+        return length == 0 ? 0 : -1 << (32 - length);
+    }
+
+
+    /**
+     * This method converts a subnet mask into a prefix length, i.e. the number
+     * of leading one bits of the mask
+     * @param mask 32 bit subnet mask
+     * @return length of the prefix, 0 to 32
+     */
+    public static int toPrefixLength(int mask){
+        return Integer.numberOfLeadingZeros(~mask);
+    }
+
+
+    /**
+     * This method resolves a host name to its 32 bit IPv4 address
+     * @param hostName name of the host
+     * @return 32 bit address of the host
+     * @throws UnknownHostException if the host has no IPv4 address
+     */
+    private static int resolve(String hostName) throws UnknownHostException{
+        InetAddress address = InetAddress.getByName(hostName);
+        if(!(address instanceof Inet4Address)){
+            throw new UnknownHostException(hostName + " is not an IPv4 host");
+        }
+        byte[] bytes = address.getAddress();
+        return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16)
+                | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+    }
+}
@@ -0,0 +1,596 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class holds the decoded route updates waiting to be merged, in one
+ * mailbox per neighbor. A newer update replaces the route entries of the
+ * pending ones for the same destinations, since only the neighbor's newest
+ * cost to a destination matters, so a burst of advertisements from one
+ * neighbor is merged once. The headers of the updates (versions, fragments
+ * and acks) are kept in order, so the neighbor's version bookkeeping is the
+ * same as if every update was merged on its own. A full table supersedes the
+ * entries of the updates before it, so the routes it doesn't carry are
+ * flushed by the router like when every update is merged on its own.
+ *
+ * Mailboxes are keyed by the source address the datagram was received from,
+ * not by the sender written in its header, and an update whose header names
+ * another sender than the mailbox was opened for is dropped. Mailboxes which
+ * have been idle for MAILBOX_IDLE_NANOS, or any idle one when all
+ * MAX_MAILBOXES are in use, are reclaimed.
+ *
+ * The number of pending entries and headers is bounded. An update which
+ * doesn't fit is dropped whole, its version is never acknowledged and the
+ * neighbor sends the routes again. Updates are offered by the decode workers
+ * and taken by a single apply thread, which parks while no mailbox is ready
+ * and is unparked by the next offer, so waiting allocates nothing
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class IngressQueue {
+
+    // default number of entries and headers the queue holds, a full table of a
+    // million routes fits. The arrays of a mailbox only grow as far as they are filled
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    // maximum number of sources with a mailbox
+    public static final int MAX_MAILBOXES = 1024;
+
+    // time in nanoseconds after which a mailbox without updates is reclaimed,
+    // the routes of a neighbor silent for that long have timed out
+    public static final long MAILBOX_IDLE_NANOS = 180L * 1000000000L;
+
+    // time in nanoseconds between two looks for idle mailboxes
+    private static final long SWEEP_NANOS = 10L * 1000000000L;
+
+    // number of entries and headers the queue holds
+    private int capacity;
+
+    // number of entries and headers pending in all the mailboxes
+    private AtomicInteger size;
+
+    // mailbox index of every source address
+    private IntIndexMap sources;
+    private ArrayList<Mailbox> mailboxes;
+
+    // System.nanoTime() of the last look for idle mailboxes
+    private long lastSweep;
+
+    // mailboxes with pending updates, in the order they got them
+    private ArrayBlockingQueue<Mailbox> ready;
+
+    // apply thread and flag to show if it is parked waiting for a ready mailbox
+    private volatile Thread taker;
+    private volatile boolean sleeping;
+
+    // mailboxes taken by the apply thread and the updates taken from them
+    private ArrayList<Mailbox> taken;
+    private RIPPacket[] takenUpdates;
+
+    // metrics the coalesced updates are counted in
+    private RouterMetrics metrics;
+
+    // number of updates taken by the apply thread, including the coalesced ones
+    private AtomicLong delivered;
+
+
+    /**
+     * This constructor initializes an empty queue
+     * @param capacity    number of entries and headers the queue holds
+     * @param metrics     metrics the coalesced updates are counted in
+     */
+    public IngressQueue(int capacity, RouterMetrics metrics) {
+        this.capacity = capacity;
+        this.metrics = metrics;
+        this.size = new AtomicInteger();
+        this.sources = new IntIndexMap(16);
+        this.mailboxes = new ArrayList<>();
+        this.lastSweep = System.nanoTime();
+        this.ready = new ArrayBlockingQueue<>(MAX_MAILBOXES);
+        this.taken = new ArrayList<>();
+        this.takenUpdates = new RIPPacket[16];
+        this.delivered = new AtomicLong();
+    }
+
+
+    /**
+     * This method returns number of entries and headers pending
+     * @return
+     */
+    public int size(){
+        return this.size.get();
+    }
+
+
+    /**
+     * This method returns number of updates taken by the apply thread so far
+     * @return
+     */
+    public long getDelivered(){
+        return this.delivered.get();
+    }
+
+
+    /**
+     * This method copies a decoded update into the mailbox of its source without waiting
+     * @param update decoded update, it can be reused as soon as this method returns
+     * @param source address the datagram of the update was received from
+     * @return true if the update was taken, false if it was dropped because the queue
+     *         is full or the update names another sender than its mailbox
+     */
+    public boolean offer(RIPPacket update, int source){
+        while(true){
+            Mailbox mailbox = this.mailbox(source, update.getSenderAddress());
+            if(mailbox == null){
+                return false;
+            }
+            synchronized (mailbox){
+                if(mailbox.retired){
+                    // reclaimed since it was looked up, the source gets a new one
+                    continue;
+                }
+                return this.offer(mailbox, update);
+            }
+        }
+    }
+
+
+    /**
+     * This method coalesces an update into a mailbox. Caller must hold the mailbox's lock
+     * @param mailbox mailbox of the update's source
+     * @param update  decoded update
+     * @return true if the update was taken
+     */
+    private boolean offer(Mailbox mailbox, RIPPacket update){
+        if(update.getSenderAddress() != mailbox.sender){
+            // an update naming another router must not be merged as this one's
+            return false;
+        }
+        Pending pending = mailbox.filling;
+        int growth = pending.growth(update);
+        if(!this.reserve(growth)){
+            return false;
+        }
+        if(pending.updates > 0){
+            this.metrics.updateCoalesced();
+        }
+        pending.add(update, growth);
+        mailbox.lastOffer = System.nanoTime();
+        if(!mailbox.queued){
+            // never full, it has room for every mailbox
+            mailbox.queued = true;
+            this.ready.offer(mailbox);
+            if(this.sleeping){
+                LockSupport.unpark(this.taker);
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * This method waits for pending updates and takes them out of the mailboxes.
+     * Every mailbox gives its coalesced route entries as one update, followed by
+     * the headers of the updates. Mailboxes stay taken until release()
+     * @param maxMailboxes maximum number of mailboxes to take
+     * @return number of updates in getTaken()
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public int take(int maxMailboxes) throws InterruptedException {
+        this.taker = Thread.currentThread();
+        Mailbox first;
+        while((first = this.ready.poll()) == null){
+            // the flag is set before checking again, so a mailbox queued
+            // meanwhile either is seen here or unparks the thread
+            this.sleeping = true;
+            if(this.ready.isEmpty()){
+                LockSupport.park(this);
+            }
+            this.sleeping = false;
+            if(Thread.interrupted()){
+                throw new InterruptedException();
+            }
+        }
+        this.taken.add(first);
+        this.ready.drainTo(this.taken, maxMailboxes - 1);
+        int count = 0;
+        long updates = 0;
+        for(Mailbox mailbox: this.taken){
+            Pending pending;
+            synchronized (mailbox){
+                pending = mailbox.filling;
+                mailbox.filling = mailbox.spare;
+                mailbox.spare = pending;
+            }
+            if(count + pending.headerCount + 1 > this.takenUpdates.length){
+                this.takenUpdates = Arrays.copyOf(this.takenUpdates,
+                        2 * (count + pending.headerCount + 1));
+            }
+            count = pending.drainTo(this.takenUpdates, count);
+            updates += pending.updates;
+        }
+        this.delivered.addAndGet(updates);
+        long now = System.nanoTime();
+        if(now - this.lastSweep > SWEEP_NANOS){
+            this.lastSweep = now;
+            this.reclaim(now, MAILBOX_IDLE_NANOS);
+        }
+        return count;
+    }
+
+
+    /**
+     * This method returns the updates of the last take()
+     * @return
+     */
+    public RIPPacket[] getTaken(){
+        return this.takenUpdates;
+    }
+
+
+    /**
+     * This method gives the mailboxes of the last take() back, once their updates are merged
+     */
+    public void release(){
+        for(Mailbox mailbox: this.taken){
+            synchronized (mailbox){
+                Pending pending = mailbox.spare;
+                this.size.addAndGet(-pending.reserved);
+                pending.clear();
+
+                // updates which came in meanwhile keep the mailbox in the queue
+                if(mailbox.filling.updates > 0){
+                    this.ready.offer(mailbox);
+                }else{
+                    mailbox.queued = false;
+                }
+            }
+        }
+        this.taken.clear();
+    }
+
+
+    /**
+     * This method returns number of sources with a mailbox
+     * @return
+     */
+    public synchronized int getMailboxCount(){
+        return this.mailboxes.size();
+    }
+
+
+    /**
+     * This method returns the mailbox of a source, it is added on its first update.
+     * When all the mailboxes are in use the idle ones are reclaimed first
+     * @param source    address the datagrams are received from
+     * @param sender    sender named by the update, a new mailbox is opened for it
+     * @return mailbox or null if MAX_MAILBOXES sources have updates pending
+     */
+    private synchronized Mailbox mailbox(int source, int sender){
+        int index = this.sources.get(source);
+        if(index != IntIndexMap.MISSING){
+            return this.mailboxes.get(index);
+        }
+        if(this.mailboxes.size() == MAX_MAILBOXES){
+            this.reclaim(System.nanoTime(), 0);
+            if(this.mailboxes.size() == MAX_MAILBOXES){
+                return null;
+            }
+        }
+        Mailbox mailbox = new Mailbox(source, sender);
+        this.sources.put(source, this.mailboxes.size());
+        this.mailboxes.add(mailbox);
+        return mailbox;
+    }
+
+
+    /**
+     * This method reclaims the mailboxes without pending updates which got none
+     * for some time. A worker which looked up a reclaimed mailbox before sees it
+     * retired and looks its source up again
+     * @param now       System.nanoTime() now
+     * @param idleNanos time in nanoseconds a mailbox must have been idle
+     */
+    private synchronized void reclaim(long now, long idleNanos){
+        for(int i = this.mailboxes.size() - 1; i >= 0; i--){
+            Mailbox mailbox = this.mailboxes.get(i);
+            synchronized (mailbox){
+                if(mailbox.queued || mailbox.filling.updates > 0 || now - mailbox.lastOffer < idleNanos){
+                    continue;
+                }
+                mailbox.retired = true;
+            }
+
+            // the last mailbox takes the place of the reclaimed one
+            Mailbox last = this.mailboxes.remove(this.mailboxes.size() - 1);
+            this.sources.remove(mailbox.source);
+            if(last != mailbox){
+                this.mailboxes.set(i, last);
+                this.sources.put(last.source, i);
+            }
+        }
+    }
+
+
+    /**
+     * This method reserves room for entries and headers
+     * @param count number of entries and headers
+     * @return true if they fit in the queue
+     */
+    private boolean reserve(int count){
+        while(true){
+            int current = this.size.get();
+            if(current + count > this.capacity){
+                return false;
+            }
+            if(this.size.compareAndSet(current, current + count)){
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * This class is the mailbox of one source. Updates are coalesced into the
+     * filling half while the apply thread merges the other one
+     */
+    private static class Mailbox {
+
+        // address the datagrams are received from and the sender they must name
+        final int source;
+        final int sender;
+
+        // pending updates being coalesced
+        Pending filling;
+
+        // updates taken by the apply thread, empty when it is not taken
+        Pending spare;
+
+        // flag to show if the mailbox is in the ready queue or taken
+        boolean queued;
+
+        // flag to show if the mailbox has been reclaimed
+        boolean retired;
+
+        // System.nanoTime() of the last update taken into the mailbox
+        long lastOffer;
+
+        Mailbox(int source, int sender) {
+            this.source = source;
+            this.sender = sender;
+            this.filling = new Pending(sender);
+            this.spare = new Pending(sender);
+            this.lastOffer = System.nanoTime();
+        }
+    }
+
+
+    /**
+     * This class holds the coalesced updates of one sender
+     */
+    private static class Pending {
+
+        // newest route entry of every destination
+        final RIPPacket entries;
+
+        // address -> index of the last entry with that address in entries, and
+        // entry index -> index of the entry before it with the same address, MISSING if none
+        final IntIndexMap index;
+        int[] sameAddress;
+
+        // headers of the updates in the order they came, without entries
+        RIPPacket[] headers;
+        int headerCount;
+
+        // hash of a header -> index of the last header with that hash, and
+        // header index -> index of the header before it with the same hash, MISSING if none
+        final IntIndexMap headerIndex;
+        int[] sameHash;
+
+        // epoch and table version of the last full table coalesced, 0 if none
+        int fullTableEpoch;
+        int fullTableVersion;
+
+        // number of updates coalesced
+        int updates;
+
+        // room reserved in the queue, at least the entries and headers held
+        int reserved;
+
+        Pending(int sender) {
+            this.entries = new RIPPacket(sender, 4);
+            this.index = new IntIndexMap(16);
+            this.sameAddress = new int[4];
+            this.headers = new RIPPacket[4];
+            this.headerIndex = new IntIndexMap(16);
+            this.sameHash = new int[4];
+            this.updates = 0;
+        }
+
+        /**
+         * This method returns by how many entries and headers an update would grow this
+         * @param update decoded update
+         * @return
+         */
+        int growth(RIPPacket update){
+            int growth = this.hasHeader(update) ? 0 : 1;
+            if(this.startsFullTable(update)){
+                return growth + update.getEntryCount();
+            }
+            for(int i = 0; i < update.getEntryCount(); i++){
+                if(this.find(update.getAddress(i), update.getMask(i)) == IntIndexMap.MISSING){
+                    growth++;
+                }
+            }
+            return growth;
+        }
+
+        /**
+         * This method tells if an update is the first fragment coalesced of a
+         * full table, i.e. one which changes the versions
+         * @param update decoded update
+         * @return
+         */
+        boolean startsFullTable(RIPPacket update){
+            return update.getBaseVersion() == 0 && update.getTableVersion() > 0
+                    && (update.getEpoch() != this.fullTableEpoch
+                    || update.getTableVersion() != this.fullTableVersion);
+        }
+
+        /**
+         * This method finds the pending entry of a destination. The same address
+         * with another mask is another destination
+         * @param address   address of the destination
+         * @param mask      mask of the destination
+         * @return index of the entry, MISSING if there is none
+         */
+        int find(int address, int mask){
+            int entry = this.index.get(address);
+            while(entry != IntIndexMap.MISSING && this.entries.getMask(entry) != mask){
+                entry = this.sameAddress[entry];
+            }
+            return entry;
+        }
+
+        /**
+         * This method coalesces an update, its entries replace the pending ones
+         * of the same destinations
+         * @param update    decoded update
+         * @param growth    room reserved for it
+         */
+        void add(RIPPacket update, int growth){
+            if(this.startsFullTable(update)){
+                // the room of the superseded entries stays reserved until the release
+                this.clearEntries();
+                this.fullTableEpoch = update.getEpoch();
+                this.fullTableVersion = update.getTableVersion();
+            }
+            for(int i = 0; i < update.getEntryCount(); i++){
+                int address = update.getAddress(i);
+                int entry = this.find(address, update.getMask(i));
+                if(entry == IntIndexMap.MISSING){
+                    entry = this.entries.getEntryCount();
+                    if(entry == this.sameAddress.length){
+                        this.sameAddress = Arrays.copyOf(this.sameAddress, entry * 2);
+                    }
+                    this.sameAddress[entry] = this.index.get(address);
+                    this.index.put(address, entry);
+                    this.entries.addEntry(address, update.getMask(i), update.getNextHopAddress(i),
+                            update.getMetricValue(i), update.getRouteTag(i));
+                }else{
+                    this.entries.setEntry(entry, address, update.getMask(i), update.getNextHopAddress(i),
+                            update.getMetricValue(i), update.getRouteTag(i));
+                }
+            }
+
+            // a repeated header, e.g. of a periodic update, changes nothing the second time
+            if(!this.hasHeader(update)){
+                if(this.headerCount == this.headers.length){
+                    this.headers = Arrays.copyOf(this.headers, this.headerCount * 2);
+                    this.sameHash = Arrays.copyOf(this.sameHash, this.headerCount * 2);
+                }
+                int hash = headerHash(update);
+                this.sameHash[this.headerCount] = this.headerIndex.get(hash);
+                this.headerIndex.put(hash, this.headerCount);
+                RIPPacket header = this.headers[this.headerCount];
+                if(header == null){
+                    header = new RIPPacket(update.getSenderAddress(), 0);
+                    this.headers[this.headerCount] = header;
+                }
+                header.setHeader(update.getEpoch(), update.getTableVersion(), update.getBaseVersion(),
+                        update.getFragment(), update.getFragmentCount());
+                header.setAck(update.getAckEpoch(), update.getAckVersion());
+                this.headerCount++;
+            }
+            this.updates++;
+            this.reserved += growth;
+        }
+
+        /**
+         * This method tells if a header is pending already. Only the headers
+         * with the same hash are compared, so a burst of F fragments costs O(F)
+         * @param update decoded update
+         * @return
+         */
+        boolean hasHeader(RIPPacket update){
+            int i = this.headerIndex.get(headerHash(update));
+            for(; i != IntIndexMap.MISSING; i = this.sameHash[i]){
+                RIPPacket header = this.headers[i];
+                if(header.getEpoch() == update.getEpoch()
+                        && header.getTableVersion() == update.getTableVersion()
+                        && header.getBaseVersion() == update.getBaseVersion()
+                        && header.getFragment() == update.getFragment()
+                        && header.getFragmentCount() == update.getFragmentCount()
+                        && header.getAckEpoch() == update.getAckEpoch()
+                        && header.getAckVersion() == update.getAckVersion()){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * This method hashes the fields of a header which tell the updates apart
+         * @param update decoded update
+         * @return
+         */
+        static int headerHash(RIPPacket update){
+            int hash = update.getEpoch();
+            hash = hash * 31 + update.getTableVersion();
+            hash = hash * 31 + update.getBaseVersion();
+            hash = hash * 31 + update.getFragment();
+            hash = hash * 31 + update.getFragmentCount();
+            hash = hash * 31 + update.getAckEpoch();
+            hash = hash * 31 + update.getAckVersion();
+            return hash;
+        }
+
+        /**
+         * This method writes the updates to be merged: the entries first under a
+         * header which changes no version, then the headers in order
+         * @param updates   array to write into
+         * @param offset    index of the first update to write
+         * @return index after the last update written
+         */
+        int drainTo(RIPPacket[] updates, int offset){
+            if(this.entries.getEntryCount() > 0){
+                // the epoch is the first header's, so the neighbor doesn't see a restart twice
+                RIPPacket first = this.headers[0];
+                this.entries.setHeader(first.getEpoch(), 0, 0, 0, 1);
+                this.entries.setAck(0, 0);
+                updates[offset++] = this.entries;
+            }
+            for(int i = 0; i < this.headerCount; i++){
+                updates[offset++] = this.headers[i];
+            }
+            return offset;
+        }
+
+        /**
+         * This method removes the coalesced entries, the headers are kept
+         */
+        void clearEntries(){
+            for(int i = 0; i < this.entries.getEntryCount(); i++){
+                this.index.remove(this.entries.getAddress(i));
+            }
+            this.entries.clearEntries();
+        }
+
+        /**
+         * This method removes all the updates, the arrays are kept for the next ones
+         */
+        void clear(){
+            this.clearEntries();
+            this.fullTableEpoch = 0;
+            this.fullTableVersion = 0;
+            for(int i = 0; i < this.headerCount; i++){
+                this.headerIndex.remove(headerHash(this.headers[i]));
+            }
+            this.headerCount = 0;
+            this.updates = 0;
+            this.reserved = 0;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * This class is an open addressing hash map from int keys (IPv4 addresses)
+ * to int indexes. It uses linear probing and stores keys and values in paged
+ * int arrays, so lookups don't box, and a copy of the map shares the pages and
+ * costs only its page tables until either map is written
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class IntIndexMap {
+
+    // value returned when a key is not in the map
+    public static final int MISSING = -1;
+
+    // keys of the map
+    private PagedIntArray keys;
+
+    // values of the map, MISSING marks an empty slot
+    private PagedIntArray values;
+
+    // number of slots, a power of two
+    private int capacity;
+
+    // number of keys in the map
+    private int size;
+
+
+    /**
+     * This constructor initializes the map for the expected number of keys
+     * @param expectedSize number of keys
+     */
+    public IntIndexMap(int expectedSize) {
+        int capacity = 16;
+        while(capacity < expectedSize * 2){
+            capacity <<= 1;
+        }
+        this.keys = new PagedIntArray(capacity, 0);
+        this.values = new PagedIntArray(capacity, MISSING);
+        this.capacity = capacity;
+        this.size = 0;
+    }
+
+
+    /**
+     * This constructor makes a copy of a map. The copy shares the pages of the
+     * map, a page is copied when either map writes it first
+     * @param other map to be copied
+     */
+    public IntIndexMap(IntIndexMap other) {
+        this.keys = other.keys.copy();
+        this.values = other.values.copy();
+        this.capacity = other.capacity;
+        this.size = other.size;
+    }
+
+
+    /**
+     * This method returns number of keys in the map
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * This method returns the value of a key
+     * @param key key to look for
+     * @return value or MISSING if key is not in the map
+     */
+    public int get(int key){
+        int mask = this.capacity - 1;
+        int slot = hash(key) & mask;
+        int value;
+        while((value = this.values.get(slot)) != MISSING){
+            if(this.keys.get(slot) == key){
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+
+    /**
+     * This method puts a key into the map
+     * @param key   key
+     * @param value value of the key, must not be negative
+     */
+    public void put(int key, int value){
+        if((this.size + 1) * 2 > this.capacity){
+            this.resize(this.capacity << 1);
+        }
+        int mask = this.capacity - 1;
+        int slot = hash(key) & mask;
+        while(this.values.get(slot) != MISSING){
+            if(this.keys.get(slot) == key){
+                this.values.set(slot, value);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.keys.set(slot, key);
+        this.values.set(slot, value);
+        this.size++;
+    }
+
+
+    /**
+     * This method removes a key from the map. The keys probed past it are
+     * shifted back, so no deleted markers are needed
+     * @param key key to be removed
+     * @return value of the key or MISSING if key was not in the map
+     */
+    public int remove(int key){
+        int mask = this.capacity - 1;
+        int slot = hash(key) & mask;
+        while(this.values.get(slot) != MISSING){
+            if(this.keys.get(slot) == key){
+                int value = this.values.get(slot);
+                this.size--;
+
+                // moving a later key into the hole unless its own slot is after the hole
+                int hole = slot;
+                slot = (slot + 1) & mask;
+                while(this.values.get(slot) != MISSING){
+                    int home = hash(this.keys.get(slot)) & mask;
+                    if(((slot - home) & mask) >= ((slot - hole) & mask)){
+                        this.keys.set(hole, this.keys.get(slot));
+                        this.values.set(hole, this.values.get(slot));
+                        hole = slot;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                this.values.set(hole, MISSING);
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+
+    /**
+     * This method doubles the table and puts all the keys again
+     * @param capacity new capacity, power of two
+     */
+    private void resize(int capacity){
+        PagedIntArray oldKeys = this.keys;
+        PagedIntArray oldValues = this.values;
+        int oldCapacity = this.capacity;
+        this.keys = new PagedIntArray(capacity, 0);
+        this.values = new PagedIntArray(capacity, MISSING);
+        this.capacity = capacity;
+        this.size = 0;
+        for(int i = 0; i < oldCapacity; i++){
+            if(oldValues.get(i) != MISSING){
+                this.put(oldKeys.get(i), oldValues.get(i));
+            }
+        }
+    }
+
+
+    /**
+     * This method spreads the bits of a key, since addresses of a subnet
+     * differ only in their low bits
+     * @param key key
+     * @return hash of the key
+     */
+    private static int hash(int key){
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
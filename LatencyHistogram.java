@@ -0,0 +1,176 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a lock-free histogram of latencies in nanoseconds. Like an HDR
+ * histogram it has log-linear buckets: every power of two is split into
+ * SUB_BUCKETS equal buckets, so a value is known within about 6% whatever its
+ * size, and all the buckets of a long fit in one fixed array. Recording a value
+ * is one atomic increment of its bucket plus two LongAdder additions, so it
+ * never blocks and is cheap enough for the receive path. Percentiles are read
+ * from a walk over the buckets and may miss values recorded during the walk
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class LatencyHistogram
+        implements LatencyHistogramMBean{
+
+    // number of bits used to pick the bucket inside a power of two
+    public static final int SUB_BUCKET_BITS = 4;
+
+    // number of buckets every power of two is split into
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // name of the measured operation
+    private String name;
+
+    // bucket -> number of values recorded in it
+    private AtomicLongArray counts;
+
+    // number and sum of the recorded values
+    private LongAdder count;
+    private LongAdder sum;
+
+    // largest recorded value
+    private AtomicLong max;
+
+
+    /**
+     * This constructor initializes an empty histogram
+     * @param name name of the measured operation
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+        this.counts = new AtomicLongArray(64 * SUB_BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+
+    /**
+     * This method records a latency
+     * @param nanos latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos){
+        if(nanos < 0){
+            nanos = 0;
+        }
+        this.counts.incrementAndGet(bucketOf(nanos));
+        this.count.increment();
+        this.sum.add(nanos);
+        long largest = this.max.get();
+        while(nanos > largest && !this.max.compareAndSet(largest, nanos)){
+            largest = this.max.get();
+        }
+    }
+
+
+    /**
+     * This method returns the bucket of a value
+     * @param value value, not negative
+     * @return
+     */
+    static int bucketOf(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        // the highest bit picks the power of two, the next bits the bucket inside it
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+
+    /**
+     * This method returns the smallest value of a bucket
+     * @param bucket bucket
+     * @return
+     */
+    static long lowestValueOf(int bucket){
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+
+    /**
+     * This method returns the name of the measured operation
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+
+    @Override
+    public double getMeanMicros() {
+        long count = this.count.sum();
+        return count == 0 ? 0 : this.sum.sum() / 1e3 / count;
+    }
+
+
+    @Override
+    public double getMaxMicros() {
+        return max.get() / 1e3;
+    }
+
+
+    @Override
+    public double get50thPercentileMicros() {
+        return this.getPercentile(0.5) / 1e3;
+    }
+
+
+    @Override
+    public double get99thPercentileMicros() {
+        return this.getPercentile(0.99) / 1e3;
+    }
+
+
+    @Override
+    public double get999thPercentileMicros() {
+        return this.getPercentile(0.999) / 1e3;
+    }
+
+
+    /**
+     * This method returns a percentile of the recorded values
+     * @param fraction fraction of the values which are not larger, 0 to 1
+     * @return value in nanoseconds, the largest of its bucket, 0 if nothing was recorded
+     */
+    public long getPercentile(double fraction){
+        long total = 0;
+        for(int i = 0; i < this.counts.length(); i++){
+            total += this.counts.get(i);
+        }
+        if(total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for(int i = 0; i < this.counts.length(); i++){
+            seen += this.counts.get(i);
+            if(seen >= rank){
+                return Math.min(this.max.get(), lowestValueOf(i + 1) - 1);
+            }
+        }
+        return this.max.get();
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("%-22s count: %-10d mean: %.1f us  p50: %.1f us  p99: %.1f us  " +
+                        "p99.9: %.1f us  max: %.1f us", this.name, this.getCount(), this.getMeanMicros(),
+                this.get50thPercentileMicros(), this.get99thPercentileMicros(),
+                this.get999thPercentileMicros(), this.getMaxMicros());
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * This interface is the JMX view of a latency histogram
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public interface LatencyHistogramMBean {
+
+    /**
+     * This method returns number of recorded latencies
+     * @return
+     */
+    long getCount();
+
+    /**
+     * This method returns the mean latency in microseconds
+     * @return
+     */
+    double getMeanMicros();
+
+    /**
+     * This method returns the largest latency in microseconds
+     * @return
+     */
+    double getMaxMicros();
+
+    /**
+     * This method returns the median latency in microseconds
+     * @return
+     */
+    double get50thPercentileMicros();
+
+    /**
+     * This method returns the 99th percentile latency in microseconds
+     * @return
+     */
+    double get99thPercentileMicros();
+
+    /**
+     * This method returns the 99.9th percentile latency in microseconds
+     * @return
+     */
+    double get999thPercentileMicros();
+}
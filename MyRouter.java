@@ -1,17 +1,77 @@
-import java.io.*;
 import java.net.*;
-import java.text.SimpleDateFormat;
+import java.time.Clock;
 import java.util.*;
 
 /**
- * This class defines a Router and everything it needs to create a routing table
+ * This class defines a Router and everything it needs to create a routing table.
+ * Modifications of the table are synchronized, after each of them a read-only
+ * snapshot of the table is published. Printing, queries and advertisement
+ * encoding read the latest snapshot without taking the lock
  * @author Alimuddin Khan (aak5031@rit.edu)
  */
 
-public class MyRouter implements Serializable{
+public class MyRouter {
 
-    // This hashmap stores all the possible routes to a destination
-    HashMap<String,HashMap<String, Integer>> DV;
+    // default time in milliseconds after which a route which is not refreshed times out
+    public static final long DEFAULT_ROUTE_TIMEOUT = 180 * 1000;
+
+    // default time in milliseconds for which an un-reachable destination is kept
+    public static final long DEFAULT_GARBAGE_COLLECTION_TIME = 120 * 1000;
+
+    // length of a tick and number of buckets of the wheel of route timers
+    public static final long TIMER_TICK = 1000;
+    public static final int TIMER_BUCKETS = 512;
+
+    // kinds of the route timers
+    static final int TIMEOUT_TIMER = 0;
+    static final int GARBAGE_COLLECTION_TIMER = 1;
+
+    // This table stores all the possible routes to a destination
+    DistanceVectorTable DV;
+
+    // latest read-only snapshot of DV
+    private volatile DistanceVectorTable snapshot;
+
+    // cache of host names printed with the routes
+    private HostNameCache hostNames;
+
+    // clock which gives the time of route changes and timers
+    private Clock clock;
+
+    // counters and latencies of the router's control plane
+    private RouterMetrics metrics;
+
+    // forwarding table built from the best routes of DV
+    private ForwardingTable forwardingTable;
+
+    // table version of DV up to which the forwarding table has the best routes
+    private int forwardingVersion;
+
+    // equal cost next hops of a destination, reused while updating the forwarding table
+    private int[] equalCostHops;
+
+    // timeout and garbage collection timers of the destinations
+    private TimingWheel routeTimers;
+
+    // table version of DV up to which the route timers have been started
+    private int timerVersion;
+
+    // time in milliseconds after which a route times out and an un-reachable destination is deleted
+    private long routeTimeout;
+    private long garbageCollectionTime;
+
+    // number of times updates were merged, it tells when a neighbor's
+    // advertisements last carried a route
+    private int mergeCount;
+
+    // summarizer of the advertised routes, null if routes are advertised on their own
+    private RouteSummarizer summarizer;
+
+    // damping of flapping routes, null if routes are not damped
+    private RouteDamping damping;
+
+    // stream which hands the changes of the best routes to their subscribers
+    private RouteEventStream routeEvents;
 
     // This set stores the set of neighbors
     HashSet<String> nbrs;
@@ -19,17 +79,35 @@ public class MyRouter implements Serializable{
     // This stores the IP of the router
     String myIP;
 
-    // This is a flag and is used to show debug messages
-    boolean showDebug;
+    // This stores the IP of the router as 32 bit address
+    int myAddress;
+
+    // This identifies this run of the router, so neighbors notice a restart
+    int epoch;
+
+    // This table stores how far every neighbor has got in our table versions and we in theirs
+    NeighborTable neighborTable;
+
+    // table version up to which changes have been sent in triggered updates
+    int lastTriggeredVersion;
+
+    // log of the router's events, its level decides if debug messages are shown
+    private RouterLog log;
 
     // This is used to set the auto update time default is 15 sec
     int updateInterval;
 
-    // This stores the lastUpdated Time of the routing table
-    String lastUpdateTime;
+    // This is the maximum number of route entries sent in one datagram
+    int maxEntriesPerMessage;
+
+    // This stores the lastUpdated Time of the routing table in milliseconds of the router's clock
+    long lastUpdateTime;
 
     // flag to show if update in routing table had haapened in last triggered update
-    boolean dvchanged;
+    volatile boolean dvchanged;
+
+    // scheduler which sends triggered updates, null if updates are sent by hand
+    TriggeredUpdateScheduler updateScheduler;
 
 
     /**
@@ -38,16 +116,56 @@ public class MyRouter implements Serializable{
      * @param myIP IP of the router
      */
     public MyRouter(String myIP) {
+        this(myIP, Clock.systemDefaultZone(), new RouterLog(RouterLog.DEFAULT_CAPACITY,
+                RouterLog.Level.DEBUG, new HostNameCache()));
+    }
+
+
+    /**
+     * This constructor initializes the router object with a clock and a log of its
+     * own choice, e.g. a virtual clock and a log shared by many simulated routers
+     * @param myIP  IP of the router
+     * @param clock clock which gives the time of route changes and timers
+     * @param log   log of the router's events
+     */
+    public MyRouter(String myIP, Clock clock, RouterLog log) {
         this.myIP = myIP;
-        this.DV = new HashMap<>();
+        this.clock = clock;
+        this.myAddress = this.toAddress(myIP);
+        this.DV = new DistanceVectorTable();
+        this.snapshot = this.DV.snapshot();
+        this.forwardingTable = new ForwardingTable();
+        this.forwardingVersion = 0;
+        this.equalCostHops = new int[ForwardingTable.MAX_NEXT_HOPS];
+        this.metrics = new RouterMetrics(this);
+        this.routeTimers = new TimingWheel(TIMER_TICK, TIMER_BUCKETS, clock.millis());
+        this.timerVersion = 0;
+        this.routeTimeout = DEFAULT_ROUTE_TIMEOUT;
+        this.garbageCollectionTime = DEFAULT_GARBAGE_COLLECTION_TIME;
+        this.routeEvents = new RouteEventStream(RouteEventStream.DEFAULT_CAPACITY);
+        this.hostNames = log.getHostNameCache();
+        this.log = log;
+        this.epoch = new Random().nextInt() | 1;
+        this.neighborTable = new NeighborTable();
+        this.lastTriggeredVersion = 0;
+        this.mergeCount = 0;
         this.nbrs = new HashSet<>();
-        this.showDebug = true;
         this.updateInterval = 1000;
-        this.lastUpdateTime = this.getDateTime();
+        this.maxEntriesPerMessage = RIPPacket.MAX_ENTRIES;
+        this.lastUpdateTime = clock.millis();
         this.dvchanged = false;
     }
 
 
+    /**
+     * This method sets the scheduler which is told about every change in the routing table
+     * @param updateScheduler
+     */
+    public void setUpdateScheduler(TriggeredUpdateScheduler updateScheduler) {
+        this.updateScheduler = updateScheduler;
+    }
+
+
     /**
      * This method returns routing table update info
      * @return
@@ -70,24 +188,469 @@ public class MyRouter implements Serializable{
      * all the data structures it needs
      */
     public MyRouter() {
-        this.DV = new HashMap<>();
+        this.clock = Clock.systemDefaultZone();
+        this.DV = new DistanceVectorTable();
+        this.snapshot = this.DV.snapshot();
+        this.forwardingTable = new ForwardingTable();
+        this.forwardingVersion = 0;
+        this.equalCostHops = new int[ForwardingTable.MAX_NEXT_HOPS];
+        this.metrics = new RouterMetrics(this);
+        this.routeTimers = new TimingWheel(TIMER_TICK, TIMER_BUCKETS, this.clock.millis());
+        this.timerVersion = 0;
+        this.routeTimeout = DEFAULT_ROUTE_TIMEOUT;
+        this.garbageCollectionTime = DEFAULT_GARBAGE_COLLECTION_TIME;
+        this.routeEvents = new RouteEventStream(RouteEventStream.DEFAULT_CAPACITY);
+        this.hostNames = new HostNameCache();
+        this.log = new RouterLog(RouterLog.DEFAULT_CAPACITY, RouterLog.Level.DEBUG, this.hostNames);
+        this.epoch = new Random().nextInt() | 1;
+        this.neighborTable = new NeighborTable();
+        this.lastTriggeredVersion = 0;
+        this.mergeCount = 0;
         this.nbrs = new HashSet<>();
-        this.showDebug = true;
         this.updateInterval = 30000;
-        this.lastUpdateTime = this.getDateTime();
+        this.maxEntriesPerMessage = RIPPacket.MAX_ENTRIES;
+        this.lastUpdateTime = this.clock.millis();
     }
 
 
     /**
      * Returns the distance vector of the router with all the available
-     * paths to a destination
+     * paths to a destination. It may only be read while holding the router lock,
+     * use getSnapshot() otherwise
      * @return DV of the router
      */
-    public HashMap<String, HashMap<String, Integer>> getDV() {
+    public DistanceVectorTable getDV() {
         return DV;
     }
 
 
+    /**
+     * Returns the latest read-only snapshot of the distance vector
+     * @return snapshot of DV
+     */
+    public DistanceVectorTable getSnapshot() {
+        return snapshot;
+    }
+
+
+    /**
+     * This method publishes a new snapshot if the distance vector has been
+     * modified since the last one, and updates the forwarding table and the
+     * route timers with the best routes which changed. Caller must hold the router lock
+     */
+    private void publishSnapshot(){
+        this.publishSnapshot(this.clock.millis());
+    }
+
+
+    /**
+     * This method publishes a new snapshot if the distance vector has been
+     * modified since the last one. Caller must hold the router lock
+     * @param now current time in milliseconds, route timers start from it
+     */
+    private void publishSnapshot(long now){
+        if(this.DV.getModificationCount() != this.snapshot.getModificationCount()){
+            if(this.summarizer != null){
+                this.summarizer.update(this.DV);
+            }
+            this.metrics.routesChanged(this.DV.getVersion() - this.snapshot.getVersion());
+            DistanceVectorTable previous = this.snapshot;
+            this.snapshot = this.DV.snapshot();
+            this.updateForwardingTable(this.snapshot);
+            this.updateRouteTimers(this.snapshot, now);
+            if(this.routeEvents.hasSubscribers()){
+                this.publishRouteChanges(previous, this.snapshot, now);
+            }
+        }
+    }
+
+
+    /**
+     * This method publishes the changes of the best routes between two snapshots.
+     * Only the destinations changed since the older snapshot are compared
+     * @param previous  older snapshot
+     * @param table     newer snapshot
+     * @param now       current time in milliseconds
+     */
+    private void publishRouteChanges(DistanceVectorTable previous, DistanceVectorTable table, long now){
+        int slot = table.lastChangedSlot();
+        while(slot != DistanceVectorTable.NONE && table.changeVersionAt(slot) > previous.getVersion()){
+            int destination = table.destinationAt(slot);
+            int oldSlot = previous.indexOf(destination, table.prefixLengthAt(slot));
+            int oldNextHop = 0;
+            int oldCost = DistanceVectorTable.INFINITY;
+            if(oldSlot != DistanceVectorTable.NONE){
+                oldCost = previous.bestCostAt(oldSlot);
+                oldNextHop = oldCost == DistanceVectorTable.INFINITY ? 0 : previous.bestHopAt(oldSlot);
+            }
+            int newCost = table.bestCostAt(slot);
+            int newNextHop = newCost == DistanceVectorTable.INFINITY ? 0 : table.bestHopAt(slot);
+            RouteChange change = RouteChange.of(destination, table.prefixLengthAt(slot),
+                    oldNextHop, oldCost, newNextHop, newCost, table.changeVersionAt(slot), now);
+            if(change != null){
+                this.routeEvents.publish(change);
+            }
+            slot = table.previousChangedSlot(slot);
+        }
+    }
+
+
+    /**
+     * This method returns the stream of the changes of the best routes,
+     * subscribers get every change made after they subscribed
+     * @return
+     */
+    public RouteEventStream getRouteEvents() {
+        return routeEvents;
+    }
+
+
+    /**
+     * This method starts the timers of the destinations whose best route changed
+     * since the last update. A route learned from a neighbor gets a timeout timer,
+     * an un-reachable destination gets a garbage collection timer and the direct
+     * link to a neighbor gets none
+     * @param table snapshot of the distance vector
+     * @param now   current time in milliseconds
+     */
+    private void updateRouteTimers(DistanceVectorTable table, long now){
+        int slot = table.lastChangedSlot();
+        while(slot != DistanceVectorTable.NONE && table.changeVersionAt(slot) > this.timerVersion){
+            this.startRouteTimer(table, slot, now);
+            slot = table.previousChangedSlot(slot);
+        }
+        this.timerVersion = table.getVersion();
+    }
+
+
+    /**
+     * This method starts the timer a destination needs for its best route
+     * @param table snapshot or DV
+     * @param slot  slot of the destination
+     * @param now   current time in milliseconds
+     */
+    private void startRouteTimer(DistanceVectorTable table, int slot, long now){
+        int destination = table.destinationAt(slot);
+        int route = table.routeIdAt(slot);
+        if(table.bestCostAt(slot) == DistanceVectorTable.INFINITY){
+            if(table.summaryLengthAt(slot) > 0){
+                // a summary is kept as long as its block
+                this.routeTimers.cancel(route);
+                return;
+            }
+
+            // an earlier garbage collection timer keeps running
+            if(this.routeTimers.kindOf(route) != GARBAGE_COLLECTION_TIMER){
+                this.routeTimers.schedule(route, GARBAGE_COLLECTION_TIMER,
+                        now + this.garbageCollectionTime);
+            }
+            return;
+        }
+        int nextHop = table.bestHopAt(slot);
+        if(nextHop == destination){
+            this.routeTimers.cancel(route);
+            return;
+        }
+
+        // the route is as fresh as the last advertisement of its next hop
+        long lastHeard = this.neighborTable.getOrAdd(nextHop).getLastHeard();
+        this.routeTimers.schedule(route, TIMEOUT_TIMER,
+                (lastHeard == 0 ? now : lastHeard) + this.routeTimeout);
+    }
+
+
+    /**
+     * This method expires the route timers which are due. Routes whose next hop
+     * has not sent an advertisement for the timeout become un-reachable through
+     * it, destinations which stayed un-reachable for the garbage collection time
+     * are deleted. It is called once per timer tick
+     * @param now current time in milliseconds
+     */
+    public synchronized void expireRoutes(final long now){
+        this.routeTimers.advance(now, new TimingWheel.Handler() {
+            @Override
+            public void expired(int route, int kind) {
+                routeExpired(route, kind, now);
+            }
+        });
+        if(this.damping != null){
+            this.damping.advance(now, this.reuseHandler());
+        }
+        this.publishSnapshot(now);
+        this.triggerUpdateIfChanged();
+    }
+
+
+    /**
+     * This method handles an expired route timer
+     * @param route route id of the destination
+     * @param kind  kind of the timer
+     * @param now   current time in milliseconds
+     */
+    private void routeExpired(int route, int kind, long now){
+        int slot = this.DV.slotOfRoute(route);
+        if(slot == DistanceVectorTable.NONE){
+            return;
+        }
+        int destination = this.DV.destinationAt(slot);
+        int length = this.DV.prefixLengthAt(slot);
+        if(this.DV.bestCostAt(slot) == DistanceVectorTable.INFINITY){
+            if(kind == GARBAGE_COLLECTION_TIMER && this.DV.summaryLengthAt(slot) <= 0){
+                this.log.log(RouterLog.Event.ROUTE_DELETED, destination, 0, 0);
+                this.DV.removeDestination(destination, length);
+                this.neighborTable.forgetRoute(route);
+            }else{
+                this.startRouteTimer(this.DV, slot, now);
+            }
+            return;
+        }
+        int nextHop = this.DV.bestHopAt(slot);
+        long lastHeard = this.neighborTable.getOrAdd(nextHop).getLastHeard();
+        if(nextHop == destination || (lastHeard != 0 && now - lastHeard < this.routeTimeout)){
+            // the next hop has been heard from since the timer was started
+            this.startRouteTimer(this.DV, slot, now);
+            return;
+        }
+
+        // the next hop of the route has gone silent, the table picks another next hop if any
+        this.log.log(RouterLog.Event.ROUTE_TIMEOUT, destination, nextHop, 0);
+        this.DV.setCost(destination, length, nextHop, DistanceVectorTable.INFINITY);
+        this.lastUpdateTime = now;
+    }
+
+
+    /**
+     * This method sets the route timers. Timers which are running keep their
+     * deadline, they are checked against the new times when they expire
+     * @param routeTimeout          time in milliseconds after which a route which
+     *                              is not refreshed times out
+     * @param garbageCollectionTime time in milliseconds for which an un-reachable
+     *                              destination is kept
+     */
+    public synchronized void setRouteTimers(long routeTimeout, long garbageCollectionTime){
+        this.routeTimeout = routeTimeout;
+        this.garbageCollectionTime = garbageCollectionTime;
+    }
+
+
+    /**
+     * This method switches route summarization on or changes its minimum length.
+     * Contiguous prefixes with the same next hop and cost are then advertised as
+     * the supernets covering them
+     * @param minimumLength length of the shortest summary, 1 to 32
+     */
+    public synchronized void setSummarization(int minimumLength){
+        this.summarizer = new RouteSummarizer(minimumLength);
+        this.summarizer.summarizeAll(this.DV);
+        this.publishSnapshot();
+        this.triggerUpdateIfChanged();
+    }
+
+
+    /**
+     * This method switches route summarization off, every destination is
+     * advertised on its own again
+     */
+    public synchronized void disableSummarization(){
+        if(this.summarizer == null){
+            return;
+        }
+        this.summarizer = null;
+        RouteSummarizer.clear(this.DV);
+        this.publishSnapshot();
+        this.triggerUpdateIfChanged();
+    }
+
+
+    /**
+     * This method switches flap damping on. Routes which are withdrawn or get
+     * costlier too often are not used until their penalty has decayed. Routes
+     * suppressed by earlier settings are used again
+     * @param halfLife          time in milliseconds in which a penalty decays to half
+     * @param suppressLimit     penalty above which a route is suppressed
+     * @param reuseLimit        penalty below which a suppressed route is used again
+     * @param maxSuppressTime   time in milliseconds for which a route can be suppressed at most
+     */
+    public synchronized void setDamping(long halfLife, int suppressLimit, int reuseLimit,
+                                        long maxSuppressTime){
+        if(this.damping != null){
+            this.damping.releaseAll(this.reuseHandler());
+        }
+        this.damping = new RouteDamping(halfLife, suppressLimit, reuseLimit, maxSuppressTime,
+                this.clock.millis());
+        this.publishSnapshot();
+        this.triggerUpdateIfChanged();
+    }
+
+
+    /**
+     * This method switches flap damping off, suppressed routes are used again
+     */
+    public synchronized void disableDamping(){
+        if(this.damping == null){
+            return;
+        }
+        this.damping.releaseAll(this.reuseHandler());
+        this.damping = null;
+        this.publishSnapshot();
+        this.triggerUpdateIfChanged();
+    }
+
+
+    /**
+     * This method returns the damping of flapping routes
+     * @return damping or null if routes are not damped
+     */
+    public synchronized RouteDamping getDamping() {
+        return damping;
+    }
+
+
+    /**
+     * This method returns the handler which puts suppressed routes back into DV.
+     * Caller must hold the router lock
+     * @return
+     */
+    private RouteDamping.Handler reuseHandler(){
+        return new RouteDamping.Handler() {
+            @Override
+            public void reused(int destination, int length, int nextHop, int cost) {
+                if(DV.indexOf(destination, length) != DistanceVectorTable.NONE
+                        || cost != DistanceVectorTable.INFINITY){
+                    DV.setCost(destination, length, nextHop, cost);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * This method passes a new cost of a path learned from a next hop through
+     * flap damping. The direct link to a neighbor is not damped. Caller must hold the router lock
+     * @param destination   destination address
+     * @param length        length of the destination prefix
+     * @param nextHop       next hop address
+     * @param cost          new cost of the path, INFINITY if it is withdrawn
+     * @return cost to be put into DV, INFINITY while the path is suppressed
+     */
+    private int dampedCost(int destination, int length, int nextHop, int cost){
+        if(this.damping == null || destination == nextHop){
+            return cost;
+        }
+        return this.damping.filter(destination, length, nextHop,
+                this.DV.getCost(destination, length, nextHop), cost, this.clock.millis());
+    }
+
+
+    /**
+     * This method returns the cost a path withdrawn by its next hop is put into
+     * DV with. A withdrawal caused by the next hop's summarization is no flap,
+     * so it is not penalized by flap damping. Caller must hold the router lock
+     * @param destination   destination address
+     * @param length        length of the destination prefix
+     * @param nextHop       next hop address
+     * @param tag           route tag of the withdrawal
+     * @return INFINITY
+     */
+    private int withdrawnCost(int destination, int length, int nextHop, int tag){
+        if(tag != RIPPacket.SUMMARIZED_TAG){
+            return this.dampedCost(destination, length, nextHop, DistanceVectorTable.INFINITY);
+        }
+        if(this.damping != null){
+            this.damping.withdrawn(destination, length, nextHop);
+        }
+        return DistanceVectorTable.INFINITY;
+    }
+
+
+    /**
+     * This method returns the summarizer of the advertised routes
+     * @return summarizer or null if summarization is off
+     */
+    public synchronized RouteSummarizer getSummarizer() {
+        return summarizer;
+    }
+
+
+    /**
+     * This method returns time in milliseconds after which a route which is not refreshed times out
+     * @return
+     */
+    public long getRouteTimeout() {
+        return routeTimeout;
+    }
+
+
+    /**
+     * This method returns time in milliseconds for which an un-reachable destination is kept
+     * @return
+     */
+    public long getGarbageCollectionTime() {
+        return garbageCollectionTime;
+    }
+
+
+    /**
+     * This method puts the best routes changed since the last update into the
+     * forwarding table with all their equal cost next hops, un-reachable
+     * destinations are removed from it
+     * @param table snapshot of the distance vector
+     */
+    private void updateForwardingTable(DistanceVectorTable table){
+        int slot = table.lastChangedSlot();
+        while(slot != DistanceVectorTable.NONE && table.changeVersionAt(slot) > this.forwardingVersion){
+            int destination = table.destinationAt(slot);
+            int cost = table.bestCostAt(slot);
+            if(cost == DistanceVectorTable.INFINITY){
+                this.forwardingTable.remove(destination, table.prefixLengthAt(slot));
+            }else{
+                int count = table.equalCostHopsAt(slot, this.equalCostHops);
+                this.forwardingTable.put(destination, table.prefixLengthAt(slot),
+                        Arrays.copyOf(this.equalCostHops, count), cost);
+            }
+            slot = table.previousChangedSlot(slot);
+        }
+        this.forwardingVersion = table.getVersion();
+    }
+
+
+    /**
+     * This method returns the forwarding table of the router
+     * @return
+     */
+    public ForwardingTable getForwardingTable() {
+        return forwardingTable;
+    }
+
+
+    /**
+     * This method finds the route which handles packets for an address,
+     * i.e. the reachable destination with the longest matching prefix
+     * @param address 32 bit address
+     * @return route with next hop and cost or null if there is none
+     */
+    public ForwardingTable.Entry lookup(int address){
+        return this.forwardingTable.lookup(address);
+    }
+
+
+    /**
+     * This method picks the next hop of a flow among the equal cost next hops
+     * of the route which handles its destination. Packets of the same flow
+     * always get the same next hop
+     * @param source            source address of the packet
+     * @param destination       destination address of the packet
+     * @param sourcePort        source port, 0 if the protocol has none
+     * @param destinationPort   destination port, 0 if the protocol has none
+     * @param protocol          IP protocol number
+     * @return address of the next hop or 0 if there is no route
+     */
+    public int selectNextHop(int source, int destination, int sourcePort, int destinationPort,
+                             int protocol){
+        return this.forwardingTable.select(source, destination, sourcePort, destinationPort, protocol);
+    }
+
+
     /**
      * This method returns the set of neighbors the router has
      * @return
@@ -107,11 +670,29 @@ public class MyRouter implements Serializable{
 
 
     /**
-     * This method returns debug flag
+     * This method returns the IP of the current running router as 32 bit address
+     * @return
+     */
+    public int getMyAddress() {
+        return myAddress;
+    }
+
+
+    /**
+     * This method returns the epoch of this run of the router
+     * @return
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+
+    /**
+     * This method returns debug flag, i.e. whether debug events are logged
      * @return
      */
     public boolean isShowDebug() {
-        return showDebug;
+        return this.log.isEnabled(RouterLog.Level.DEBUG);
     }
 
 
@@ -123,20 +704,38 @@ public class MyRouter implements Serializable{
         return updateInterval;
     }
 
+    /**
+     * This method returns the maximum number of route entries sent in one datagram
+     * @return
+     */
+    public int getMaxEntriesPerMessage() {
+        return maxEntriesPerMessage;
+    }
+
+    /**
+     * This method sets the byte budget of one route update datagram, which
+     * decides how many route entries are sent in it
+     * @param maxMessageSize maximum size of a datagram in bytes
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxEntriesPerMessage = RIPPacket.entriesPerMessage(maxMessageSize);
+    }
+
     /**
      * This method returns the Date Time when the Dv was last updated
      * @return
      */
     public String getLastUpdateTime() {
-        return lastUpdateTime;
+        return RouterLog.formatTime(lastUpdateTime);
     }
 
     /**
-     * This method sets debug flag
+     * This method sets debug flag, debug sets the log level to DEBUG and
+     * no debug sets it to INFO
      * @param showDebug
      */
     public void setShowDebug(boolean showDebug) {
-        this.showDebug = showDebug;
+        this.log.setLevel(showDebug ? RouterLog.Level.DEBUG : RouterLog.Level.INFO);
     }
 
     /**
@@ -153,38 +752,33 @@ public class MyRouter implements Serializable{
      * Router Table has destination -> next hop for min cost -> min cost
      */
     public void printRoutingTable(){
-        try {
-            System.out.println("#### Routing table of " + this.getMyIP() + "  (" +
-                    InetAddress.getByName(this.getMyIP()).getHostName() + ") ####");
-            System.out.println("Current Time : " + this.getDateTime());
-            System.out.println("Last Updated : " + this.lastUpdateTime);
-            System.out.printf("|%-25s|%-25s|%-11s|\n", "Destination", "Next Hop", "MinCost");
-            System.out.println("- - - - - - - - - - - - - - - - - - - - - - - - - - - - " +
-                    "- - -");
-
-            // looking for all the possible destinations
-
-            for (String destination : this.DV.keySet()) {
-                String nextHop = this.getMinimumNextHopToDestination(destination);
-                Integer minCost = this.getMinCostToDestination(destination);
-
-                // printing only reachable entries getNetworkPrefix
-
-                if (minCost != null && nextHop != null) {
-                    System.out.printf("|%-25s|%-25s|%-11d|\n", this.getNetworkPrefix(destination) , nextHop + "(" +
-                                    this.getHostName(nextHop) + ")",
-                            minCost);
-                } else if (nextHop != null && minCost == null) {
-                    System.out.printf("|%-25s|%-25s|%-11d|\n", this.getNetworkPrefix(destination) , nextHop + "(" +
-                                    this.getHostName(nextHop) + ")",
-                            "un-reachable");
-                } else if (nextHop == null && minCost == null) {
-                    System.out.printf("|%-25s|%-25s|%-11s|\n", this.getNetworkPrefix(destination), "not-available",
-                            "un-reachable");
-                }
+        DistanceVectorTable table = this.getSnapshot();
+        System.out.println("#### Routing table of " + this.getMyIP() + "  (" +
+                this.getHostName(this.getMyIP()) + ") ####");
+        System.out.println("Current Time : " + this.getDateTime());
+        System.out.println("Last Updated : " + this.getLastUpdateTime());
+        System.out.printf("|%-25s|%-25s|%-11s|\n", "Destination", "Next Hop", "MinCost");
+        System.out.println("- - - - - - - - - - - - - - - - - - - - - - - - - - - - " +
+                "- - -");
+
+        // looking for all the possible destinations
+
+        for (int slot = 0; slot < table.size(); slot++) {
+            String destination = IPv4.toString(table.destinationAt(slot))
+                    + "/" + table.prefixLengthAt(slot);
+            int minCost = table.bestCostAt(slot);
+
+            // printing next hop only for reachable entries
+
+            if (minCost != DistanceVectorTable.INFINITY) {
+                String nextHop = IPv4.toString(table.bestHopAt(slot));
+                System.out.printf("|%-25s|%-25s|%-11d|\n", destination , nextHop + "(" +
+                                this.getHostName(nextHop) + ")",
+                        minCost);
+            } else {
+                System.out.printf("|%-25s|%-25s|%-11s|\n", destination, "not-available",
+                        "un-reachable");
             }
-        } catch(UnknownHostException e){
-
         }
         System.out.println();
     }
@@ -196,20 +790,32 @@ public class MyRouter implements Serializable{
      * @param cost  cost to reach the string
      */
     public synchronized void addNeighbor2(String name, Integer cost){
+        int address = this.toAddress(name);
+        if(address == 0){
+            this.log.log(RouterLog.Event.NEIGHBOR_INVALID, name);
+            return;
+        }
+        name = IPv4.toString(address);
 
         // adding a key in the DV if we don't have this destination
 
         if( this.nbrs.contains(name)){
             if(isShowDebug()){
-                System.out.println("FAILURE: (Addition of Neighbor): " + name +
-                        " is already in the neighbor's list\n" +
-                        "use 'update' command to change the link cost");
+                this.log.log(RouterLog.Event.NEIGHBOR_EXISTS, address, 0, 0);
                 return;
             }
         }
 
         this.nbrs.add(name);
 
+        // paths learned through this router earlier can be used from now on
+        this.DV.setNeighbor(address, true);
+
+        // both sides start with a full table
+        Neighbor neighbor = this.neighborTable.getOrAdd(address);
+        neighbor.reset();
+        this.metrics.neighborAdded(neighbor);
+
         // also adding the nbr to the destination list
 
         this.addDestination(name, cost);
@@ -222,111 +828,175 @@ public class MyRouter implements Serializable{
      * @param cost
      */
     public synchronized void addDestination(String name, Integer cost){
-        if( !this.DV.containsKey(name)){
+        int address = this.toAddress(name);
+        if( this.DV.indexOf(address, DistanceVectorTable.HOST_PREFIX_LENGTH) == DistanceVectorTable.NONE){
             // making a new entry if the neighbor is not in the list
 
-            HashMap<String, Integer> nextHops = new LinkedHashMap<>();
-            nextHops.put(name,cost);
-            this.DV.put(name, nextHops);
-            if( this.showDebug ) {
-                System.out.println(this.getDateTime() + ": (Destination Addition) : Added neighbor "
-                        + name + " in the destination list");
-            }
+            this.DV.setCost(address, address, toCost(cost));
+            this.log.log(RouterLog.Event.NEIGHBOR_ADDED, address, 0, 0);
             // update the last update time
-            this.lastUpdateTime = this.getDateTime();
+            this.lastUpdateTime = this.clock.millis();
 
         } else{
             // updating the cost to the neighbor if the entry didn;t exist
 
-            if(this.DV.get(name) != null){
-                this.DV.get(name).put(name, cost);
+            this.DV.setCost(address, address, toCost(cost));
 
-                // update the  last update time
-                this.lastUpdateTime = this.getDateTime();
-            }else{
-                HashMap<String, Integer> nextHops = new LinkedHashMap<>();
-                nextHops.put(name,cost);
-                this.DV.put(name, nextHops);
-
-                // update the last update time
-                this.lastUpdateTime = this.getDateTime();
-            }
+            // update the  last update time
+            this.lastUpdateTime = this.clock.millis();
         }
+        this.publishSnapshot();
+        this.triggerUpdateIfChanged();
     }
 
 
     /**
-     * This method takes neighbor router's DV and updates the table as per the
+     * This method takes neighbor router's advertisement and updates the table as per the
      * Neighbor's distance vector. This method also makes sure to couter;
      * 1} count-to-infinity
      * 2} looping effect
      * It implements Split Horizon Poison reverse to avoid count-to infinity and
-     * looping effect
-     * @param otherRouter This is one of the neighbor router's object
+     * looping effect. The sender poisons the routes it has through us, such a
+     * route makes the path through the sender un-reachable
+     * @param update This is one of the neighbor router's route update message
+     */
+    public synchronized void  updateDistanceVector(RIPPacket update){
+        long start = System.nanoTime();
+        this.countMerge();
+        this.DV.startBatch();
+        try {
+            this.mergeUpdate(update);
+        } finally {
+            this.DV.applyBatch();
+        }
+        this.publishSnapshot();
+
+        // a path may also have got costlier without any flag being set
+        this.triggerUpdateIfChanged();
+
+        this.metrics.getUpdateLatency().record(System.nanoTime() - start);
+    }
+
+
+    /**
+     * This method takes several route update messages, e.g. from different
+     * neighbors, under one lock. Their entries are resolved one after another
+     * on the calling thread, and the costs they set are collected in one batch
+     * of DV, which writes the destinations of different pages in parallel, so
+     * the updates of different neighbors are applied on several cores. One
+     * snapshot is published for all of them afterwards, so its cost is shared
+     * by the whole batch. An update which fails to merge is dropped, logged
+     * and counted, the others of the batch are still merged
+     * @param updates   route update messages
+     * @param count     number of messages in the array
+     */
+    public synchronized void updateDistanceVectors(RIPPacket[] updates, int count){
+        long start = System.nanoTime();
+        this.countMerge();
+        this.DV.startBatch();
+        try {
+            for(int i = 0; i < count; i++){
+                try {
+                    this.mergeUpdate(updates[i]);
+                } catch (RuntimeException e) {
+                    this.metrics.receiveDropped();
+                    this.log.log(RouterLog.Event.UPDATE_DROPPED, updates[i].getSenderAddress(), 0, 0,
+                            e.toString());
+                }
+            }
+        } finally {
+            this.DV.applyBatch();
+        }
+        this.publishSnapshot();
+        this.triggerUpdateIfChanged();
+        this.metrics.getUpdateLatency().record(System.nanoTime() - start);
+    }
+
+
+    /**
+     * This method merges a route update message into DV without publishing
+     * a snapshot. Caller must hold the router lock and have started a batch of DV
+     * @param update route update message of a neighbor
      */
-    public synchronized void  updateDistanceVector(MyRouter otherRouter){
+    private void mergeUpdate(RIPPacket update){
 
         // This is a falg which indicate whether update in routing table happened or not
 
         boolean changeHappened = false;
+        int sender = update.getSenderAddress();
+        Neighbor neighbor = this.DV.isNeighbor(sender) ? this.neighborTable.getOrAdd(sender) : null;
 
         // Making sure that the route update has come from one of the neighbor's only
 
-        if( !this.nbrs.contains(otherRouter.getMyIP())
-                && this.getMyIP().matches(otherRouter.getMyIP())){
+        if( !this.DV.isNeighbor(sender)
+                && this.myAddress == sender){
            // no update to be made here :)
         }else{
+            int senderCost = this.DV.getBestCost(sender);
 
-            for( String destination: otherRouter.DV.keySet()) {
-                try{
+            for( int i = 0; i < update.getEntryCount(); i++) {
+                // a destination is the prefix, the same address with another length is another one
+                int length = IPv4.toPrefixLength(update.getMask(i));
+                int destination = update.getAddress(i) & IPv4.toMask(length);
+                int advertisedNextHop = update.getNextHopAddress(i);
+                int advertisedCost = update.getMetricValue(i);
 
-                if (!destination.equals(this.getMyIP())) {
+                if (destination != this.myAddress) {
                     // Implementing Split horizon poison reverse by not allowing path to destination
                     // though itself from the nbr
-                    if(otherRouter.getMinimumNextHopToDestination(destination) != null &&
-                            !otherRouter.getMinimumNextHopToDestination(destination).equals(this.myIP)) {
+                    if(advertisedNextHop != RIPPacket.NO_NEXT_HOP &&
+                            advertisedNextHop != this.myAddress) {
 
-                        if (otherRouter.getMinimumNextHopToDestination(destination) != null
-                                && otherRouter.getMinCostToDestination(destination) != null) {
+                        if (advertisedCost != RIPPacket.UNREACHABLE) {
 
                             // adding the newly learned path from the neighbor to the destination list
+                            // only possible if we know the cost to the neighbor itself
+
+                            if (senderCost != DistanceVectorTable.INFINITY) {
+                                this.addPath(destination, length, sender, senderCost + advertisedCost);
+                                if (neighbor != null) {
+                                    neighbor.carried(this.DV.routeIdAt(this.DV.indexOf(destination, length)),
+                                            this.mergeCount);
+                                }
+                            }
 
-                            this.addDestination3(destination, otherRouter.getMyIP(),
-                                    this.getMinCostToDestination(otherRouter.getMyIP())
-                                    + otherRouter.getMinCostToDestination(destination));
-
-                        } else if ( otherRouter.getMinimumNextHopToDestination(destination) == null ||
-                                otherRouter.getMinCostToDestination(destination) == null) {
+                        } else if (this.DV.indexOf(destination, length) != DistanceVectorTable.NONE) {
 
                             // making all destinations unreachable through paths which have
                             // neighbor as next hop. This helps in recalculating path once on of the
                             // path becomes unavailable
 
-                            if (this.showDebug) {
-                                System.out.println(this.getDateTime() + ": (Distance Vector Update) " + destination +
-                                        " is now unreachable through " + otherRouter.getMyIP());
-                            }
-                            this.DV.get(destination).put(otherRouter.getMyIP(), null);
+                            this.log.log(RouterLog.Event.UNREACHABLE_THROUGH, destination, sender, 0);
+                            this.DV.setCost(destination, length, sender,
+                                    this.withdrawnCost(destination, length, sender, update.getRouteTag(i)));
                             changeHappened = true;
 
                         }
                     } else {
-                        if (this.showDebug) {
+                        if (this.DV.indexOf(destination, length) != DistanceVectorTable.NONE) {
 
-                            // This section indicates we have avoided the count-toinfinity by
-                            // implementing split horizon
+                            // The sender has poisoned the route (split horizon with poison
+                            // reverse is done by the sender) or has no route at all.
                             // since nbr is routing the route through you. You no more need
                             // path to destination with nbr as next hop
 
-                            this.DV.get(destination).put(otherRouter.getMyIP(), null);
+                            this.DV.setCost(destination, length, sender,
+                                    this.withdrawnCost(destination, length, sender, update.getRouteTag(i)));
                         }
                     }
                 }
+            }
+        }
 
-            } catch (Exception e){
-                    // will catch NullPointerException if we do not have any neighbor's
-                }
+        // remembering how far we have got in the neighbor's table versions,
+        // hearing from the neighbor also refreshes all the routes through it.
+        // A completed full table flushes the routes it didn't carry
+        if( neighbor != null){
+            int fullTableStart = neighbor.advertisementReceived(update, this.mergeCount);
+            if(fullTableStart != 0 && this.flushRoutes(neighbor, fullTableStart)){
+                changeHappened = true;
             }
+            neighbor.heard(this.clock.millis());
         }
 
         if( changeHappened == true){
@@ -335,11 +1005,58 @@ public class MyRouter implements Serializable{
             this.triggerUpdateInNeighbors();
 
             // updating last update time here
-            this.lastUpdateTime = this.getDateTime();
+            this.lastUpdateTime = this.clock.millis();
+        }
+    }
+
+
+    /**
+     * This method counts a merge of updates. The count wraps around, so counts
+     * are compared by their difference, and 0 is skipped since it means none
+     */
+    private void countMerge(){
+        if(++this.mergeCount == 0){
+            this.mergeCount = 1;
         }
     }
 
 
+    /**
+     * This method withdraws the routes through a neighbor which its full table
+     * didn't carry, e.g. the routes it had before it restarted or whose
+     * withdrawal was lost. Caller must hold the router lock
+     * @param neighbor  neighbor whose full table has been received
+     * @param start     merge count at which the full table was started, routes
+     *                  last carried before it are withdrawn
+     * @return true if a route was withdrawn
+     */
+    private boolean flushRoutes(Neighbor neighbor, int start){
+        int sender = neighbor.getAddress();
+        boolean flushed = false;
+        for(int slot = 0; slot < this.DV.size(); slot++){
+            int route = this.DV.routeIdAt(slot);
+            int carried = neighbor.lastCarried(route);
+            if(carried == IntIndexMap.MISSING || carried - start >= 0){
+                continue;
+            }
+            neighbor.forget(route);
+            int destination = this.DV.destinationAt(slot);
+            int length = this.DV.prefixLengthAt(slot);
+            int cost = this.DV.getCost(destination, length, sender);
+            if(cost == DistanceVectorTable.INFINITY && this.damping != null){
+                // a suppressed route stays withdrawn when it is used again
+                this.damping.withdrawn(destination, length, sender);
+            }else if(cost != DistanceVectorTable.NO_PATH && cost != DistanceVectorTable.INFINITY){
+                this.log.log(RouterLog.Event.UNREACHABLE_THROUGH, destination, sender, 0);
+                this.DV.setCost(destination, length, sender,
+                        this.dampedCost(destination, length, sender, DistanceVectorTable.INFINITY));
+                flushed = true;
+            }
+        }
+        return flushed;
+    }
+
+
     /**
      * This method adds a next hop to a destination
      * @param name      name of the destination
@@ -347,49 +1064,64 @@ public class MyRouter implements Serializable{
      * @param cost      cost to reach the destination
      */
     public synchronized void addDestination3(String name, String nextHop, Integer cost){
+        this.addDestination3(this.toAddress(name), this.toAddress(nextHop), toCost(cost));
+    }
+
+
+    /**
+     * This method adds a next hop to a destination
+     * @param destination   address of the destination
+     * @param nextHop       address of the next hop
+     * @param cost          cost to reach the destination
+     */
+    public synchronized void addDestination3(int destination, int nextHop, int cost){
+        this.addPath(destination, DistanceVectorTable.HOST_PREFIX_LENGTH, nextHop, cost);
+        this.publishSnapshot();
+    }
+
+
+    /**
+     * This method adds a next hop to a destination without publishing a snapshot,
+     * so a whole route update message is published at once
+     * @param destination   address of the destination
+     * @param length        length of the destination prefix
+     * @param nextHop       address of the next hop
+     * @param cost          cost to reach the destination
+     */
+    private void addPath(int destination, int length, int nextHop, int cost){
+
+        // a flapping path stays un-reachable while it is suppressed
+        cost = this.dampedCost(destination, length, nextHop, cost);
 
         // a flag which indicates whether an update has occurred or not
 
         boolean updatedDV = false;
 
-        if( !this.DV.containsKey(name)){
+        if( this.DV.indexOf(destination, length) == DistanceVectorTable.NONE){
             updatedDV = true;
-            HashMap<String, Integer> nextHops = new LinkedHashMap<>();
-            nextHops.put(nextHop,cost);
 
             // making a new destination entry in the DV for the new destination found
 
-            this.DV.put(name, nextHops);
-            System.out.println(this.getDateTime() + ": (Found New destination) Adding destination "
-                    + getHostName(name) + " via " + nextHop);
+            this.DV.setCost(destination, length, nextHop, cost);
+            this.log.log(RouterLog.Event.NEW_DESTINATION, destination, nextHop, 0);
         } else{
+            int oldCost = this.DV.getCost(destination, length, nextHop);
 
-            if(this.DV.get(name) != null){
-
-                // check if the new cost is lower than the previous one
-                if( this.DV.get(name).containsKey(nextHop)){
-
-                    // Triggering update only when the new cost is less than the previous one
-
-                    if(this.DV.get(name).get(nextHop) != null
-                            && this.DV.get(name).get(nextHop) > cost){
-                        updatedDV = true;
-                        System.out.println(this.getDateTime() + ": (Cost updation ) Found new min Path to  "
-                                + getHostName(name) + " via " + nextHop);
-                    }
-                }
-
-                this.DV.get(name).put(nextHop, cost);
-            }else{
+            if(oldCost == DistanceVectorTable.NO_PATH){
 
                 // making updated as next hop never existed for this destination
                 // means we have discvered a new path to destination
 
                 updatedDV = true;
-                HashMap<String, Integer> nextHops = new LinkedHashMap<>();
-                nextHops.put(nextHop,cost);
-                this.DV.put(name, nextHops);
+            } else if(oldCost != DistanceVectorTable.INFINITY && oldCost > cost){
+
+                // Triggering update only when the new cost is less than the previous one
+
+                updatedDV = true;
+                this.log.log(RouterLog.Event.NEW_MIN_PATH, destination, nextHop, 0);
             }
+
+            this.DV.setCost(destination, length, nextHop, cost);
         }
 
 
@@ -397,7 +1129,7 @@ public class MyRouter implements Serializable{
 
             // updating the last update time of routing table
 
-            this.lastUpdateTime = this.getDateTime();
+            this.lastUpdateTime = this.clock.millis();
 
             // Triggering the update in the neighbor routers
 
@@ -407,11 +1139,129 @@ public class MyRouter implements Serializable{
 
 
     /**
-     * Here most probably I will wring a trigger to send the updated DV to neighbors
-     * This is the most important method for now
+     * This method marks the routing table as changed and asks the scheduler
+     * to send the changed routes to the neighbors
      */
     public void triggerUpdateInNeighbors(){
         this.dvchanged = true;
+        if(this.updateScheduler != null){
+            this.updateScheduler.trigger();
+        }
+    }
+
+
+    /**
+     * This method triggers an update if any best route has changed which
+     * has not been sent to the neighbors yet
+     */
+    private void triggerUpdateIfChanged(){
+        if(this.DV.getRouteVersion() > this.lastTriggeredVersion){
+            this.triggerUpdateInNeighbors();
+        }
+    }
+
+
+    /**
+     * This method takes the routes which changed since the last triggered update
+     * @return message with the changed routes, null if nothing has changed
+     */
+    public RIPPacket getChangedRoutes(){
+        DistanceVectorTable table;
+        int since;
+        synchronized (this){
+            table = this.getSnapshot();
+            since = this.lastTriggeredVersion;
+            this.lastTriggeredVersion = table.getVersion();
+        }
+        if(since >= table.getRouteVersion()){
+            // nothing advertised changed, since = 0 would mean the full table
+            return null;
+        }
+        this.metrics.triggeredUpdateSent();
+        long start = System.nanoTime();
+        RIPPacket packet = RIPPacket.fromTable(this, table, since, Integer.MAX_VALUE);
+        this.metrics.getSerializationLatency().record(System.nanoTime() - start);
+        return packet;
+    }
+
+
+    /**
+     * This method encodes the periodic advertisement for a neighbor. It carries
+     * only the routes changed since the version the neighbor has acknowledged,
+     * or the full table when the neighbor has restarted, acknowledged nothing yet
+     * or has fallen so far behind that half the table changed since. Routes
+     * through the neighbor are poisoned
+     * @param nbr IP of the neighbor
+     * @return byte[] format of every fragment of the route update message
+     */
+    public synchronized byte[][] encodeAdvertisement(String nbr){
+        // holding the lock, so the neighbor's versions are read together
+        long start = System.nanoTime();
+        Neighbor neighbor = this.neighborTable.get(this.toAddress(nbr));
+        byte[][] fragments;
+        if(neighbor == null || !this.nbrs.contains(nbr)){
+            fragments = this.getAdvertisement(0).toFragments(this.maxEntriesPerMessage);
+        }else{
+            fragments = this.getAdvertisement(this.getAdvertisementBase(neighbor))
+                    .toFragments(this.maxEntriesPerMessage, neighbor.getAddress());
+            for(int i = 0; i < fragments.length; i++){
+                fragments[i] = RIPPacket.withAck(fragments[i], neighbor.epoch, neighbor.receivedVersion);
+            }
+        }
+        this.metrics.getSerializationLatency().record(System.nanoTime() - start);
+        return fragments;
+    }
+
+
+    /**
+     * This method returns the version an advertisement to a neighbor starts from,
+     * i.e. the version of our table the neighbor has acknowledged
+     * @param neighbor state of the neighbor
+     * @return base version or 0 if the neighbor needs the full table
+     */
+    public synchronized int getAdvertisementBase(Neighbor neighbor){
+        if(neighbor.ackEpoch == this.epoch && neighbor.ackedVersion > 0
+                && neighbor.ackedVersion <= this.getSnapshot().getVersion()){
+            return neighbor.ackedVersion;
+        }
+        return 0;
+    }
+
+
+    /**
+     * This method takes the routes changed since a version from the latest snapshot.
+     * The full table is taken when more than half the table changed since, or
+     * when a destination which changed since has been removed
+     * @param since base version, 0 for the full table
+     * @return message with the routes, without any ack
+     */
+    public RIPPacket getAdvertisement(int since){
+        DistanceVectorTable table = this.getSnapshot();
+        RIPPacket packet = null;
+
+        // a withdrawal the neighbor hasn't acknowledged is lost with its removed
+        // destination, the full table lets the neighbor flush the route
+        if(since > 0 && since >= table.getRemovedVersion()){
+            packet = RIPPacket.fromTable(this, table, since, table.size() / 2);
+        }
+        if(packet == null){
+            packet = RIPPacket.fromTable(this, table, 0, Integer.MAX_VALUE);
+        }
+        return packet;
+    }
+
+
+    /**
+     * This method returns the state of every neighbor
+     * @return
+     */
+    public synchronized Neighbor[] getNeighbors(){
+        Neighbor[] neighbors = new Neighbor[this.nbrs.size()];
+        int i = 0;
+        for(String nbr: this.nbrs){
+            neighbors[i++] = this.neighborTable.getOrAdd(this.toAddress(nbr));
+        }
+        return neighbors;
     }
 
 
@@ -424,7 +1274,8 @@ public class MyRouter implements Serializable{
         if(!this.nbrs.contains(nbr)){
             return null;
         }else{
-            return this.DV.get(nbr).get(nbr);
+            int address = this.toAddress(nbr);
+            return toInteger(this.getSnapshot().getCost(address, address));
         }
     }
 
@@ -435,31 +1286,30 @@ public class MyRouter implements Serializable{
      * @param newDistance   New distance to that neighbor
      */
     public synchronized void updateLocalLinkChange(String nbr, Integer newDistance){
-        Integer oldDistance = this.getDirectCost(nbr);
+        final Integer oldDistance = this.getDirectCost(nbr);
         if(this.nbrs.contains(nbr)){
+            int address = this.toAddress(nbr);
+            final int distance = newDistance;
+            if(oldDistance != null){
+                this.lastUpdateTime = this.clock.millis();
+            }
 
             // update all the costs to destinations which have nbr as next hop
 
-            for(HashMap<String, Integer> nextHops: this.DV.values()){
-                if(nextHops.containsKey(nbr)){
-                    // making sure if cost is not null
-
-                    if(nextHops.get(nbr) != null){
-                        this.lastUpdateTime = this.getDateTime();
-                        nextHops.put(nbr, nextHops.get(nbr) + newDistance - oldDistance);
-                    }else{
-                        // if cost was null then this is the new distance
-
-                        nextHops.put(nbr, newDistance);
+            this.DV.updateCosts(address, new DistanceVectorTable.CostUpdate() {
+                @Override
+                public int apply(int cost) {
+                    if(cost != DistanceVectorTable.INFINITY && oldDistance != null){
+                        return cost + distance - oldDistance;
                     }
+                    // if cost was null then this is the new distance
+                    return distance;
                 }
-            }
+            });
+            this.publishSnapshot();
+            this.triggerUpdateIfChanged();
         } else{
-            if(this.showDebug) {
-                System.out.println(this.getDateTime() + " : (LocalLinkChange)" + nbr +
-                        " is not a neighbor of " + this.getMyIP() +
-                        ",\n hence no effect of " + nbr + "'s local link change on this router");
-            }
+            this.log.log(RouterLog.Event.NOT_A_NEIGHBOR, this.myAddress, 0, 0, nbr);
         }
     }
 
@@ -469,27 +1319,29 @@ public class MyRouter implements Serializable{
      */
     public synchronized void removeLocalLink(String nbr){
         if( this.nbrs.contains(nbr)){
-            if(this.showDebug) {
-                System.out.println(this.getDateTime() + ": (LocalLinkRemoval) : "
-                        + " Removed " + nbr + " from neighbor list");
-            }
+            this.log.log(RouterLog.Event.LINK_REMOVED, nbr);
             this.nbrs.remove(nbr);
+            int address = this.toAddress(nbr);
+            this.DV.setNeighbor(address, false);
+            Neighbor neighbor = this.neighborTable.getOrAdd(address);
+            neighbor.reset();
+            this.metrics.neighborRemoved(neighbor);
+            if(this.damping != null){
+                this.damping.forgetNextHop(address);
+            }
 
             // making all the paths un-reachable who had nb as next hop
 
-            for( String destination: this.DV.keySet()){
-                if(this.DV.get(destination).containsKey(nbr)){
-
-                    // updating the cost to null
-                    this.DV.get(destination).put(nbr, null);
+            this.DV.updateCosts(address, new DistanceVectorTable.CostUpdate() {
+                @Override
+                public int apply(int cost) {
+                    return DistanceVectorTable.INFINITY;
                 }
-            }
+            });
+            this.publishSnapshot();
+            this.triggerUpdateIfChanged();
         }else {
-            if(this.showDebug) {
-                System.out.println(this.getDateTime() + ": (LocalLinkRemoval) : "
-                        + " Can't remove local link to " + nbr +
-                        " as we don't have it as neighbor");
-            }
+            this.log.log(RouterLog.Event.LINK_NOT_REMOVED, nbr);
         }
     }
 
@@ -501,38 +1353,38 @@ public class MyRouter implements Serializable{
      * @return Next hop which has the minimum cost to the destination
      */
     public String getMinimumNextHopToDestination(String destination){
-        String minHop = null;
+        int nextHop = this.getSnapshot().getBestNextHop(this.toAddress(destination));
+
         // returning null if destination is not present in the distance vector
-        if( ! this.DV.containsKey( destination )){
+        // or is un-reachable
+        if( nextHop == 0){
             return null;
         }
+        return IPv4.toString(nextHop);
+    }
 
-        else{
-            int minDistance = Integer.MAX_VALUE;
-            boolean firstHop = false;
-
-            // finding minimum cost next hop for the destination
-
-            for(String hop: this.DV.get(destination).keySet()){
-                if(this.DV.get(destination).get(hop)!= null ) {
 
-                    if(firstHop == false){
-                        if(this.getNbrs().contains(hop)) {
-                            minHop = hop;
-                            minDistance = this.DV.get(destination).get(hop);
-                            firstHop = true;
-                        }
-                    }else{
-                        if (this.getNbrs().contains(hop) &&
-                                minDistance > this.DV.get(destination).get(hop)) {
-                            minHop = hop;
-                            minDistance = this.DV.get(destination).get(hop);
-                        }
-                    }
-                }
-            }
+    /**
+     * This method returns all the next hops which have the minimum cost to the
+     * destination, i.e. its equal cost multipath group, in the address order
+     * the forwarding table keeps them in
+     * @param destination destination
+     * @return next hops in address order, empty if destination is un-reachable
+     */
+    public List<String> getEqualCostNextHops(String destination){
+        DistanceVectorTable table = this.getSnapshot();
+        int slot = table.indexOf(this.toAddress(destination));
+        List<String> nextHops = new ArrayList<>();
+        if(slot == DistanceVectorTable.NONE){
+            return nextHops;
+        }
+        int[] addresses = new int[ForwardingTable.MAX_NEXT_HOPS];
+        int count = table.equalCostHopsAt(slot, addresses);
+        ForwardingTable.sortNextHops(addresses, count);
+        for(int i = 0; i < count; i++){
+            nextHops.add(IPv4.toString(addresses[i]));
         }
-        return minHop;
+        return nextHops;
     }
 
 
@@ -542,19 +1394,10 @@ public class MyRouter implements Serializable{
      * @return
      */
     public Integer getMinCostToDestination(String destination){
-        if( this.DV.containsKey(destination)){
-            if( this.DV.get(destination) != null) {
-                return this.DV.get(destination).get((getMinimumNextHopToDestination(destination)));
-            }else{
-                return null;
-            }
-        }
-        else{
 
-            // since destination is not-available in the DV we will return null
+        // null is returned if destination is not-available in the DV
 
-            return null;
-        }
+        return toInteger(this.getSnapshot().getBestCost(this.toAddress(destination)));
     }
 
 
@@ -564,14 +1407,35 @@ public class MyRouter implements Serializable{
      * @param destination destination IP
      */
     public  void printNextHops(String destination){
-        System.out.println("##For Destination -> " + destination + "(" + this.getHostName(destination)+ " ) -> ( Min cost : " +
-                this.getMinCostToDestination(destination) + " via " +
-                this.getMinimumNextHopToDestination(destination) + " )");
+        DistanceVectorTable table = this.getSnapshot();
+        this.printNextHops(table, table.indexOf(this.toAddress(destination)), destination);
+    }
+
+
+    /**
+     * This method prints all the next hops of a destination and their costs
+     * from one snapshot of the distance vector
+     * @param table         snapshot of the distance vector
+     * @param slot          slot of the destination, NONE if it is not in the table
+     * @param destination   destination IP
+     */
+    private void printNextHops(DistanceVectorTable table, int slot, String destination){
+        int bestHop = slot == DistanceVectorTable.NONE ? 0 : table.bestHopAt(slot);
+        int bestCost = slot == DistanceVectorTable.NONE ? DistanceVectorTable.INFINITY : table.bestCostAt(slot);
+        String prefix = slot == DistanceVectorTable.NONE ? "" : "/" + table.prefixLengthAt(slot);
+        System.out.println("##For Destination -> " + destination + prefix + "(" + this.getHostName(destination)+ " ) -> ( Min cost : " +
+                toInteger(bestCost) + " via " +
+                (bestHop == 0 ? null : IPv4.toString(bestHop)) + " )");
         System.out.printf("|%-25s|%-25s|\n","Next Hop", "Cost");
         System.out.println("- - - - - - - - - - - - - - - - - ");
-        for(String nextHop:  this.DV.get(destination).keySet()){
-            if(this.DV.get(destination).get(nextHop) != null) {
-                System.out.printf("|%-25s|%-25d|\n", this.getHostName(nextHop), this.DV.get(destination).get(nextHop));
+        for(int column = 0; slot != DistanceVectorTable.NONE && column < table.hopCount(); column++){
+            int cost = table.costAt(slot, column);
+            String nextHop = IPv4.toString(table.hopAt(column));
+            if(cost == DistanceVectorTable.NO_PATH){
+                continue;
+            }
+            if(cost != DistanceVectorTable.INFINITY) {
+                System.out.printf("|%-25s|%-25d|\n", this.getHostName(nextHop), cost);
             } else {
                 System.out.printf("|%-25s|%-25s|\n", this.getHostName(nextHop), "un-reachable");
             }
@@ -585,21 +1449,66 @@ public class MyRouter implements Serializable{
      */
     public void printDV(){
         System.out.println("-------Distance Vector( " + this.getHostName(this.getMyIP()) + " )-------");
-        for(String destination: this.DV.keySet()){
-            this.printNextHops(destination);
+        DistanceVectorTable table = this.getSnapshot();
+        for(int slot = 0; slot < table.size(); slot++){
+            this.printNextHops(table, slot, IPv4.toString(table.destinationAt(slot)));
+        }
+    }
+
+
+    /**
+     * This method converts an IP string into 32 bit address
+     * @param ip IP address or host name
+     * @return 32 bit address or 0 if ip is not a valid IPv4 host
+     */
+    private int toAddress(String ip){
+        try {
+            return IPv4.toInt(ip);
+        } catch (UnknownHostException | NullPointerException e){
+            return 0;
         }
     }
 
+
+    /**
+     * This method converts a cost of the console API, where null means
+     * un-reachable, into a cost of the distance vector table
+     * @param cost cost or null
+     * @return cost or INFINITY
+     */
+    private static int toCost(Integer cost){
+        return cost == null ? DistanceVectorTable.INFINITY : cost;
+    }
+
+
+    /**
+     * This method converts a cost of the distance vector table into a cost of
+     * the console API, where null means un-reachable
+     * @param cost cost, INFINITY or NO_PATH
+     * @return cost or null
+     */
+    private static Integer toInteger(int cost){
+        if(cost == DistanceVectorTable.INFINITY || cost == DistanceVectorTable.NO_PATH){
+            return null;
+        }
+        return cost;
+    }
+
+
     /**
      * This method prints the neighbors if the router
      */
-    public void printNeighbors(){
+    public synchronized void printNeighbors(){
         if( this.nbrs.isEmpty()){
             System.out.println("SORRY currently this router has no neighbor.\n" +
                     "Use add or addall commands to start addding your neighbors");
         }
         for(String nbr: this.nbrs){
-            System.out.println(nbr);
+            Neighbor neighbor = this.neighborTable.getOrAdd(this.toAddress(nbr));
+            System.out.println(String.format("%-16s sent: %-8d failed: %-8d " +
+                            "avg send: %.3f ms  max send: %.3f ms",
+                    nbr, neighbor.getSentCount(), neighbor.getFailedCount(),
+                    neighbor.getAverageSendNanos() / 1e6, neighbor.getMaxSendNanos() / 1e6));
         }
     }
 
@@ -609,45 +1518,53 @@ public class MyRouter implements Serializable{
      * @return string formatted current date time in yyyy-MM-dd HH:mm:ss
      */
     public  String getDateTime() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        Date date = new Date();
-        String dateTime = sdf.format(date);
-        return dateTime;
+        return RouterLog.formatTime(this.clock.millis());
     }
 
 
     /**
-     * This method returns the hostname of the destination
-     * @param destinationString
+     * This method returns the metrics of the router's control plane
      * @return
      */
-    public String getHostName(String destinationString){
-        InetAddress destination = null;
-        try {
-            destination = InetAddress.getByName(destinationString);
-        } catch (UnknownHostException e) {
+    public RouterMetrics getMetrics() {
+        return metrics;
+    }
 
-        }
-        return destination.getHostName();
+
+    /**
+     * This method returns the clock which gives the time of route changes and timers
+     * @return
+     */
+    public Clock getClock() {
+        return clock;
     }
 
+
     /**
-     * This method computes the netwrok prefix given ip address
-     * It assumes subnet mask to be 255.255.255.0
-     * @param ipAddress IP address
-     * @return network prefix of the IP address
+     * This method returns the log of the router's events
+     * @return
      */
-    public  String getNetworkPrefix(String ipAddress){
-        String[] nwPrefixArray = ipAddress.split("\\.");
-        String nwPrefix = "";
-        for(int i = 0; i < 3; i++){
-            nwPrefix += nwPrefixArray[i] + ".";
-        }
-        nwPrefix += "00";
-        return nwPrefix;
+    public RouterLog getLog() {
+        return log;
     }
 
 
-}
+    /**
+     * This method returns the hostname of the destination. It never waits for DNS,
+     * the IP itself is returned until the name has been looked up in the background
+     * @param destinationString
+     * @return
+     */
+    public String getHostName(String destinationString){
+        return this.hostNames.getHostName(destinationString);
+    }
 
 
+    /**
+     * This method returns the cache of host names
+     * @return
+     */
+    public HostNameCache getHostNameCache() {
+        return hostNames;
+    }
+}
@@ -0,0 +1,404 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps the protocol state a router has about one of its neighbors,
+ * i.e. how far each side has got in the other's routing table versions.
+ * It also keeps the resolved socket address of the neighbor and how sending
+ * to it went, the send counters are only written by the event loop.
+ * The counters are exposed over JMX as the per neighbor breakdown of the traffic.
+ * The last periodic advertisement encoded for the neighbor is kept in a direct
+ * buffer, so it is sent again without encoding while our table doesn't change
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class Neighbor
+        implements NeighborMBean{
+
+    // 32 bit address of the neighbor
+    private int address;
+
+    // IP of the neighbor
+    private String ip;
+
+    // epoch of the neighbor's routing table we have received, 0 if none
+    int epoch;
+
+    // version of the neighbor's routing table up to which we have all the changes
+    int receivedVersion;
+
+    // epoch of our routing table the neighbor has acknowledged, 0 if none
+    int ackEpoch;
+
+    // version of our routing table the neighbor has acknowledged
+    int ackedVersion;
+
+    // table version and base version of the fragmented advertisement being collected
+    private int pendingVersion;
+    private int pendingBase;
+
+    // fragments of the advertisement being collected which have been received
+    private BitSet pendingFragments;
+
+    // number of fragments received of the advertisement being collected
+    private int pendingCount;
+
+    // merge count at which the full table being collected was started
+    private int fullTableStart;
+
+    // route id -> merge count at which an advertisement of the neighbor last
+    // carried the route. Only used while holding the router lock
+    private IntIndexMap carried;
+
+    // time in milliseconds an advertisement of the neighbor was last received, 0 if never
+    private volatile long lastHeard;
+
+    // number of route updates received from the neighbor
+    private volatile long receivedCount;
+
+    // address and port updates are sent to, resolved once
+    private volatile InetSocketAddress socketAddress;
+
+    // number of datagrams sent to the neighbor
+    private volatile long sentCount;
+
+    // number of datagrams which could not be sent to the neighbor
+    private volatile long failedCount;
+
+    // total and maximum time in nanoseconds from queueing a datagram until it was sent
+    private volatile long totalSendNanos;
+    private volatile long maxSendNanos;
+
+    // number of datagrams queued to the neighbor which have not been sent yet
+    private AtomicInteger queuedCount;
+
+    // base version, table version and entries per fragment of the cached advertisement
+    private int cachedBase;
+    private int cachedVersion;
+    private int cachedEntries;
+
+    // direct buffer holding the cached advertisement, reused for the next one
+    private ByteBuffer cachedBuffer;
+
+    // fragments of the cached advertisement, slices of the buffer, null if none
+    private ByteBuffer[] cachedFragments;
+
+
+    /**
+     * This constructor initializes the state of a neighbor we know nothing about
+     * @param address 32 bit address of the neighbor
+     */
+    public Neighbor(int address) {
+        this.address = address;
+        this.ip = IPv4.toString(address);
+        this.pendingFragments = new BitSet();
+        this.carried = new IntIndexMap(16);
+        this.queuedCount = new AtomicInteger();
+        this.reset();
+    }
+
+
+    /**
+     * This method returns the 32 bit address of the neighbor
+     * @return
+     */
+    public int getAddress() {
+        return address;
+    }
+
+
+    /**
+     * This method returns the IP of the neighbor
+     * @return
+     */
+    public String getIP() {
+        return ip;
+    }
+
+
+    /**
+     * This method returns the socket address updates are sent to. The address
+     * is built from the 32 bit address, so no name lookup is done
+     * @param port port number of the neighbor
+     * @return
+     */
+    public InetSocketAddress getSocketAddress(int port){
+        InetSocketAddress socketAddress = this.socketAddress;
+        if(socketAddress == null || socketAddress.getPort() != port){
+            byte[] bytes = {(byte) (this.address >>> 24), (byte) (this.address >>> 16),
+                    (byte) (this.address >>> 8), (byte) this.address};
+            try {
+                socketAddress = new InetSocketAddress(InetAddress.getByAddress(bytes), port);
+            } catch (UnknownHostException e){
+                // can't happen for 4 bytes
+                throw new IllegalStateException(e);
+            }
+            this.socketAddress = socketAddress;
+        }
+        return socketAddress;
+    }
+
+
+    /**
+     * This method records a datagram queued to be sent to the neighbor
+     */
+    void sendQueued(){
+        this.queuedCount.incrementAndGet();
+    }
+
+
+    /**
+     * This method records a datagram sent to the neighbor
+     * @param nanos time in nanoseconds from queueing the datagram until it was sent
+     */
+    void sendCompleted(long nanos){
+        this.queuedCount.decrementAndGet();
+        this.sentCount++;
+        this.totalSendNanos += nanos;
+        if(nanos > this.maxSendNanos){
+            this.maxSendNanos = nanos;
+        }
+    }
+
+
+    /**
+     * This method records a datagram which could not be sent to the neighbor
+     */
+    void sendFailed(){
+        this.queuedCount.decrementAndGet();
+        this.failedCount++;
+    }
+
+
+    /**
+     * This method returns the cached advertisement if it is the one wanted.
+     * It is not returned while datagrams to the neighbor are still queued,
+     * they may be reading its buffer. Caller must hold the neighbor's lock
+     * @param base      base version of the advertisement
+     * @param version   version of our table
+     * @param entries   maximum number of entries in one fragment
+     * @return fragments of the advertisement or null
+     */
+    ByteBuffer[] getCachedAdvertisement(int base, int version, int entries){
+        if(this.cachedFragments == null || this.cachedBase != base || this.cachedVersion != version
+                || this.cachedEntries != entries || this.queuedCount.get() != 0){
+            return null;
+        }
+        return this.cachedFragments;
+    }
+
+
+    /**
+     * This method encodes an advertisement for the neighbor and caches it. The
+     * buffer of the cached advertisement is reused when it is large enough and
+     * nothing is queued which may still read it. Caller must hold the neighbor's lock
+     * @param base      base version the advertisement was asked for
+     * @param packet    routes of the advertisement
+     * @param entries   maximum number of entries in one fragment
+     * @return fragments of the advertisement
+     */
+    ByteBuffer[] cacheAdvertisement(int base, RIPPacket packet, int entries){
+        int size = packet.encodedSize(entries);
+        if(this.cachedBuffer == null || this.cachedBuffer.capacity() < size
+                || this.queuedCount.get() != 0){
+            this.cachedBuffer = ByteBuffer.allocateDirect(size);
+        }
+        this.cachedFragments = packet.writeFragments(this.cachedBuffer, entries, this.address);
+        this.cachedBase = base;
+        this.cachedVersion = packet.getTableVersion();
+        this.cachedEntries = entries;
+        return this.cachedFragments;
+    }
+
+
+    /**
+     * This method returns number of datagrams sent to the neighbor
+     * @return
+     */
+    public long getSentCount() {
+        return sentCount;
+    }
+
+
+    /**
+     * This method returns number of datagrams which could not be sent to the neighbor
+     * @return
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+
+    /**
+     * This method returns the average time in nanoseconds a datagram waited to be sent
+     * @return
+     */
+    public long getAverageSendNanos() {
+        long sent = this.sentCount;
+        return sent == 0 ? 0 : this.totalSendNanos / sent;
+    }
+
+
+    /**
+     * This method returns the maximum time in nanoseconds a datagram waited to be sent
+     * @return
+     */
+    public long getMaxSendNanos() {
+        return maxSendNanos;
+    }
+
+
+    /**
+     * This method returns the time an advertisement of the neighbor was last received
+     * @return time in milliseconds, 0 if never
+     */
+    public long getLastHeard() {
+        return lastHeard;
+    }
+
+
+    /**
+     * This method records that an advertisement of the neighbor has been received.
+     * Every advertisement, even one without routes, keeps all the routes through
+     * the neighbor alive, since changed routes are all it sends. Routes the
+     * neighbor no longer has are flushed by its full table instead
+     * @param now current time in milliseconds
+     */
+    public void heard(long now){
+        this.lastHeard = now;
+        this.receivedCount++;
+    }
+
+
+    /**
+     * This method returns number of route updates received from the neighbor
+     * @return
+     */
+    public long getReceivedCount() {
+        return receivedCount;
+    }
+
+
+    /**
+     * This method forgets all the versions, so both sides resync their full tables
+     */
+    public void reset(){
+        this.epoch = 0;
+        this.receivedVersion = 0;
+        this.ackEpoch = 0;
+        this.ackedVersion = 0;
+        this.pendingVersion = 0;
+        this.pendingBase = 0;
+        this.pendingFragments.clear();
+        this.pendingCount = 0;
+        this.fullTableStart = 0;
+        synchronized (this){
+            this.cachedBuffer = null;
+            this.cachedFragments = null;
+        }
+    }
+
+
+    /**
+     * This method records the versions carried by an advertisement of the neighbor.
+     * The received version only moves forward when the advertisement continues
+     * from where we are, i.e. its base version is not newer than what we have,
+     * and all of its fragments have been received. A full table which moves
+     * it forward has every route the neighbor has, so the routes it didn't
+     * carry can be flushed
+     * @param update        advertisement (or one fragment of it) of the neighbor
+     * @param mergeCount    merge count of the router, see carried()
+     * @return merge count at which the full table this advertisement completes
+     * was started, 0 if it completes none
+     */
+    public int advertisementReceived(RIPPacket update, int mergeCount){
+        if(update.getAckEpoch() != 0){
+            this.ackEpoch = update.getAckEpoch();
+            this.ackedVersion = update.getAckVersion();
+        }
+        if(update.getEpoch() != this.epoch){
+            // neighbor has restarted, its versions start over
+            this.epoch = update.getEpoch();
+            this.receivedVersion = 0;
+            this.pendingCount = 0;
+            this.pendingFragments.clear();
+        }
+
+        // a message of a version 0 changes no version, e.g. coalesced routes
+        boolean fullTable = update.getBaseVersion() == 0 && update.getTableVersion() > 0;
+        if(update.getFragmentCount() > 1){
+            if(fullTable && (this.pendingCount == 0 || update.getTableVersion() != this.pendingVersion
+                    || update.getBaseVersion() != this.pendingBase)){
+                this.fullTableStart = mergeCount;
+            }
+            if(!this.fragmentsComplete(update)){
+                return 0;
+            }
+        }else if(fullTable){
+            this.fullTableStart = mergeCount;
+        }
+        if(update.getBaseVersion() <= this.receivedVersion
+                && update.getTableVersion() > this.receivedVersion){
+            this.receivedVersion = update.getTableVersion();
+            return fullTable ? this.fullTableStart : 0;
+        }
+        return 0;
+    }
+
+
+    /**
+     * This method records that an advertisement of the neighbor carried a
+     * reachable route. Caller must hold the router lock
+     * @param route         route id of the destination
+     * @param mergeCount    number of times the router merged updates, including this one
+     */
+    public void carried(int route, int mergeCount){
+        this.carried.put(route, mergeCount);
+    }
+
+
+    /**
+     * This method returns when an advertisement of the neighbor last carried a
+     * route. Caller must hold the router lock
+     * @param route route id of the destination
+     * @return merge count of the router then, IntIndexMap.MISSING if never
+     */
+    public int lastCarried(int route){
+        return this.carried.get(route);
+    }
+
+
+    /**
+     * This method forgets a route, e.g. when its destination is deleted and
+     * its route id can be given to another one. Caller must hold the router lock
+     * @param route route id of the destination
+     */
+    public void forget(int route){
+        this.carried.remove(route);
+    }
+
+
+    /**
+     * This method records a fragment of an advertisement. Fragments of an older
+     * advertisement still being collected are forgotten when a new one starts
+     * @param update fragment of the advertisement
+     * @return true if this was the last missing fragment
+     */
+    private boolean fragmentsComplete(RIPPacket update){
+        if(update.getTableVersion() != this.pendingVersion
+                || update.getBaseVersion() != this.pendingBase){
+            this.pendingVersion = update.getTableVersion();
+            this.pendingBase = update.getBaseVersion();
+            this.pendingFragments.clear();
+            this.pendingCount = 0;
+        }
+        if(!this.pendingFragments.get(update.getFragment())){
+            this.pendingFragments.set(update.getFragment());
+            this.pendingCount++;
+        }
+        return this.pendingCount == update.getFragmentCount();
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * This interface is the JMX view of a neighbor, i.e. the per neighbor
+ * breakdown of the router's traffic
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public interface NeighborMBean {
+
+    /**
+     * This method returns the IP of the neighbor
+     * @return
+     */
+    String getIP();
+
+    /**
+     * This method returns number of route updates received from the neighbor
+     * @return
+     */
+    long getReceivedCount();
+
+    /**
+     * This method returns the time an advertisement of the neighbor was last received
+     * @return time in milliseconds, 0 if never
+     */
+    long getLastHeard();
+
+    /**
+     * This method returns number of datagrams sent to the neighbor
+     * @return
+     */
+    long getSentCount();
+
+    /**
+     * This method returns number of datagrams which could not be sent to the neighbor
+     * @return
+     */
+    long getFailedCount();
+
+    /**
+     * This method returns the average time in nanoseconds a datagram waited to be sent
+     * @return
+     */
+    long getAverageSendNanos();
+
+    /**
+     * This method returns the maximum time in nanoseconds a datagram waited to be sent
+     * @return
+     */
+    long getMaxSendNanos();
+}
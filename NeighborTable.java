@@ -0,0 +1,69 @@
+import java.util.Arrays;
+
+/**
+ * This class maps 32 bit neighbor addresses to their protocol state
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class NeighborTable {
+
+    // neighbor address -> index of its state
+    private IntIndexMap index;
+
+    // index -> state of the neighbor
+    private Neighbor[] neighbors;
+
+    // number of neighbors in the table
+    private int count;
+
+
+    /**
+     * This constructor initializes an empty table
+     */
+    public NeighborTable() {
+        this.index = new IntIndexMap(8);
+        this.neighbors = new Neighbor[8];
+        this.count = 0;
+    }
+
+
+    /**
+     * This method returns the state of a neighbor
+     * @param address 32 bit address of the neighbor
+     * @return state of the neighbor or null if it is not in the table
+     */
+    public Neighbor get(int address){
+        int i = this.index.get(address);
+        return i == IntIndexMap.MISSING ? null : this.neighbors[i];
+    }
+
+
+    /**
+     * This method returns the state of a neighbor, adding it if needed
+     * @param address 32 bit address of the neighbor
+     * @return state of the neighbor
+     */
+    public Neighbor getOrAdd(int address){
+        Neighbor neighbor = this.get(address);
+        if(neighbor == null){
+            neighbor = new Neighbor(address);
+            if(this.count == this.neighbors.length){
+                this.neighbors = Arrays.copyOf(this.neighbors, this.count << 1);
+            }
+            this.index.put(address, this.count);
+            this.neighbors[this.count++] = neighbor;
+        }
+        return neighbor;
+    }
+
+
+    /**
+     * This method forgets a route in the state of every neighbor, when its
+     * destination is deleted
+     * @param route route id of the destination
+     */
+    public void forgetRoute(int route){
+        for(int i = 0; i < this.count; i++){
+            this.neighbors[i].forget(route);
+        }
+    }
+}
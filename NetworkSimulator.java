@@ -0,0 +1,738 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * This class simulates a network of many routers in one JVM to measure how
+ * fast the routing tables converge. Routers are MyRouter objects connected by
+ * simulated links with a delay, a loss rate and a cost. Nothing runs in real
+ * time, the routers read a virtual clock and all the sending, delivering and
+ * timers are events in one queue ordered by their virtual time, so a run with
+ * the same seed always gives the same result and runs much faster than the
+ * real network would. Periodic advertisements and triggered updates are sent
+ * the same way AdvertisementSender and TriggeredUpdateScheduler send them.
+ * The run ends once no routing table has changed for a while and the
+ * report shows the convergence time, the messages and bytes sent and whether
+ * every router found the shortest path to every other router
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class NetworkSimulator {
+
+    // virtual time at which a run starts, not 0 which the route timers take as never
+    public static final long START_TIME = 1000000;
+
+    // triggered update coalescing delay and hold time range in milliseconds, as RIPProtocol uses
+    public static final int COALESCE_DELAY = 50;
+    public static final int MIN_HOLD_TIME = 1000;
+    public static final int MAX_HOLD_TIME = 5000;
+
+    // first address given to the simulated routers, 10.0.0.1
+    public static final int FIRST_ADDRESS = (10 << 24) + 1;
+
+    // clock read by all the routers
+    private VirtualClock clock;
+
+    // events waiting to be run, ordered by time
+    private PriorityQueue<Event> events;
+
+    // number of events scheduled so far, keeps events of the same time in order
+    private long sequence;
+
+    // random number generator of the run, seeded so runs can be repeated
+    private Random random;
+
+    // log shared by all the routers
+    private RouterLog log;
+
+    // simulated routers
+    private MyRouter[] routers;
+
+    // router address -> index of the router
+    private IntIndexMap routerIndex;
+
+    // links between the routers
+    private List<Link> links;
+
+    // router -> neighbor address -> index of the link to the neighbor
+    private IntIndexMap[] linkIndex;
+
+    // router -> links of the router
+    private List<List<Link>> routerLinks;
+
+    // probability that a datagram is lost on a link
+    private double loss;
+
+    // interval between periodic advertisements in milliseconds
+    private int updateInterval;
+
+    // router -> whether a triggered update has been scheduled
+    private boolean[] triggerPending;
+
+    // router -> virtual time before which no triggered update can be sent
+    private long[] holdUntil;
+
+    // router -> version of its table after the last event
+    private int[] tableVersions;
+
+    // virtual time at which a routing table last changed
+    private long lastChange;
+
+    // number of datagrams and bytes sent and number of datagrams lost
+    private long messages;
+    private long bytes;
+    private long lost;
+
+    // number of events run
+    private long eventCount;
+
+
+    /**
+     * This constructor initializes a network of routers without any links
+     * @param count             number of routers
+     * @param seed              seed of the random numbers
+     * @param loss              probability that a datagram is lost on a link
+     * @param updateInterval    interval between periodic advertisements in milliseconds
+     */
+    public NetworkSimulator(int count, long seed, double loss, int updateInterval) {
+        this.clock = new VirtualClock(START_TIME);
+        this.events = new PriorityQueue<>();
+        this.sequence = 0;
+        this.random = new Random(seed);
+        this.log = new RouterLog(RouterLog.DEFAULT_CAPACITY, RouterLog.Level.OFF, new HostNameCache());
+        this.routers = new MyRouter[count];
+        this.routerIndex = new IntIndexMap(count);
+        this.links = new ArrayList<>();
+        this.linkIndex = new IntIndexMap[count];
+        this.routerLinks = new ArrayList<>(count);
+        this.loss = loss;
+        this.updateInterval = updateInterval;
+        this.triggerPending = new boolean[count];
+        this.holdUntil = new long[count];
+        this.tableVersions = new int[count];
+        this.lastChange = START_TIME;
+        for(int i = 0; i < count; i++){
+            this.routers[i] = new MyRouter(IPv4.toString(FIRST_ADDRESS + i), this.clock, this.log);
+            this.routers[i].setUpdateInterval(updateInterval);
+            this.routerIndex.put(FIRST_ADDRESS + i, i);
+            this.linkIndex[i] = new IntIndexMap(4);
+            this.routerLinks.add(new ArrayList<Link>());
+        }
+    }
+
+
+    /**
+     * This method returns number of routers
+     * @return
+     */
+    public int size() {
+        return routers.length;
+    }
+
+
+    /**
+     * This method returns the router with an index
+     * @param index index of the router
+     * @return
+     */
+    public MyRouter getRouter(int index){
+        return this.routers[index];
+    }
+
+
+    /**
+     * This method returns number of links
+     * @return
+     */
+    public int getLinkCount() {
+        return links.size();
+    }
+
+
+    /**
+     * This method connects two routers, both add the other one as neighbor
+     * @param a         index of one router
+     * @param b         index of the other router
+     * @param cost      cost of the link
+     * @param delay     time in milliseconds a datagram takes over the link
+     * @return false if the routers are the same or already connected
+     */
+    public boolean addLink(int a, int b, int cost, long delay){
+        if(a == b || this.linkIndex[a].get(FIRST_ADDRESS + b) != IntIndexMap.MISSING){
+            return false;
+        }
+        this.linkIndex[a].put(FIRST_ADDRESS + b, this.links.size());
+        this.linkIndex[b].put(FIRST_ADDRESS + a, this.links.size());
+        Link link = new Link(a, b, cost, delay);
+        this.links.add(link);
+        this.routerLinks.get(a).add(link);
+        this.routerLinks.get(b).add(link);
+        this.routers[a].addNeighbor2(IPv4.toString(FIRST_ADDRESS + b), cost);
+        this.routers[b].addNeighbor2(IPv4.toString(FIRST_ADDRESS + a), cost);
+        return true;
+    }
+
+
+    /**
+     * This method connects two routers with a random cost and delay
+     * @param a         index of one router
+     * @param b         index of the other router
+     * @param maxCost   maximum cost of the link, at least 1
+     * @param minDelay  minimum delay of the link in milliseconds
+     * @param maxDelay  maximum delay of the link in milliseconds
+     * @return false if the routers are the same or already connected
+     */
+    private boolean addRandomLink(int a, int b, int maxCost, long minDelay, long maxDelay){
+        int cost = 1 + this.random.nextInt(maxCost);
+        long delay = minDelay + (long) (this.random.nextDouble() * (maxDelay - minDelay));
+        return this.addLink(a, b, cost, delay);
+    }
+
+
+    /**
+     * This method connects the routers in a ring
+     * @param maxCost   maximum cost of a link
+     * @param minDelay  minimum delay of a link in milliseconds
+     * @param maxDelay  maximum delay of a link in milliseconds
+     */
+    public void buildRing(int maxCost, long minDelay, long maxDelay){
+        for(int i = 0; i < this.routers.length; i++){
+            this.addRandomLink(i, (i + 1) % this.routers.length, maxCost, minDelay, maxDelay);
+        }
+    }
+
+
+    /**
+     * This method connects the routers in a grid, every router is linked to
+     * the ones left, right, above and below it
+     * @param width     number of routers in a row
+     * @param maxCost   maximum cost of a link
+     * @param minDelay  minimum delay of a link in milliseconds
+     * @param maxDelay  maximum delay of a link in milliseconds
+     */
+    public void buildGrid(int width, int maxCost, long minDelay, long maxDelay){
+        for(int i = 0; i < this.routers.length; i++){
+            if((i + 1) % width != 0 && i + 1 < this.routers.length){
+                this.addRandomLink(i, i + 1, maxCost, minDelay, maxDelay);
+            }
+            if(i + width < this.routers.length){
+                this.addRandomLink(i, i + width, maxCost, minDelay, maxDelay);
+            }
+        }
+    }
+
+
+    /**
+     * This method connects the routers in a random connected graph. A random
+     * tree connects all the routers first, random links are added to it until
+     * routers have the given number of links on average
+     * @param degree    average number of links of a router
+     * @param maxCost   maximum cost of a link
+     * @param minDelay  minimum delay of a link in milliseconds
+     * @param maxDelay  maximum delay of a link in milliseconds
+     */
+    public void buildRandom(int degree, int maxCost, long minDelay, long maxDelay){
+        int count = this.routers.length;
+        for(int i = 1; i < count; i++){
+            this.addRandomLink(i, this.random.nextInt(i), maxCost, minDelay, maxDelay);
+        }
+        long wanted = Math.min((long) count * degree / 2, (long) count * (count - 1) / 2);
+        while(this.links.size() < wanted){
+            this.addRandomLink(this.random.nextInt(count), this.random.nextInt(count),
+                    maxCost, minDelay, maxDelay);
+        }
+    }
+
+
+    /**
+     * This method connects the routers in a k-ary fat tree of 5k^2/4 routers.
+     * Every one of the k pods has k/2 edge and k/2 aggregation routers which are
+     * all linked to each other, aggregation router j of every pod is linked to
+     * core routers j*k/2 to (j+1)*k/2-1
+     * @param k         number of ports of a router, even
+     * @param maxCost   maximum cost of a link
+     * @param minDelay  minimum delay of a link in milliseconds
+     * @param maxDelay  maximum delay of a link in milliseconds
+     */
+    public void buildFatTree(int k, int maxCost, long minDelay, long maxDelay){
+        int half = k / 2;
+        int cores = half * half;
+        for(int pod = 0; pod < k; pod++){
+            // routers of a pod follow the core routers, aggregation ones first
+            int first = cores + pod * k;
+            for(int aggregation = 0; aggregation < half; aggregation++){
+                for(int edge = 0; edge < half; edge++){
+                    this.addRandomLink(first + aggregation, first + half + edge,
+                            maxCost, minDelay, maxDelay);
+                }
+                for(int core = aggregation * half; core < (aggregation + 1) * half; core++){
+                    this.addRandomLink(first + aggregation, core, maxCost, minDelay, maxDelay);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * This method runs the network until the routing tables have not changed
+     * for two update intervals plus the maximum hold time, or the time limit
+     * @param maxTime maximum virtual time of the run in milliseconds
+     */
+    public void run(long maxTime){
+        long quietTime = 2L * this.updateInterval + MAX_HOLD_TIME;
+
+        // starting the periodic advertisements at random times, and the route timers
+        for(int i = 0; i < this.routers.length; i++){
+            this.afterEvent(i);
+            this.schedulePeriodicUpdate(i, this.random.nextInt(this.updateInterval));
+            this.scheduleTimerTick(i);
+        }
+
+        while(!this.events.isEmpty()){
+            Event event = this.events.peek();
+            if(event.time - START_TIME > maxTime || event.time - this.lastChange > quietTime){
+                break;
+            }
+            this.events.poll();
+            this.clock.setMillis(event.time);
+            this.eventCount++;
+            event.task.run();
+        }
+    }
+
+
+    /**
+     * This method schedules a task at a virtual time
+     * @param time  virtual time in milliseconds
+     * @param task  task to be run
+     */
+    private void schedule(long time, Runnable task){
+        this.events.add(new Event(time, this.sequence++, task));
+    }
+
+
+    /**
+     * This method schedules the next periodic advertisement of a router
+     * @param router    index of the router
+     * @param delay     delay in milliseconds
+     */
+    private void schedulePeriodicUpdate(final int router, long delay){
+        this.schedule(this.clock.millis() + delay, new Runnable() {
+            @Override
+            public void run() {
+                sendAdvertisements(router);
+                schedulePeriodicUpdate(router, updateInterval);
+            }
+        });
+    }
+
+
+    /**
+     * This method schedules the next tick of the route timers of a router
+     * @param router index of the router
+     */
+    private void scheduleTimerTick(final int router){
+        this.schedule(this.clock.millis() + MyRouter.TIMER_TICK, new Runnable() {
+            @Override
+            public void run() {
+                routers[router].expireRoutes(clock.millis());
+                afterEvent(router);
+                scheduleTimerTick(router);
+            }
+        });
+    }
+
+
+    /**
+     * This method sends the periodic advertisement of a router to its neighbors.
+     * Like AdvertisementSender the routes are taken from the table once per
+     * base version and every neighbor gets them poisoned and with its own ack
+     * @param router index of the router
+     */
+    private void sendAdvertisements(int router){
+        MyRouter sender = this.routers[router];
+        Map<Integer, RIPPacket> packets = new HashMap<>();
+        for(Neighbor neighbor: sender.getNeighbors()){
+            int base = sender.getAdvertisementBase(neighbor);
+            RIPPacket packet = packets.get(base);
+            if(packet == null){
+                packet = sender.getAdvertisement(base);
+                packets.put(base, packet);
+            }
+            byte[][] fragments = packet.toFragments(sender.getMaxEntriesPerMessage(),
+                    neighbor.getAddress());
+            for(byte[] fragment: fragments){
+                this.send(router, neighbor.getAddress(),
+                        RIPPacket.withAck(fragment, neighbor.epoch, neighbor.receivedVersion));
+            }
+        }
+    }
+
+
+    /**
+     * This method records whether a router's table changed in the last event
+     * and schedules its triggered update like TriggeredUpdateScheduler does
+     * @param router index of the router
+     */
+    private void afterEvent(final int router){
+        MyRouter target = this.routers[router];
+        int version = target.getSnapshot().getVersion();
+        if(version != this.tableVersions[router]){
+            this.tableVersions[router] = version;
+            this.lastChange = this.clock.millis();
+        }
+        if(!target.isDvchanged() || this.triggerPending[router]){
+            return;
+        }
+        this.triggerPending[router] = true;
+        long delay = Math.max(COALESCE_DELAY, this.holdUntil[router] - this.clock.millis());
+        this.schedule(this.clock.millis() + delay, new Runnable() {
+            @Override
+            public void run() {
+                sendTriggeredUpdate(router);
+            }
+        });
+    }
+
+
+    /**
+     * This method sends the routes of a router which changed since its last
+     * triggered update and starts its hold time
+     * @param router index of the router
+     */
+    private void sendTriggeredUpdate(int router){
+        MyRouter sender = this.routers[router];
+        this.holdUntil[router] = this.clock.millis() + MIN_HOLD_TIME
+                + this.random.nextInt(MAX_HOLD_TIME - MIN_HOLD_TIME + 1);
+        this.triggerPending[router] = false;
+        RIPPacket packet = sender.getChangedRoutes();
+        sender.setDvchanged(false);
+        if(packet == null){
+            return;
+        }
+        for(Neighbor neighbor: sender.getNeighbors()){
+            byte[][] fragments = packet.toFragments(sender.getMaxEntriesPerMessage(),
+                    neighbor.getAddress());
+            for(byte[] fragment: fragments){
+                this.send(router, neighbor.getAddress(), fragment);
+            }
+        }
+    }
+
+
+    /**
+     * This method sends a datagram over the link to a neighbor. It is lost with
+     * the loss probability of the network, or delivered after the link's delay
+     * @param router    index of the sending router
+     * @param neighbor  address of the neighbor
+     * @param datagram  content of the datagram
+     */
+    private void send(int router, int neighbor, final byte[] datagram){
+        int link = this.linkIndex[router].get(neighbor);
+        if(link == IntIndexMap.MISSING){
+            return;
+        }
+        this.messages++;
+        this.bytes += datagram.length;
+        if(this.random.nextDouble() < this.loss){
+            this.lost++;
+            return;
+        }
+        final int receiver = this.routerIndex.get(neighbor);
+        this.schedule(this.clock.millis() + this.links.get(link).delay, new Runnable() {
+            @Override
+            public void run() {
+                RIPPacket update = RIPPacket.decode(datagram, datagram.length);
+                if(update != null){
+                    routers[receiver].updateDistanceVector(update);
+                }
+                afterEvent(receiver);
+            }
+        });
+    }
+
+
+    /**
+     * This method checks every router's best cost to every other router against
+     * the shortest paths of the network found by Dijkstra's algorithm
+     * @return number of routes whose cost is not the shortest path
+     */
+    public int countWrongRoutes(){
+        int count = this.routers.length;
+        int wrong = 0;
+        long[] distances = new long[count];
+        for(int source = 0; source < count; source++){
+            this.shortestPaths(source, distances);
+            DistanceVectorTable table = this.routers[source].getSnapshot();
+            for(int target = 0; target < count; target++){
+                if(target == source){
+                    continue;
+                }
+                int cost = table.getBestCost(FIRST_ADDRESS + target);
+                long expected = distances[target] == Long.MAX_VALUE
+                        ? DistanceVectorTable.INFINITY : distances[target];
+                if(cost != expected){
+                    wrong++;
+                }
+            }
+        }
+        return wrong;
+    }
+
+
+    /**
+     * This method finds the cost of the shortest path from a router to every other router
+     * @param source    index of the router
+     * @param distances router -> cost of the shortest path, Long.MAX_VALUE if there is none
+     */
+    private void shortestPaths(int source, long[] distances){
+        Arrays.fill(distances, Long.MAX_VALUE);
+        distances[source] = 0;
+        PriorityQueue<long[]> queue = new PriorityQueue<>(16, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        queue.add(new long[]{0, source});
+        while(!queue.isEmpty()){
+            long[] head = queue.poll();
+            int router = (int) head[1];
+            if(head[0] > distances[router]){
+                continue;
+            }
+            for(Link link: this.routerLinks.get(router)){
+                int other = link.a == router ? link.b : link.a;
+                long distance = head[0] + link.cost;
+                if(distance < distances[other]){
+                    distances[other] = distance;
+                    queue.add(new long[]{distance, other});
+                }
+            }
+        }
+    }
+
+
+    /**
+     * This method prints the result of a run
+     * @param name          name of the topology
+     * @param wallMillis    real time the run took in milliseconds
+     */
+    public void printReport(String name, long wallMillis){
+        System.out.println("#### Simulation of " + name + " ####");
+        System.out.println("Routers            : " + this.routers.length);
+        System.out.println("Links              : " + this.links.size());
+        System.out.println("Convergence time   : " + (this.lastChange - START_TIME) + " ms (virtual)");
+        System.out.println("Datagrams sent     : " + this.messages + " (" + this.lost + " lost)");
+        System.out.println("Bytes sent         : " + this.bytes);
+        System.out.println("Events run         : " + this.eventCount);
+        System.out.println("Wrong routes       : " + this.countWrongRoutes());
+        System.out.println("Real time          : " + wallMillis + " ms");
+    }
+
+
+    /**
+     * This methods prints the correct usage of this program
+     */
+    public static void usage(){
+        System.out.println("Correct Usage : \njava NetworkSimulator <topology> <size> [option=value ...]\n" +
+                "<topology> : ring, grid, random or fattree\n" +
+                "<size> : number of routers, routers in a row of the grid or k of the fat tree\n" +
+                "options : cost=<max link cost, default 10> delay=<max link delay in ms, default 10>\n" +
+                "          loss=<datagram loss probability, default 0> degree=<average links of a\n" +
+                "          random graph router, default 4> interval=<periodic update interval in ms,\n" +
+                "          default 30000> time=<max virtual time in s, default 600> seed=<default 1>");
+    }
+
+
+    /**
+     * This is the main method which builds a topology, runs it and prints the result
+     * @param args topology, size and options
+     */
+    public static void main(String[] args){
+        if(args.length < 2){
+            usage();
+            return;
+        }
+        String topology = args[0];
+        int size;
+        Map<String, String> options = new HashMap<>();
+        try {
+            size = Integer.parseInt(args[1]);
+            for(int i = 2; i < args.length; i++){
+                String[] option = args[i].split("=");
+                if(option.length != 2){
+                    usage();
+                    return;
+                }
+                options.put(option[0], option[1]);
+            }
+        } catch (NumberFormatException e){
+            usage();
+            return;
+        }
+
+        int maxCost, degree, updateInterval;
+        long maxDelay, maxTime, seed;
+        double loss;
+        try {
+            maxCost = Integer.parseInt(option(options, "cost", "10"));
+            maxDelay = Long.parseLong(option(options, "delay", "10"));
+            loss = Double.parseDouble(option(options, "loss", "0"));
+            degree = Integer.parseInt(option(options, "degree", "4"));
+            updateInterval = Integer.parseInt(option(options, "interval", "30000"));
+            maxTime = Long.parseLong(option(options, "time", "600")) * 1000;
+            seed = Long.parseLong(option(options, "seed", "1"));
+        } catch (NumberFormatException e){
+            System.out.println("ERROR: Options must be numbers");
+            usage();
+            return;
+        }
+        if(size < 2 || maxCost < 1 || maxDelay < 1 || updateInterval < 1 || loss < 0 || loss >= 1){
+            System.out.println("ERROR: Size must be at least 2, cost, delay and interval positive " +
+                    "and loss between 0 and 1");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        NetworkSimulator simulator;
+        switch (topology){
+            case "ring":
+                simulator = new NetworkSimulator(size, seed, loss, updateInterval);
+                simulator.buildRing(maxCost, maxDelay / 2, maxDelay);
+                break;
+            case "grid":
+                simulator = new NetworkSimulator(size * size, seed, loss, updateInterval);
+                simulator.buildGrid(size, maxCost, maxDelay / 2, maxDelay);
+                break;
+            case "random":
+                simulator = new NetworkSimulator(size, seed, loss, updateInterval);
+                simulator.buildRandom(degree, maxCost, maxDelay / 2, maxDelay);
+                break;
+            case "fattree":
+                if(size % 2 != 0){
+                    System.out.println("ERROR: k of a fat tree must be even");
+                    return;
+                }
+                simulator = new NetworkSimulator(5 * size * size / 4, seed, loss, updateInterval);
+                simulator.buildFatTree(size, maxCost, maxDelay / 2, maxDelay);
+                break;
+            default:
+                usage();
+                return;
+        }
+        simulator.run(maxTime);
+        simulator.printReport(topology + " " + size, System.currentTimeMillis() - start);
+    }
+
+
+    /**
+     * This method returns the value of an option
+     * @param options       options given on the command line
+     * @param name          name of the option
+     * @param defaultValue  value if the option is not given
+     * @return
+     */
+    private static String option(Map<String, String> options, String name, String defaultValue){
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+
+    /**
+     * This class is a link between two routers
+     */
+    private static class Link {
+
+        // indexes of the routers at both ends
+        final int a;
+        final int b;
+
+        // cost of the link
+        final int cost;
+
+        // time in milliseconds a datagram takes over the link
+        final long delay;
+
+        Link(int a, int b, int cost, long delay) {
+            this.a = a;
+            this.b = b;
+            this.cost = cost;
+            this.delay = delay;
+        }
+    }
+
+
+    /**
+     * This class holds a task and the virtual time it is run at
+     */
+    private static class Event implements Comparable<Event> {
+
+        // virtual time in milliseconds and order in which the event was scheduled
+        final long time;
+        final long sequence;
+
+        // task to be run
+        final Runnable task;
+
+        Event(long time, long sequence, Runnable task) {
+            this.time = time;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if(this.time != other.time){
+                return Long.compare(this.time, other.time);
+            }
+            return Long.compare(this.sequence, other.sequence);
+        }
+    }
+
+
+    /**
+     * This class is a clock which only moves when the simulator sets it
+     */
+    private static class VirtualClock extends Clock {
+
+        // current virtual time in milliseconds
+        private long millis;
+
+        VirtualClock(long millis) {
+            this.millis = millis;
+        }
+
+        void setMillis(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(this.millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.Arrays;
+
+/**
+ * This class is an int array split into pages of PAGE_SIZE ints, which is
+ * copied in time proportional to its number of pages instead of its length.
+ * A copy shares the pages of the array and a page is copied only on the first
+ * write to it after the copy was taken, by whichever of the two writes it, so
+ * taking a copy after every few changes copies only the pages which changed.
+ * An array shorter than a page has one page of its own length, so small maps
+ * don't take a whole page. Pages which are written by different threads at
+ * once must be different, e.g. ranges of indexes split at a multiple of PAGE_SIZE
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class PagedIntArray {
+
+    // number of bits of an index which pick the int in its page
+    public static final int PAGE_SHIFT = 9;
+
+    // number of ints in a page
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    // PAGE_SIZE - 1, to turn an index into its place in the page
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    // page -> ints of the page
+    private int[][] pages;
+
+    // page -> generation in which this array made or copied the page, an older
+    // one means the page is shared with a copy
+    private int[] owners;
+
+    // generation of this array, incremented by every copy taken of it
+    private int generation;
+
+    // number of pages
+    private int pageCount;
+
+    // number of ints the pages hold
+    private int length;
+
+    // value of the ints of a new page
+    private int initialValue;
+
+
+    /**
+     * This constructor initializes an array of at least a given length
+     * @param capacity      number of ints, rounded up to whole pages if it is more than one
+     * @param initialValue  value of every int
+     */
+    public PagedIntArray(int capacity, int initialValue) {
+        this.pages = new int[4][];
+        this.owners = new int[4];
+        this.generation = 0;
+        this.pageCount = 0;
+        this.length = 0;
+        this.initialValue = initialValue;
+        this.grow(capacity);
+    }
+
+
+    /**
+     * This constructor makes a copy sharing the pages of an array. Every page is
+     * copied on its first write, whichever array writes it
+     * @param other array to be copied
+     */
+    private PagedIntArray(PagedIntArray other) {
+        this.pages = Arrays.copyOf(other.pages, other.pageCount);
+        this.owners = new int[other.pageCount];
+        this.generation = 1;
+        this.pageCount = other.pageCount;
+        this.length = other.length;
+        this.initialValue = other.initialValue;
+    }
+
+
+    /**
+     * This method returns a copy of the array. The pages are shared until
+     * either array writes them
+     * @return
+     */
+    public PagedIntArray copy(){
+        this.generation++;
+        return new PagedIntArray(this);
+    }
+
+
+    /**
+     * This method returns number of ints the array holds
+     * @return
+     */
+    public int capacity(){
+        return this.length;
+    }
+
+
+    /**
+     * This method adds pages until the array holds at least a given number of ints.
+     * Beyond one page the length is a multiple of PAGE_SIZE
+     * @param capacity number of ints
+     */
+    public void grow(int capacity){
+        if(capacity <= this.length){
+            return;
+        }
+        if(this.pageCount == 1 && this.length < PAGE_SIZE){
+            // the short first page is replaced by a longer one
+            this.pages[0] = this.newPage(this.pages[0], Math.min(capacity, PAGE_SIZE));
+            this.owners[0] = this.generation;
+            this.length = this.pages[0].length;
+            if(capacity <= this.length){
+                return;
+            }
+        }
+        int pageCount = (capacity + PAGE_MASK) >>> PAGE_SHIFT;
+        if(pageCount > this.pages.length){
+            int length = Math.max(pageCount, this.pages.length * 2);
+            this.pages = Arrays.copyOf(this.pages, length);
+            this.owners = Arrays.copyOf(this.owners, length);
+        }
+        for(int page = this.pageCount; page < pageCount; page++){
+            this.pages[page] = this.newPage(null, pageCount == 1 ? capacity : PAGE_SIZE);
+            this.owners[page] = this.generation;
+        }
+        this.pageCount = pageCount;
+        this.length = pageCount == 1 ? this.pages[0].length : pageCount << PAGE_SHIFT;
+    }
+
+
+    /**
+     * This method makes a page with the ints of an old one, the others are set
+     * to the initial value
+     * @param old       ints to be kept, null if none
+     * @param length    length of the page
+     * @return
+     */
+    private int[] newPage(int[] old, int length){
+        int[] ints = old == null ? new int[length] : Arrays.copyOf(old, length);
+        if(this.initialValue != 0){
+            Arrays.fill(ints, old == null ? 0 : old.length, length, this.initialValue);
+        }
+        return ints;
+    }
+
+
+    /**
+     * This method returns an int
+     * @param index index of the int
+     * @return
+     */
+    public int get(int index){
+        return this.pages[index >>> PAGE_SHIFT][index & PAGE_MASK];
+    }
+
+
+    /**
+     * This method sets an int, copying its page first if it is shared
+     * @param index index of the int
+     * @param value new value
+     */
+    public void set(int index, int value){
+        int page = index >>> PAGE_SHIFT;
+        int[] ints = this.pages[page];
+        if(this.owners[page] != this.generation){
+            ints = this.ownPage(page);
+        }
+        ints[index & PAGE_MASK] = value;
+    }
+
+
+    /**
+     * This method sets a range of ints to the same value
+     * @param from  index of the first int
+     * @param to    index after the last int
+     * @param value new value
+     */
+    public void fill(int from, int to, int value){
+        for(int index = from; index < to; index++){
+            this.set(index, value);
+        }
+    }
+
+
+    /**
+     * This method copies a shared page, so this array can write it
+     * @param page index of the page
+     * @return the copied ints of the page
+     */
+    private int[] ownPage(int page){
+        int[] ints = this.pages[page].clone();
+        this.pages[page] = ints;
+        this.owners[page] = this.generation;
+        return ints;
+    }
+}
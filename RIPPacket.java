@@ -0,0 +1,728 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class defines the wire format of a route update message and has the
+ * encoder and decoder for it. The layout follows RIPv2 (RFC 2453):
+ *
+ *  header  : command(1) version(1) reserved(2) sender IP(4) epoch(4)
+ *            table version(4) base version(4) ack epoch(4) ack version(4)
+ *            fragment(2) fragment count(2)
+ *  entries : address family(2) route tag(2) address(4) mask(4) next hop(4) metric(4)
+ *
+ * Only what a neighbor needs is carried, i.e. for every destination the best
+ * next hop and the minimum cost. Unlike RIP the sender's IP is part of the
+ * header, since the receiver identifies neighbors by their configured IP.
+ *
+ * A message carries the routes which changed after its base version up to its
+ * table version, a base version of 0 means the full table. Epoch identifies one
+ * run of the sender so that a restart is noticed. The ack fields tell the
+ * receiver up to which version of its own table the sender has all changes,
+ * an ack epoch of 0 means the message carries no ack.
+ *
+ * Advertisements are split into fragments of at most MAX_ENTRIES entries (or a
+ * smaller byte budget) so they fit in one datagram without IP fragmentation.
+ * Every fragment is a complete message whose routes can be applied on their own,
+ * the receiver only treats the table version as received once all fragments are in
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class RIPPacket {
+
+    // RIP command for a response message, i.e. a message which carries routes
+    public static final byte COMMAND_RESPONSE = 2;
+
+    // version of this wire format, change it whenever the layout changes
+    public static final byte VERSION = 3;
+
+    // size of the header in bytes
+    public static final int HEADER_SIZE = 32;
+
+    // offset of the ack epoch and ack version in the header
+    public static final int ACK_OFFSET = 20;
+
+    // default number of entries in one message, as in RIP
+    public static final int MAX_ENTRIES = 25;
+
+    // maximum size of a message, i.e. the largest UDP payload over IPv4
+    public static final int MAX_MESSAGE_SIZE = 65507;
+
+    // maximum number of fragments of one advertisement
+    public static final int MAX_FRAGMENTS = 0xFFFF;
+
+    // size of one route entry in bytes
+    public static final int ENTRY_SIZE = 20;
+
+    // address family identifier of IPv4 entries
+    public static final short AF_INET = 2;
+
+    // next hop value used when the sender has no next hop to a destination
+    public static final int NO_NEXT_HOP = 0;
+
+    // metric value used when the sender can't reach a destination
+    public static final int UNREACHABLE = -1;
+
+    // route tag of an ordinary route
+    public static final int NO_TAG = 0;
+
+    // route tag of a route withdrawn because of the sender's summarization, i.e. a
+    // destination covered by a summary or a summary which broke up. The receiver
+    // doesn't count such a withdrawal as a flap
+    public static final int SUMMARIZED_TAG = 1;
+
+    // IP of the router which sent this message
+    private int sender;
+
+    // epoch of the sender's routing table
+    private int epoch;
+
+    // version of the sender's routing table this message brings the receiver up to
+    private int tableVersion;
+
+    // version after which changes are carried, 0 for the full table
+    private int baseVersion;
+
+    // epoch of the receiver's routing table which is acknowledged, 0 if none
+    private int ackEpoch;
+
+    // version of the receiver's routing table which is acknowledged
+    private int ackVersion;
+
+    // index of this fragment in the advertisement
+    private int fragment;
+
+    // number of fragments of the advertisement
+    private int fragmentCount;
+
+    // number of route entries in this message
+    private int entryCount;
+
+    // route entries, one array per field
+    private int[] addresses;
+    private int[] masks;
+    private int[] nextHops;
+    private int[] metrics;
+    private int[] tags;
+
+
+    /**
+     * This constructor initializes an empty message which can hold given number of entries
+     * @param sender     IP of the router which sent the message
+     * @param capacity   number of route entries
+     */
+    public RIPPacket(int sender, int capacity) {
+        this.sender = sender;
+        this.fragment = 0;
+        this.fragmentCount = 1;
+        this.entryCount = 0;
+        this.addresses = new int[capacity];
+        this.masks = new int[capacity];
+        this.nextHops = new int[capacity];
+        this.metrics = new int[capacity];
+        this.tags = new int[capacity];
+    }
+
+
+    /**
+     * This method returns the IP of the router which sent this message
+     * @return
+     */
+    public String getSenderIP() {
+        return IPv4.toString(this.sender);
+    }
+
+
+    /**
+     * This method returns the 32 bit address of the router which sent this message
+     * @return
+     */
+    public int getSenderAddress() {
+        return sender;
+    }
+
+
+    /**
+     * This method returns the epoch of the sender's routing table
+     * @return
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+
+    /**
+     * This method returns the version of the sender's routing table this message
+     * brings the receiver up to
+     * @return
+     */
+    public int getTableVersion() {
+        return tableVersion;
+    }
+
+
+    /**
+     * This method returns the version after which this message carries the changes,
+     * 0 if it carries the full table
+     * @return
+     */
+    public int getBaseVersion() {
+        return baseVersion;
+    }
+
+
+    /**
+     * This method returns the epoch of the receiver's routing table which is
+     * acknowledged, 0 if the message carries no ack
+     * @return
+     */
+    public int getAckEpoch() {
+        return ackEpoch;
+    }
+
+
+    /**
+     * This method returns the version of the receiver's routing table which is acknowledged
+     * @return
+     */
+    public int getAckVersion() {
+        return ackVersion;
+    }
+
+
+    /**
+     * This method returns the index of this fragment in the advertisement
+     * @return
+     */
+    public int getFragment() {
+        return fragment;
+    }
+
+
+    /**
+     * This method returns number of fragments of the advertisement
+     * @return
+     */
+    public int getFragmentCount() {
+        return fragmentCount;
+    }
+
+
+    /**
+     * This method sets the acknowledgement carried by this message
+     * @param ackEpoch      epoch of the receiver's routing table
+     * @param ackVersion    version of the receiver's routing table
+     */
+    public void setAck(int ackEpoch, int ackVersion){
+        this.ackEpoch = ackEpoch;
+        this.ackVersion = ackVersion;
+    }
+
+
+    /**
+     * This method sets the versions and the fragment carried by this message
+     * @param epoch         epoch of the sender's routing table
+     * @param tableVersion  version the message brings the receiver up to
+     * @param baseVersion   version after which changes are carried, 0 for the full table
+     * @param fragment      index of this fragment
+     * @param fragmentCount number of fragments of the advertisement
+     */
+    public void setHeader(int epoch, int tableVersion, int baseVersion, int fragment, int fragmentCount){
+        this.epoch = epoch;
+        this.tableVersion = tableVersion;
+        this.baseVersion = baseVersion;
+        this.fragment = fragment;
+        this.fragmentCount = fragmentCount;
+    }
+
+
+    /**
+     * This method returns number of route entries in this message
+     * @return
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+
+    /**
+     * This method returns the destination address of an entry
+     * @param i index of the entry
+     * @return destination address
+     */
+    public int getAddress(int i){
+        return this.addresses[i];
+    }
+
+
+    /**
+     * This method returns the subnet mask of an entry
+     * @param i index of the entry
+     * @return subnet mask
+     */
+    public int getMask(int i){
+        return this.masks[i];
+    }
+
+
+    /**
+     * This method returns the next hop the sender uses for an entry
+     * @param i index of the entry
+     * @return next hop address or NO_NEXT_HOP if the sender has no next hop
+     */
+    public int getNextHopAddress(int i){
+        return this.nextHops[i];
+    }
+
+
+    /**
+     * This method returns the cost the sender has for an entry
+     * @param i index of the entry
+     * @return cost or UNREACHABLE if the destination is un-reachable for the sender
+     */
+    public int getMetricValue(int i){
+        return this.metrics[i];
+    }
+
+
+    /**
+     * This method returns the route tag of an entry
+     * @param i index of the entry
+     * @return SUMMARIZED_TAG if the sender withdrew the route because of its summarization, else NO_TAG
+     */
+    public int getRouteTag(int i){
+        return this.tags[i];
+    }
+
+
+    /**
+     * This method adds a route entry to the message
+     * @param address   destination address
+     * @param mask      subnet mask of destination
+     * @param nextHop   next hop of the sender
+     * @param metric    cost of the sender
+     */
+    public void addEntry(int address, int mask, int nextHop, int metric){
+        this.addEntry(address, mask, nextHop, metric, NO_TAG);
+    }
+
+
+    /**
+     * This method adds a route entry with a route tag to the message
+     * @param address   destination address
+     * @param mask      subnet mask of destination
+     * @param nextHop   next hop of the sender
+     * @param metric    cost of the sender
+     * @param tag       route tag, NO_TAG or SUMMARIZED_TAG
+     */
+    public void addEntry(int address, int mask, int nextHop, int metric, int tag){
+        if(this.entryCount == this.addresses.length){
+            this.ensureCapacity(Math.max(4, this.entryCount * 2));
+        }
+        this.addresses[this.entryCount] = address;
+        this.masks[this.entryCount] = mask;
+        this.nextHops[this.entryCount] = nextHop;
+        this.metrics[this.entryCount] = metric;
+        this.tags[this.entryCount] = tag;
+        this.entryCount++;
+    }
+
+
+    /**
+     * This method replaces a route entry of the message
+     * @param i         index of the entry
+     * @param address   destination address
+     * @param mask      subnet mask of destination
+     * @param nextHop   next hop of the sender
+     * @param metric    cost of the sender
+     * @param tag       route tag, NO_TAG or SUMMARIZED_TAG
+     */
+    public void setEntry(int i, int address, int mask, int nextHop, int metric, int tag){
+        this.addresses[i] = address;
+        this.masks[i] = mask;
+        this.nextHops[i] = nextHop;
+        this.metrics[i] = metric;
+        this.tags[i] = tag;
+    }
+
+
+    /**
+     * This method removes all the route entries, the entry arrays are kept
+     */
+    public void clearEntries(){
+        this.entryCount = 0;
+    }
+
+
+    /**
+     * This method encodes the full routing table of a router into a message
+     * @param router router whose routes are to be advertised
+     * @return byte[] format of the message
+     */
+    public static byte[] encode(MyRouter router){
+        long start = System.nanoTime();
+        byte[] bytes = fromTable(router, router.getSnapshot(), 0, Integer.MAX_VALUE).toByteArray();
+        router.getMetrics().getSerializationLatency().record(System.nanoTime() - start);
+        return bytes;
+    }
+
+
+    /**
+     * This method builds a message with the routes of a router which changed
+     * after a version
+     * @param router    router whose routes are to be advertised
+     * @param table     snapshot of the router's distance vector
+     * @param since     version after which changes are wanted, 0 for the full table
+     * @param limit     maximum number of changed routes
+     * @return the message or null if more than limit routes changed
+     */
+    public static RIPPacket fromTable(MyRouter router, DistanceVectorTable table,
+                                      int since, int limit){
+        RIPPacket packet;
+        if(since == 0){
+            int count = 0;
+            for(int slot = 0; slot < table.size(); slot++){
+                if(table.summaryLengthAt(slot) != DistanceVectorTable.COVERED){
+                    count++;
+                }
+            }
+            packet = new RIPPacket(router.getMyAddress(), count);
+            for(int slot = 0; slot < table.size(); slot++){
+                if(table.summaryLengthAt(slot) != DistanceVectorTable.COVERED){
+                    packet.addRoute(table, slot);
+                }
+            }
+        }else{
+            int count = 0;
+            int slot = table.lastChangedSlot();
+            while(slot != DistanceVectorTable.NONE && table.changeVersionAt(slot) > since){
+                if(isChangedRoute(table, slot, since) && ++count > limit){
+                    return null;
+                }
+                slot = table.previousChangedSlot(slot);
+            }
+            packet = new RIPPacket(router.getMyAddress(), count);
+            slot = table.lastChangedSlot();
+            while(packet.entryCount < count){
+                if(isChangedRoute(table, slot, since)){
+                    packet.addRoute(table, slot);
+                }
+                slot = table.previousChangedSlot(slot);
+            }
+        }
+        packet.epoch = router.getEpoch();
+        packet.tableVersion = table.getVersion();
+        packet.baseVersion = since;
+        return packet;
+    }
+
+
+    /**
+     * This method returns whether a changed destination is carried by a message
+     * with the changes after a version. A destination covered by a summary is
+     * only carried once, to withdraw it when it got covered
+     * @param table routing table
+     * @param slot  slot of the destination
+     * @param since version after which changes are wanted
+     * @return
+     */
+    private static boolean isChangedRoute(DistanceVectorTable table, int slot, int since){
+        return table.summaryLengthAt(slot) != DistanceVectorTable.COVERED
+                || table.summaryVersionAt(slot) > since;
+    }
+
+
+    /**
+     * This method adds the best route of a destination to the message. A
+     * summary carries the route of the prefixes it is made of. A covered
+     * destination and a summary which broke up are withdrawn with SUMMARIZED_TAG
+     * @param table routing table
+     * @param slot  slot of the destination
+     */
+    private void addRoute(DistanceVectorTable table, int slot){
+        int state = table.summaryLengthAt(slot);
+        int route = slot;
+        if(state > 0){
+            // the first prefix of the block has the route of all of them
+            route = table.indexOf(table.destinationAt(slot), state);
+        }
+        int cost = route == DistanceVectorTable.NONE ? DistanceVectorTable.INFINITY : table.bestCostAt(route);
+        int nextHop = route == DistanceVectorTable.NONE ? NO_NEXT_HOP : table.bestHopAt(route);
+        int tag = NO_TAG;
+        if(state == DistanceVectorTable.COVERED
+                || (state == DistanceVectorTable.SUMMARY_WITHDRAWN && cost == DistanceVectorTable.INFINITY)){
+            cost = DistanceVectorTable.INFINITY;
+            tag = SUMMARIZED_TAG;
+        }
+        this.addEntry(table.destinationAt(slot), IPv4.toMask(table.prefixLengthAt(slot)), nextHop,
+                cost == DistanceVectorTable.INFINITY ? UNREACHABLE : cost, tag);
+    }
+
+
+    /**
+     * This method returns how many entries fit in a message of given size
+     * @param maxMessageSize maximum size of a message in bytes
+     * @return number of entries, at least 1
+     */
+    public static int entriesPerMessage(int maxMessageSize){
+        return Math.max(1, (maxMessageSize - HEADER_SIZE) / ENTRY_SIZE);
+    }
+
+
+    /**
+     * This method writes this message into one byte array, without fragmenting it
+     * @return byte[] format of the message
+     */
+    public byte[] toByteArray(){
+        byte[] bytes = new byte[HEADER_SIZE + this.entryCount * ENTRY_SIZE];
+        this.writeFragment(ByteBuffer.wrap(bytes), 0, 1, 0, this.entryCount, NO_NEXT_HOP);
+        return bytes;
+    }
+
+
+    /**
+     * This method splits this message into fragments, each of them written into
+     * its own byte array. A message without entries still gives one fragment.
+     * If the message needs more than MAX_FRAGMENTS fragments the entries per
+     * fragment are raised to stay within that
+     * @param maxEntries maximum number of entries in one fragment
+     * @return byte[] format of every fragment
+     */
+    public byte[][] toFragments(int maxEntries){
+        return this.toFragments(maxEntries, NO_NEXT_HOP);
+    }
+
+
+    /**
+     * This method splits this message into fragments for one neighbor. Routes
+     * whose next hop is the neighbor are poisoned, i.e. sent back to it as
+     * un-reachable (split horizon with poison reverse)
+     * @param maxEntries    maximum number of entries in one fragment
+     * @param poisonedHop   address of the receiving neighbor
+     * @return byte[] format of every fragment
+     */
+    public byte[][] toFragments(int maxEntries, int poisonedHop){
+        maxEntries = this.entriesPerFragment(maxEntries);
+        int count = this.fragmentCount(maxEntries);
+        byte[][] fragments = new byte[count][];
+        for(int i = 0; i < count; i++){
+            int from = i * maxEntries;
+            int to = Math.min(this.entryCount, from + maxEntries);
+            fragments[i] = new byte[HEADER_SIZE + (to - from) * ENTRY_SIZE];
+            this.writeFragment(ByteBuffer.wrap(fragments[i]), i, count, from, to, poisonedHop);
+        }
+        return fragments;
+    }
+
+
+    /**
+     * This method returns the number of bytes all the fragments of this message take
+     * @param maxEntries maximum number of entries in one fragment
+     * @return
+     */
+    public int encodedSize(int maxEntries){
+        return this.fragmentCount(this.entriesPerFragment(maxEntries)) * HEADER_SIZE
+                + this.entryCount * ENTRY_SIZE;
+    }
+
+
+    /**
+     * This method writes the fragments of this message for one neighbor back to
+     * back into one buffer, e.g. a direct buffer which is reused. The fragments
+     * are returned as slices of the buffer, so they are not copied
+     * @param buffer        buffer of at least encodedSize() bytes
+     * @param maxEntries    maximum number of entries in one fragment
+     * @param poisonedHop   address of the receiving neighbor
+     * @return every fragment, ready to be read
+     */
+    public ByteBuffer[] writeFragments(ByteBuffer buffer, int maxEntries, int poisonedHop){
+        maxEntries = this.entriesPerFragment(maxEntries);
+        int count = this.fragmentCount(maxEntries);
+        ByteBuffer[] fragments = new ByteBuffer[count];
+        buffer.clear();
+        for(int i = 0; i < count; i++){
+            int from = i * maxEntries;
+            int to = Math.min(this.entryCount, from + maxEntries);
+            int start = buffer.position();
+            this.writeFragment(buffer, i, count, from, to, poisonedHop);
+            ByteBuffer fragment = buffer.duplicate();
+            fragment.limit(buffer.position());
+            fragment.position(start);
+            fragments[i] = fragment.slice();
+        }
+        return fragments;
+    }
+
+
+    /**
+     * This method returns whether a reachable route of this message goes through a next hop
+     * @param nextHop next hop address
+     * @return
+     */
+    public boolean hasNextHop(int nextHop){
+        for(int i = 0; i < this.entryCount; i++){
+            if(this.nextHops[i] == nextHop && this.metrics[i] != UNREACHABLE){
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * This method returns the number of entries in one fragment, which is raised
+     * if the message would need more than MAX_FRAGMENTS fragments
+     * @param maxEntries maximum number of entries in one fragment
+     * @return
+     */
+    private int entriesPerFragment(int maxEntries){
+        if((this.entryCount + maxEntries - 1) / maxEntries > MAX_FRAGMENTS){
+            return (this.entryCount + MAX_FRAGMENTS - 1) / MAX_FRAGMENTS;
+        }
+        return maxEntries;
+    }
+
+
+    /**
+     * This method returns the number of fragments of this message
+     * @param entriesPerFragment number of entries in one fragment
+     * @return
+     */
+    private int fragmentCount(int entriesPerFragment){
+        return Math.max(1, (this.entryCount + entriesPerFragment - 1) / entriesPerFragment);
+    }
+
+
+    /**
+     * This method copies an encoded message and writes an ack into the copy's
+     * header. This way routes encoded once can be sent to several neighbors
+     * @param message       encoded message
+     * @param ackEpoch      epoch of the receiver's table being acknowledged
+     * @param ackVersion    version of the receiver's table being acknowledged
+     * @return byte[] format of the message carrying the ack
+     */
+    public static byte[] withAck(byte[] message, int ackEpoch, int ackVersion){
+        byte[] copy = message.clone();
+        writeAck(ByteBuffer.wrap(copy), ackEpoch, ackVersion);
+        return copy;
+    }
+
+
+    /**
+     * This method writes an ack into the header of an encoded message in place
+     * @param message       encoded message, starting at index 0 of the buffer
+     * @param ackEpoch      epoch of the receiver's table being acknowledged
+     * @param ackVersion    version of the receiver's table being acknowledged
+     */
+    public static void writeAck(ByteBuffer message, int ackEpoch, int ackVersion){
+        message.putInt(ACK_OFFSET, ackEpoch);
+        message.putInt(ACK_OFFSET + 4, ackVersion);
+    }
+
+
+    /**
+     * This method writes one fragment of this message into a buffer
+     * @param buffer        buffer to write into
+     * @param fragment      index of the fragment
+     * @param count         number of fragments
+     * @param from          index of the first entry of the fragment
+     * @param to            index after the last entry of the fragment
+     * @param poisonedHop   routes through this next hop are written as un-reachable
+     */
+    private void writeFragment(ByteBuffer buffer, int fragment, int count, int from, int to,
+                               int poisonedHop){
+        buffer.put(COMMAND_RESPONSE);
+        buffer.put(VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(this.sender);
+        buffer.putInt(this.epoch);
+        buffer.putInt(this.tableVersion);
+        buffer.putInt(this.baseVersion);
+        buffer.putInt(this.ackEpoch);
+        buffer.putInt(this.ackVersion);
+        buffer.putShort((short) fragment);
+        buffer.putShort((short) count);
+        for(int i = from; i < to; i++){
+            buffer.putShort(AF_INET);
+            buffer.putShort((short) this.tags[i]);
+            buffer.putInt(this.addresses[i]);
+            buffer.putInt(this.masks[i]);
+            buffer.putInt(this.nextHops[i]);
+            buffer.putInt(this.nextHops[i] == poisonedHop ? UNREACHABLE : this.metrics[i]);
+        }
+    }
+
+
+    /**
+     * This method reads a message from a byte array
+     * @param bytes     byte[] which holds the message
+     * @param length    number of valid bytes in the array
+     * @return the message or null if bytes are not a valid message
+     */
+    public static RIPPacket decode(byte[] bytes, int length){
+        RIPPacket packet = new RIPPacket(0, 0);
+        if(!decode(ByteBuffer.wrap(bytes, 0, length), packet)){
+            return null;
+        }
+        return packet;
+    }
+
+
+    /**
+     * This method reads a message from a buffer into an existing message object.
+     * The entry arrays of the object are reused and only grow when a bigger
+     * message arrives, so decoding a stream of updates doesn't allocate
+     * @param buffer    buffer positioned at the start of the message, limit at its end
+     * @param packet    message object to be filled
+     * @return true if buffer had a valid message
+     */
+    public static boolean decode(ByteBuffer buffer, RIPPacket packet){
+        int length = buffer.remaining();
+        if(length < HEADER_SIZE || (length - HEADER_SIZE) % ENTRY_SIZE != 0){
+            return false;
+        }
+        if(buffer.get() != COMMAND_RESPONSE || buffer.get() != VERSION){
+            return false;
+        }
+        buffer.getShort();
+        packet.sender = buffer.getInt();
+        packet.epoch = buffer.getInt();
+        packet.tableVersion = buffer.getInt();
+        packet.baseVersion = buffer.getInt();
+        packet.ackEpoch = buffer.getInt();
+        packet.ackVersion = buffer.getInt();
+        packet.fragment = buffer.getShort() & 0xFFFF;
+        packet.fragmentCount = buffer.getShort() & 0xFFFF;
+        if(packet.fragment >= packet.fragmentCount){
+            return false;
+        }
+        packet.entryCount = 0;
+        packet.ensureCapacity((length - HEADER_SIZE) / ENTRY_SIZE);
+        while(buffer.hasRemaining()){
+            short family = buffer.getShort();
+            int tag = buffer.getShort() & 0xFFFF;
+            int address = buffer.getInt();
+            int mask = buffer.getInt();
+            int nextHop = buffer.getInt();
+            int metric = buffer.getInt();
+            if(family == AF_INET){
+                packet.addEntry(address, mask, nextHop, metric, tag);
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * This method makes sure that entry arrays can hold given number of entries,
+     * the entries already in them are kept
+     * @param capacity number of entries
+     */
+    private void ensureCapacity(int capacity){
+        if(this.addresses.length < capacity){
+            this.addresses = Arrays.copyOf(this.addresses, capacity);
+            this.masks = Arrays.copyOf(this.masks, capacity);
+            this.nextHops = Arrays.copyOf(this.nextHops, capacity);
+            this.metrics = Arrays.copyOf(this.metrics, capacity);
+            this.tags = Arrays.copyOf(this.tags, capacity);
+        }
+    }
+}
@@ -3,7 +3,9 @@ import java.net.*;
 import java.util.Scanner;
 
 /**
- * This class implements basic RIP protocol
+ * This class implements basic RIP protocol.
+ * All the sending, receiving and timers run on one event loop thread,
+ * the main thread only reads the console commands
  * @author  Alimuddin Khan aak5031@rit.edu
  */
 public class RIPProtocol
@@ -14,15 +16,24 @@ public class RIPProtocol
     // Route update listener
     private RouteUpdateListener routeUpdateListener;
 
-    // Thread to start listener socket
-    private Thread listenerThread;
+    // threads decoding and merging the received updates
+    private ReceivePipeline receivePipeline;
 
-    // update sender socket
-    private DatagramSocket socket;
+    // event loop which sends and receives the updates
+    private RouterEventLoop eventLoop;
 
-    // port from which we will send the updates
+    // Thread to run the event loop
+    private Thread eventLoopThread;
+
+    // sender which fans out the updates to all the nbrs
+    private AdvertisementSender advertisementSender;
+
+    // port on which we send and receive the updates
     private int port;
 
+    // scheduler which sends triggered updates on route changes
+    private TriggeredUpdateScheduler updateScheduler;
+
 
     /**
      * This is the countructor to initialize the router object
@@ -31,26 +42,104 @@ public class RIPProtocol
     public RIPProtocol(String routerIP) {
         this.router = new MyRouter(routerIP);
 
-        // This is the port number on which sender socket will run
-        this.port = 55557;
+        // This is the port number on which updates are sent and received
+        this.port = 55556;
+
+        // initializing the listener and the event loop
+
+        this.routeUpdateListener = new RouteUpdateListener(this.router);
+        this.receivePipeline = new ReceivePipeline(this.router,
+                Runtime.getRuntime().availableProcessors(), IngressQueue.DEFAULT_CAPACITY);
+        this.routeUpdateListener.setPipeline(this.receivePipeline);
         try {
-            this.socket = new DatagramSocket(port);
-        } catch (SocketException e) {
+            this.eventLoop = new RouterEventLoop(this.port, this.routeUpdateListener,
+                    this.router.getMetrics());
+        } catch (IOException e) {
             System.out.println(this.getRouter().getDateTime() +
-                    "(Sender) Unable to start sender the socket. \n" +
+                    ": (Event Loop) Unable to start the socket. \n" +
                     "Make sure that " + this.port + " is not used by other sockets");
+            return;
         }
 
-        // initializing the listener
+        // initializing the triggered update scheduler with 50 ms coalescing delay
+        // and the 1-5 seconds hold time of RFC 2453
+
+        this.advertisementSender = new AdvertisementSender(this.router, this.eventLoop, this.port);
+
+        this.updateScheduler = new TriggeredUpdateScheduler(this, this.eventLoop, 50, 1000, 5000);
+        this.router.setUpdateScheduler(this.updateScheduler);
+
+        // making the metrics visible over JMX
+        this.router.getMetrics().register();
+
+        // printing the changes of the routing table instead of the whole table
+        this.router.getRouteEvents().subscribe(new RouteEventStream.Subscriber() {
+            @Override
+            public void routeChanged(RouteChange change) {
+                printRouteChange(change);
+            }
+
+            @Override
+            public void changesDropped(long count) {
+                System.out.println(router.getDateTime() + ": (Route Change) " + count +
+                        " changes were not printed, type print to see the routing table");
+            }
+        }, "console");
+
+        this.receivePipeline.start();
+        this.eventLoopThread = new Thread(this.eventLoop, "event-loop");
+        this.eventLoopThread.start();
+
+        // starting the periodic updates
+        this.eventLoop.schedule(this, this.router.getUpdateInterval());
 
-        this.routeUpdateListener = new RouteUpdateListener(this.router, 55556);
-        this.listenerThread = new Thread(routeUpdateListener);
-        this.listenerThread.start();
+        // starting the ticks of the route timers
+        this.eventLoop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                router.expireRoutes(router.getClock().millis());
+                eventLoop.schedule(this, MyRouter.TIMER_TICK);
+            }
+        }, MyRouter.TIMER_TICK);
+    }
 
+    /**
+     * This method prints a change of the routing table
+     * @param change change of the best route to a destination
+     */
+    private void printRouteChange(RouteChange change){
+        String destination = IPv4.toString(change.getDestination()) + "/" + change.getPrefixLength();
+        String oldNextHop = IPv4.toString(change.getOldNextHop());
+        String newNextHop = IPv4.toString(change.getNewNextHop());
+        String line;
+        switch (change.getType()){
+            case ADDED:
+                line = "Added " + destination + " via " + newNextHop + "(" +
+                        this.router.getHostName(newNextHop) + ") cost " + change.getNewCost();
+                break;
+            case WITHDRAWN:
+                line = "Withdrawn " + destination + ", it was via " + oldNextHop + "(" +
+                        this.router.getHostName(oldNextHop) + ") cost " + change.getOldCost();
+                break;
+            case NEXT_HOP_CHANGED:
+                line = "Next hop of " + destination + " changed from " + oldNextHop + "(" +
+                        this.router.getHostName(oldNextHop) + ") to " + newNextHop + "(" +
+                        this.router.getHostName(newNextHop) + "), cost " + change.getOldCost() +
+                        " -> " + change.getNewCost();
+                break;
+            default:
+                line = "Cost of " + destination + " via " + newNextHop + "(" +
+                        this.router.getHostName(newNextHop) + ") changed " + change.getOldCost() +
+                        " -> " + change.getNewCost();
+                break;
+        }
+        System.out.println(this.router.getDateTime() + ": (Route Change) " + line);
     }
 
+
     /**
-     * This method sends the router object to the desied destination
+     * This method sends the router's advertisement to the desied destination.
+     * Neighbors get only the routes they have not acknowledged yet
      * @param dest
      * @throws IOException
      */
@@ -59,15 +148,10 @@ public class RIPProtocol
         try {
             // creating Inet Addres object for the destination
 
-            InetAddress destination = InetAddress.getByName(dest);
-            byte[] routerByteArray = this.convertObjectToByteArray(this.router);
-            int destinationport = 55556;
-            DatagramPacket packet = new DatagramPacket(routerByteArray,
-                    routerByteArray.length, destination, destinationport);
-
-            // sending the packet to destination
-
-            this.socket.send(packet);
+            byte[][] fragments = this.router.encodeAdvertisement(dest);
+            for(byte[] fragment: fragments) {
+                this.sendBytes(dest, fragment);
+            }
         } catch (UnknownHostException e){
             System.out.println(this.getRouter().getDateTime() + ": (Sender) No such " +
                     "destination called " + dest + " exists");
@@ -78,6 +162,39 @@ public class RIPProtocol
     }
 
 
+    /**
+     * This method sends an encoded route update message to a destination
+     * @param dest  IP of the destination
+     * @param bytes encoded message
+     * @throws IOException
+     */
+    private void sendBytes(String dest, byte[] bytes)
+            throws IOException{
+        // creating Inet Addres object for the destination
+
+        InetAddress destination = InetAddress.getByName(dest);
+        int destinationport = 55556;
+
+        // handing the packet to the event loop which sends it to destination
+
+        this.eventLoop.send(bytes, new InetSocketAddress(destination, destinationport));
+    }
+
+
+    /**
+     * This method sends the routes which changed since the last triggered update
+     * to all the nbrs. It is called by the triggered update scheduler
+     */
+    public void sendTriggeredUpdate(){
+        RIPPacket changedRoutes = this.getRouter().getChangedRoutes();
+        this.getRouter().setDvchanged(false);
+
+        // the changed routes are encoded once and the same bytes go to all nbrs,
+        // except the nbrs whose routes are poisoned
+        this.advertisementSender.sendToAll(changedRoutes);
+    }
+
+
     /**
      * This method sends the update messages to all the nbrs.
      * In short it acts as message trigger for passing the updates
@@ -88,63 +205,45 @@ public class RIPProtocol
         }else {
 
             // passing updates to all the neighbors
-            for (String nbr : this.getRouter().nbrs) {
-                sendPacket(nbr);
+            try {
+                this.advertisementSender.sendAdvertisements();
+            } catch (NullPointerException e){
+                System.out.println(this.getRouter().getDateTime() + ": (Sender)" +
+                        " sender socket was not properly initialized)");
             }
         }
     }
 
 
     /**
-     * This method converts the Router object into byte array
-     * Which will be useful in sendig the object as packet
-     * @param object Router object to be converted into byte array
-     * @return byte[] format of the object Router
+     * This method converts the Router's routes into one unfragmented byte array.
+     * Note that tables of more than a few thousand routes don't fit in one datagram,
+     * advertisements to neighbors are fragmented by MyRouter.encodeAdvertisement
+     * @param object Router whose routes are to be converted into byte array
+     * @return byte[] format of the route update message
      */
     public   byte[] convertObjectToByteArray(MyRouter object){
-        byte[] myObjectByteArray = new byte[10240];
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutput output= null;
-        try{
-            output = new ObjectOutputStream(bos);
-            output.writeObject(object);
-            output.flush();
-            myObjectByteArray = bos.toByteArray();
-
-        }catch(Exception e){
-            System.out.println(e.getStackTrace());
-        }
-        return myObjectByteArray;
+        return RIPPacket.encode(object);
     }
 
 
     @Override
     /**
-     * This method acts runs in background and sends updates to
-     * all nbrs
+     * This method runs on the event loop, sends the periodic updates to
+     * all nbrs and schedules the next one
      */
     public void run() {
+        try {
 
-        while (true) {
-            try {
-
-                this.sendToAll();
-            } catch (IOException e) {
-                System.out.println(this.getRouter().getDateTime() + ":" +
-                        " (Triggered Update) Socket unable to send the update\n" +
-                        "Make sure the same socket is not being used by other programs");
-                break;
-            }
-
+            this.sendToAll();
+        } catch (IOException e) {
+            System.out.println(this.getRouter().getDateTime() + ":" +
+                    " (Periodic Update) Unable to send the update");
+        }
 
-            try {
-                // sleeping for fixed amount of time before sending updats again
+        // waiting for fixed amount of time before sending updats again
 
-                Thread.sleep(this.getRouter().getUpdateInterval());
-            } catch (InterruptedException e) {
-                break;
-            }
-        }
+        this.eventLoop.schedule(this, this.getRouter().getUpdateInterval());
     }
 
 
@@ -183,7 +282,7 @@ public class RIPProtocol
                         "5. update <nbrs-IP> <updated-cost> : This command helps you to change" +
                         " the cost to a neighbor\n" +
                         "6. me :  returns the IP of the router\n" +
-                        "7. list : This commands prints all the nbrs of the router\n" +
+                        "7. list : This commands prints all the nbrs of the router with their send statistics\n" +
                         "8. send <nbr> :  send updates to a particular neighbor\n" +
                         "9. sendall : sends update to all the neighbors" +
                         "10. debug <true/false> : This command helps you to set or reset the " +
@@ -193,7 +292,28 @@ public class RIPProtocol
                         "12. print : To print routing table\n" +
                         "13. printdv : To print all available paths to a destination with cost\n" +
                         "14. quit : This method helps you to properly terminate the program\n" +
-                        "15. help : To print this instruction\n"
+                        "15. help : To print this instruction\n" +
+                        "16. trigger <delay> <min-hold> <max-hold> : This command changes the " +
+                        "triggered update coalescing delay and hold time range in milliseconds\n" +
+                        "17. mtu <bytes> : This command sets the maximum size of a route update " +
+                        "datagram, default is 25 routes per datagram\n" +
+                        "18. lookup <IP> [<source-IP> <source-port> <destination-port>] : This command " +
+                        "prints the route with the longest matching prefix which handles packets for the IP, " +
+                        "and with a flow the one of its equal cost next hops the flow goes through\n" +
+                        "19. dns : This command prints the size and hit/miss counters of the " +
+                        "host name cache\n" +
+                        "20. log <debug/info/warn/error/off> : This command sets the level of the " +
+                        "logged events, log file <path> and log console choose where they are written\n" +
+                        "21. timers <timeout> <garbage-collection> : This command sets in milliseconds " +
+                        "after how long routes which are not refreshed time out and un-reachable " +
+                        "destinations are deleted, default is 180000 and 120000\n" +
+                        "22. stats : This command prints the packet counters, route counters and " +
+                        "latencies, which are also exposed over JMX\n" +
+                        "23. summary <min-length/off> : This command advertises contiguous prefixes " +
+                        "with the same next hop and cost as supernets no shorter than min-length\n" +
+                        "24. damping <on/off> or damping <half-life> <suppress> <reuse> <max-suppress> : " +
+                        "This command damps routes which are withdrawn or get costlier too often, times in " +
+                        "milliseconds, default is 900000 2000 750 3600000. damping alone prints the state\n"
         );
     }
 
@@ -291,12 +411,18 @@ public class RIPProtocol
      * This method safely terminates all the sockets and running threads
      */
     public void terminateRouter(){
+        this.routeUpdateListener.stopListener();
+        this.receivePipeline.stop();
+        this.router.getRouteEvents().stop();
+        this.router.getLog().stop();
+        this.router.getMetrics().unregister();
         try {
-            this.socket.close();
-        } catch (NullPointerException e){
+            this.advertisementSender.stop();
+            this.eventLoop.stop();
+            this.eventLoopThread.join();
+        } catch (NullPointerException | InterruptedException e){
 
         }
-        this.routeUpdateListener.stopListener();
     }
 
     /**
@@ -409,10 +535,6 @@ public class RIPProtocol
         // scanner to read commands from the user
         Scanner scanner = new Scanner(System.in);
 
-        // initializing update trigger thread
-        Thread updateTriggerThread = new Thread(ripProtocol);
-        updateTriggerThread.start();
-
         // keep reading commands from the user until he types quit
         while( !commandString.matches("quit") ){
             commandString = scanner.nextLine();
@@ -486,6 +608,35 @@ public class RIPProtocol
                             ripProtocol.getRouter().isShowDebug());
                     break;
 
+                case "log":
+                    if(commandArray.length == 2 && commandArray[1].equals("console")){
+                        ripProtocol.getRouter().getLog().setOutput(System.out);
+                        System.out.println("SUCCESS: Events are logged to the console");
+                        break;
+                    }
+                    if(commandArray.length == 3 && commandArray[1].equals("file")){
+                        try {
+                            ripProtocol.getRouter().getLog().setOutput(
+                                    new PrintStream(new FileOutputStream(commandArray[2], true)));
+                            System.out.println("SUCCESS: Events are logged to " + commandArray[2]);
+                        } catch (FileNotFoundException e){
+                            System.out.println("ERROR: Unable to open " + commandArray[2]);
+                        }
+                        break;
+                    }
+                    if(commandArray.length != 2 ){
+                        ripProtocol.printInvalidCommandUsageMessage("log");
+                        break;
+                    }
+                    try {
+                        RouterLog.Level level = RouterLog.Level.valueOf(commandArray[1].toUpperCase());
+                        ripProtocol.getRouter().getLog().setLevel(level);
+                        System.out.println("SUCCESS: Log level has been updated to " + level);
+                    } catch (IllegalArgumentException e){
+                        ripProtocol.printInvalidCommandUsageMessage("log");
+                    }
+                    break;
+
                 case "refresh":
                     if(commandArray.length != 2 ){
                         ripProtocol.printInvalidCommandUsageMessage("refresh");
@@ -504,6 +655,81 @@ public class RIPProtocol
                     System.out.println("SUCCESS: Updated updating_interval to " + ripProtocol.getRouter().getUpdateInterval());
                     break;
 
+                case "trigger":
+                    if(commandArray.length != 4 ){
+                        ripProtocol.printInvalidCommandUsageMessage("trigger");
+                        break;
+                    }
+                    int coalesceDelay, minHoldTime, maxHoldTime;
+                    try {
+                        coalesceDelay = Integer.parseInt(commandArray[1]);
+                        minHoldTime = Integer.parseInt(commandArray[2]);
+                        maxHoldTime = Integer.parseInt(commandArray[3]);
+                    }
+                    catch (NumberFormatException e){
+                        System.out.println("ERROR: Please type delays as integer values in milliseconds");
+                        break;
+                    }
+                    if(coalesceDelay < 0 || minHoldTime < 0 || maxHoldTime < minHoldTime){
+                        System.out.println("ERROR: Delays can't be negative and max-hold can't be " +
+                                "less than min-hold");
+                        break;
+                    }
+                    ripProtocol.updateScheduler.setDelays(coalesceDelay, minHoldTime, maxHoldTime);
+                    System.out.println("SUCCESS: Triggered updates will be sent " + coalesceDelay +
+                            " ms after a change and at most once every " + minHoldTime + "-" +
+                            maxHoldTime + " ms");
+                    break;
+
+                case "timers":
+                    if(commandArray.length != 3 ){
+                        ripProtocol.printInvalidCommandUsageMessage("timers");
+                        break;
+                    }
+                    long routeTimeout, garbageCollectionTime;
+                    try {
+                        routeTimeout = Long.parseLong(commandArray[1]);
+                        garbageCollectionTime = Long.parseLong(commandArray[2]);
+                    }
+                    catch (NumberFormatException e){
+                        System.out.println("ERROR: Please type times as integer values in milliseconds");
+                        break;
+                    }
+                    if(routeTimeout <= 0 || garbageCollectionTime <= 0){
+                        System.out.println("ERROR: Times must be positive");
+                        break;
+                    }
+                    ripProtocol.getRouter().setRouteTimers(routeTimeout, garbageCollectionTime);
+                    System.out.println("SUCCESS: Routes time out " + routeTimeout + " ms after their " +
+                            "next hop was last heard and un-reachable destinations are deleted after " +
+                            garbageCollectionTime + " ms");
+                    break;
+
+                case "mtu":
+                    if(commandArray.length != 2 ){
+                        ripProtocol.printInvalidCommandUsageMessage("mtu");
+                        break;
+                    }
+                    int maxMessageSize;
+                    try {
+                        maxMessageSize = Integer.parseInt(commandArray[1]);
+                    }
+                    catch (NumberFormatException e){
+                        System.out.println("ERROR: Please type message size as integer value in bytes");
+                        break;
+                    }
+                    if(maxMessageSize < RIPPacket.HEADER_SIZE + RIPPacket.ENTRY_SIZE
+                            || maxMessageSize > RIPPacket.MAX_MESSAGE_SIZE){
+                        System.out.println("ERROR: Message size must be between " +
+                                (RIPPacket.HEADER_SIZE + RIPPacket.ENTRY_SIZE) + " and " +
+                                (RIPPacket.MAX_MESSAGE_SIZE) + " bytes");
+                        break;
+                    }
+                    ripProtocol.getRouter().setMaxMessageSize(maxMessageSize);
+                    System.out.println("SUCCESS: Route updates will carry at most " +
+                            ripProtocol.getRouter().getMaxEntriesPerMessage() + " routes per datagram");
+                    break;
+
                 case "list":
                     if(commandArray.length != 1 ){
                         ripProtocol.printInvalidCommandUsageMessage("list");
@@ -589,6 +815,130 @@ public class RIPProtocol
                     ripProtocol.sendPacket(commandArray[1]);
                     break;
 
+                case "lookup":
+                    if(commandArray.length != 2 && commandArray.length != 5){
+                        ripProtocol.printInvalidCommandUsageMessage("lookup");
+                        break;
+                    }
+                    try {
+                        int address = IPv4.toInt(commandArray[1]);
+                        ForwardingTable.Entry route = ripProtocol.getRouter().lookup(address);
+                        if(route == null){
+                            System.out.println("No route to " + commandArray[1]);
+                        }else{
+                            System.out.println(commandArray[1] + " -> " + route);
+                        }
+                        if(route != null && commandArray.length == 5){
+                            // next hop picked for a TCP flow among the equal cost next hops
+                            int nextHop = ripProtocol.getRouter().selectNextHop(
+                                    IPv4.toInt(commandArray[2]), address,
+                                    Integer.parseInt(commandArray[3]), Integer.parseInt(commandArray[4]), 6);
+                            System.out.println("Flow " + commandArray[2] + ":" + commandArray[3] + " -> " +
+                                    commandArray[1] + ":" + commandArray[4] + " goes via " + IPv4.toString(nextHop));
+                        }
+                    } catch (UnknownHostException e){
+                        System.out.println("ERROR: " + commandArray[1] + " or the source is not a valid IPv4 host");
+                    } catch (NumberFormatException e){
+                        System.out.println("ERROR: Please type the ports as integer values");
+                    }
+                    break;
+
+                case "dns":
+                    if(commandArray.length != 1 ){
+                        ripProtocol.printInvalidCommandUsageMessage("dns");
+                        break;
+                    }
+                    HostNameCache hostNames = ripProtocol.getRouter().getHostNameCache();
+                    System.out.println("Host name cache : " + hostNames.size() + " names, " +
+                            hostNames.getHits() + " hits, " + hostNames.getMisses() + " misses");
+                    break;
+
+                case "stats":
+                    if(commandArray.length != 1 ){
+                        ripProtocol.printInvalidCommandUsageMessage("stats");
+                        break;
+                    }
+                    ripProtocol.getRouter().getMetrics().print();
+                    break;
+
+                case "summary":
+                    if(commandArray.length != 2 ){
+                        ripProtocol.printInvalidCommandUsageMessage("summary");
+                        break;
+                    }
+                    if(commandArray[1].equals("off")){
+                        ripProtocol.getRouter().disableSummarization();
+                        System.out.println("SUCCESS: Every route will be advertised on its own");
+                        break;
+                    }
+                    int minimumLength;
+                    try {
+                        minimumLength = Integer.parseInt(commandArray[1]);
+                    }
+                    catch (NumberFormatException e){
+                        System.out.println("ERROR: Please type the minimum length as integer value or off");
+                        break;
+                    }
+                    if(minimumLength < 1 || minimumLength > 32){
+                        System.out.println("ERROR: Minimum length must be between 1 and 32");
+                        break;
+                    }
+                    ripProtocol.getRouter().setSummarization(minimumLength);
+                    System.out.println("SUCCESS: Contiguous routes will be advertised as supernets " +
+                            "no shorter than /" + minimumLength);
+                    break;
+
+                case "damping":
+                    if(commandArray.length == 1){
+                        RouteDamping damping = ripProtocol.getRouter().getDamping();
+                        if(damping == null){
+                            System.out.println("Flap damping is off");
+                        }else{
+                            System.out.println("Flap damping : half life " + damping.getHalfLife() +
+                                    " ms, suppress " + damping.getSuppressLimit() + ", reuse " +
+                                    damping.getReuseLimit() + ", max suppress " + damping.getMaxSuppressTime() +
+                                    " ms\n" + damping.size() + " routes have a history, " +
+                                    damping.getSuppressedCount() + " are suppressed");
+                        }
+                        break;
+                    }
+                    if(commandArray.length == 2 && commandArray[1].equals("off")){
+                        ripProtocol.getRouter().disableDamping();
+                        System.out.println("SUCCESS: Flapping routes are not damped any more");
+                        break;
+                    }
+                    if(commandArray.length == 2 && commandArray[1].equals("on")){
+                        ripProtocol.getRouter().setDamping(RouteDamping.DEFAULT_HALF_LIFE,
+                                RouteDamping.DEFAULT_SUPPRESS_LIMIT, RouteDamping.DEFAULT_REUSE_LIMIT,
+                                RouteDamping.DEFAULT_MAX_SUPPRESS_TIME);
+                        System.out.println("SUCCESS: Flapping routes will be damped");
+                        break;
+                    }
+                    if(commandArray.length != 5){
+                        ripProtocol.printInvalidCommandUsageMessage("damping");
+                        break;
+                    }
+                    long halfLife, maxSuppressTime;
+                    int suppressLimit, reuseLimit;
+                    try {
+                        halfLife = Long.parseLong(commandArray[1]);
+                        suppressLimit = Integer.parseInt(commandArray[2]);
+                        reuseLimit = Integer.parseInt(commandArray[3]);
+                        maxSuppressTime = Long.parseLong(commandArray[4]);
+                    }
+                    catch (NumberFormatException e){
+                        System.out.println("ERROR: Please type the times and limits as integer values");
+                        break;
+                    }
+                    if(halfLife <= 0 || maxSuppressTime <= 0 || reuseLimit <= 0 || suppressLimit <= reuseLimit){
+                        System.out.println("ERROR: Times must be positive and the suppress limit " +
+                                "must be above the reuse limit");
+                        break;
+                    }
+                    ripProtocol.getRouter().setDamping(halfLife, suppressLimit, reuseLimit, maxSuppressTime);
+                    System.out.println("SUCCESS: Flapping routes will be damped");
+                    break;
+
                 case "sendall":
                     if(commandArray.length !=  1){
                         ripProtocol.printInvalidCommandUsageMessage("sendall");
@@ -652,7 +1002,6 @@ public class RIPProtocol
 
                 case "quit":
                     ripProtocol.terminateRouter();
-                    //updateTriggerThread.interrupt();
                     break;
 
                 default:
@@ -662,8 +1011,6 @@ public class RIPProtocol
 
         }
 
-        // terminating trigger update thread
-        updateTriggerThread.interrupt();
         scanner.close();
     }
 
@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+
+/**
+ * This class checks that the receive path allocates nothing per datagram once
+ * it is warmed up. A neighbor's advertisement is sent over loopback again and
+ * again and served by RouteUpdateListener.receive() on this thread, which
+ * plays the event loop. Every advertisement after the first sets the costs
+ * the routes already have, so the router changes nothing and publishes no
+ * snapshot, which is the steady state of a network which has converged. The
+ * check runs twice: once merging on the event loop, and once through a
+ * started receive pipeline, where the datagram is copied by the event loop,
+ * decoded by a worker thread and merged by the apply thread. The bytes
+ * allocated by the event loop are read from its allocation counter around
+ * every receive, those of the worker and apply threads around all the
+ * measured datagrams
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class ReceiveAllocationCheck {
+
+    // number of destinations the router knows
+    public static final int SIZE = 10000;
+
+    // number of datagrams received before measuring, so the JIT has compiled the loop
+    public static final int WARMUP = 200000;
+
+    // number of datagrams measured by default
+    public static final int DATAGRAMS = 100000;
+
+
+    /**
+     * This class is the result of one run of the check
+     */
+    private static class Result {
+
+        // bytes allocated by the event loop, the workers and the apply thread
+        long eventLoopBytes;
+        long workerBytes;
+        long applyBytes;
+
+        // number of datagrams the event loop allocated for
+        int allocating;
+
+        // flag to show if the router published no snapshot
+        boolean unchanged;
+
+        /**
+         * This method prints the result
+         * @param name      name of the run
+         * @param datagrams number of measured datagrams
+         * @param router    router of the run
+         * @return true if nothing was allocated and the table is unchanged
+         */
+        boolean print(String name, int datagrams, MyRouter router){
+            System.out.println(name);
+            System.out.println("Datagrams received      : " + datagrams);
+            System.out.println("Decode failures         : " + router.getMetrics().getDecodeFailures());
+            System.out.println("Receive drops           : " + router.getMetrics().getReceiveDrops());
+            System.out.println("Routing table unchanged : " + this.unchanged);
+            System.out.println("Datagrams allocating    : " + this.allocating);
+            System.out.printf("Event loop bytes/dgram  : %.3f\n", (double) this.eventLoopBytes / datagrams);
+            System.out.printf("Worker bytes/dgram      : %.3f\n", (double) this.workerBytes / datagrams);
+            System.out.printf("Apply bytes/dgram       : %.3f\n", (double) this.applyBytes / datagrams);
+            return this.unchanged && this.eventLoopBytes == 0 && this.workerBytes == 0
+                    && this.applyBytes == 0 && router.getMetrics().getDecodeFailures() == 0
+                    && router.getMetrics().getReceiveDrops() == 0;
+        }
+    }
+
+
+    /**
+     * This method sends a datagram and serves it, measuring the bytes allocated by receive()
+     * @param sender    channel sending the datagram
+     * @param receiver  channel the listener reads
+     * @param target    address of the receiver
+     * @param datagram  datagram to be sent
+     * @param listener  listener serving the datagram
+     * @param threads   thread bean reading allocated bytes
+     * @return bytes allocated by receive()
+     * @throws IOException if the datagram can't be sent or read
+     */
+    private static long receiveOne(DatagramChannel sender, DatagramChannel receiver,
+                                   InetSocketAddress target, ByteBuffer datagram,
+                                   RouteUpdateListener listener,
+                                   com.sun.management.ThreadMXBean threads) throws IOException {
+        long thread = Thread.currentThread().getId();
+        datagram.rewind();
+        sender.send(datagram, target);
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        int received;
+        do {
+            // the datagram may not have reached the receive buffer yet
+            received = listener.receive(receiver, 1);
+        } while (received == 0);
+        return threads.getThreadAllocatedBytes(thread) - allocated;
+    }
+
+
+    /**
+     * This method waits until the pipeline has merged a number of updates
+     * @param ingress   ingress queue of the pipeline
+     * @param updates   number of updates sent so far
+     */
+    private static void awaitMerged(IngressQueue ingress, long updates){
+        // entries stay reserved until the apply thread has merged them
+        while(ingress.getDelivered() < updates || ingress.size() > 0){
+            Thread.yield();
+        }
+    }
+
+
+    /**
+     * This method returns the bytes allocated by the threads of a pipeline so far
+     * @param threads   thread bean reading allocated bytes
+     * @param pipeline  started pipeline
+     * @param apply     true for the apply thread, false for the workers
+     * @return
+     */
+    private static long pipelineBytes(com.sun.management.ThreadMXBean threads,
+                                      ReceivePipeline pipeline, boolean apply){
+        if(apply){
+            return threads.getThreadAllocatedBytes(pipeline.getApplyThread().getId());
+        }
+        long bytes = 0;
+        for(int i = 0; i < pipeline.getWorkerCount(); i++){
+            bytes += threads.getThreadAllocatedBytes(pipeline.getWorkerThread(i).getId());
+        }
+        return bytes;
+    }
+
+
+    /**
+     * This method serves the datagrams of a router which has learned them already
+     * @param datagrams number of datagrams to measure
+     * @param pipeline  true to serve them through a receive pipeline
+     * @param threads   thread bean reading allocated bytes
+     * @return true if the run passed
+     * @throws IOException if the loopback channels can't be opened
+     */
+    private static boolean run(int datagrams, boolean pipeline,
+                               com.sun.management.ThreadMXBean threads) throws IOException {
+        Random random = new Random(1);
+        MyRouter router = RouterBenchmark.buildRouter(SIZE, 1, random);
+        RouteUpdateListener listener = new RouteUpdateListener(router);
+        ReceivePipeline receivePipeline = null;
+        if(pipeline){
+            receivePipeline = new ReceivePipeline(router, 1, IngressQueue.DEFAULT_CAPACITY);
+            receivePipeline.start();
+            listener.setPipeline(receivePipeline);
+        }
+
+        // the advertisement the router has already learned, so serving it changes nothing
+        RIPPacket update = new RIPPacket(RouterBenchmark.FIRST_NEIGHBOR, RIPPacket.MAX_ENTRIES);
+        for(int e = 0; e < RIPPacket.MAX_ENTRIES; e++){
+            int destination = RouterBenchmark.FIRST_DESTINATION + e;
+            update.addEntry(destination, IPv4.toMask(32), RouterBenchmark.FIRST_NEIGHBOR,
+                    router.getSnapshot().getCost(destination, RouterBenchmark.FIRST_NEIGHBOR));
+        }
+        byte[] bytes = update.toByteArray();
+        ByteBuffer datagram = ByteBuffer.allocateDirect(bytes.length);
+        datagram.put(bytes);
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (DatagramChannel receiver = DatagramChannel.open();
+             DatagramChannel sender = DatagramChannel.open()) {
+            receiver.bind(new InetSocketAddress(loopback, 0));
+            receiver.configureBlocking(false);
+            sender.bind(new InetSocketAddress(loopback, 0));
+            InetSocketAddress target = (InetSocketAddress) receiver.getLocalAddress();
+
+            long sent = 0;
+            for(int i = 0; i < WARMUP; i++){
+                receiveOne(sender, receiver, target, datagram, listener, threads);
+                if(pipeline){
+                    awaitMerged(receivePipeline.getIngress(), ++sent);
+                }
+            }
+            DistanceVectorTable snapshot = router.getSnapshot();
+            Result result = new Result();
+            long workerBytes = 0;
+            long applyBytes = 0;
+            if(pipeline){
+                workerBytes = pipelineBytes(threads, receivePipeline, false);
+                applyBytes = pipelineBytes(threads, receivePipeline, true);
+            }
+            for(int i = 0; i < datagrams; i++){
+                long allocated = receiveOne(sender, receiver, target, datagram, listener, threads);
+                result.eventLoopBytes += allocated;
+                if(allocated != 0){
+                    result.allocating++;
+                }
+                if(pipeline){
+                    awaitMerged(receivePipeline.getIngress(), ++sent);
+                }
+            }
+            if(pipeline){
+                result.workerBytes = pipelineBytes(threads, receivePipeline, false) - workerBytes;
+                result.applyBytes = pipelineBytes(threads, receivePipeline, true) - applyBytes;
+                receivePipeline.stop();
+            }
+            result.unchanged = router.getSnapshot() == snapshot;
+            return result.print(pipeline ? "Through the receive pipeline" : "On the event loop",
+                    datagrams, router);
+        }
+    }
+
+
+    /**
+     * This is the main method which runs the check and prints PASS or FAIL,
+     * it exits with status 1 on failure
+     * @param args number of datagrams to measure, optional
+     * @throws IOException if the loopback channels can't be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int datagrams = DATAGRAMS;
+        if(args.length > 0){
+            try {
+                datagrams = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e){
+                System.out.println("Correct Usage : \njava ReceiveAllocationCheck [datagrams]");
+                return;
+            }
+        }
+        com.sun.management.ThreadMXBean threads;
+        try {
+            threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        } catch (ClassCastException e){
+            System.out.println("SKIP: This JVM can't count allocated bytes");
+            return;
+        }
+        if(!threads.isThreadAllocatedMemorySupported()){
+            System.out.println("SKIP: This JVM can't count allocated bytes");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        boolean passed = run(datagrams, false, threads);
+        System.out.println();
+        passed &= run(datagrams, true, threads);
+        if(passed){
+            System.out.println("PASS");
+        }else{
+            System.out.println("FAIL");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class takes received datagrams off the event loop. Datagrams are
+ * decoded by a number of worker threads into the mailboxes of an ingress
+ * queue, where a newer update from a neighbor replaces the pending routes of
+ * an older one. One apply thread merges the mailboxes into the router in
+ * batches, so the snapshot published after a merge is paid once per batch
+ * instead of once per datagram, and a burst of updates from one neighbor is
+ * merged once. The updates of a batch are merged under the router lock, and
+ * the costs they set are applied to the table in parallel, so the merges of
+ * different neighbors' updates use several cores too. Every neighbor is
+ * pinned to one worker, which keeps its updates in the order they were received. Nothing is allocated per datagram: buffers
+ * come from fixed pools, and a datagram which finds the pool of its worker
+ * empty or the ingress queue full is dropped, like the kernel drops it when
+ * the socket buffer is full, and idle threads park instead of waiting on a
+ * blocking queue
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class ReceivePipeline {
+
+    // number of datagrams a worker holds, waiting to be decoded
+    public static final int DATAGRAMS_PER_WORKER = 16;
+
+    // maximum number of neighbors whose updates are merged under one lock
+    public static final int MAX_BATCH = 256;
+
+    // bytes in front of a datagram in a worker's buffer, holding its source address
+    private static final int SOURCE_SIZE = 4;
+
+    // router the updates are merged into
+    private MyRouter router;
+
+    // decode workers, a neighbor always goes to the same one
+    private Worker[] workers;
+
+    // decoded updates waiting to be merged
+    private IngressQueue ingress;
+
+    // thread merging the updates
+    private Thread applier;
+
+    // flag to stop the threads
+    private volatile boolean running;
+
+
+    /**
+     * This constructor allocates the buffers and messages of the pipeline,
+     * the threads are not started yet
+     * @param router        router the updates are merged into
+     * @param workerCount   number of decode workers
+     * @param capacity      number of route entries and headers the ingress queue holds
+     */
+    public ReceivePipeline(MyRouter router, int workerCount, int capacity) {
+        this.router = router;
+        this.workers = new Worker[Math.max(1, workerCount)];
+        for(int i = 0; i < this.workers.length; i++){
+            this.workers[i] = new Worker();
+        }
+        this.ingress = new IngressQueue(capacity, router.getMetrics());
+    }
+
+
+    /**
+     * This method starts the worker and apply threads
+     */
+    public void start(){
+        this.running = true;
+        for(int i = 0; i < this.workers.length; i++){
+            Thread thread = new Thread(this.workers[i], "receive-worker-" + i);
+            thread.setDaemon(true);
+            this.workers[i].thread = thread;
+            thread.start();
+        }
+        this.applier = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                applyUpdates();
+            }
+        }, "receive-apply");
+        this.applier.setDaemon(true);
+        this.applier.start();
+    }
+
+
+    /**
+     * This method stops the threads, datagrams still in the pipeline are dropped
+     */
+    public void stop(){
+        this.running = false;
+        for(Worker worker: this.workers){
+            if(worker.thread != null){
+                worker.thread.interrupt();
+            }
+        }
+        if(this.applier != null){
+            this.applier.interrupt();
+        }
+    }
+
+
+    /**
+     * This method returns number of decode workers
+     * @return
+     */
+    public int getWorkerCount(){
+        return this.workers.length;
+    }
+
+
+    /**
+     * This method returns the thread of a decode worker
+     * @param i number of the worker
+     * @return thread or null if the pipeline was not started
+     */
+    public Thread getWorkerThread(int i){
+        return this.workers[i].thread;
+    }
+
+
+    /**
+     * This method returns the thread merging the updates
+     * @return thread or null if the pipeline was not started
+     */
+    public Thread getApplyThread(){
+        return this.applier;
+    }
+
+
+    /**
+     * This method returns the queue of the decoded updates waiting to be merged
+     * @return
+     */
+    public IngressQueue getIngress(){
+        return this.ingress;
+    }
+
+
+    /**
+     * This method copies a received datagram into the pipeline without waiting.
+     * The datagram buffer can be reused as soon as this method returns
+     * @param datagram  received datagram, between position and limit
+     * @param source    address the datagram was received from, it picks the worker
+     *                  and the mailbox of the update
+     * @return true if the datagram was taken, false if it was dropped
+     */
+    public boolean submit(ByteBuffer datagram, int source){
+        int mixed = source * 0x9E3779B9;
+        Worker worker = this.workers[(mixed >>> 1) % this.workers.length];
+        ByteBuffer buffer = worker.buffers.poll();
+        if(buffer == null){
+            return false;
+        }
+        if(datagram.remaining() > buffer.capacity() - SOURCE_SIZE){
+            worker.buffers.release(buffer);
+            return false;
+        }
+        buffer.putInt(source);
+        buffer.put(datagram);
+        buffer.flip();
+
+        // never full, it holds as many datagrams as the worker has buffers
+        worker.queue.offer(buffer);
+        if(worker.sleeping){
+            LockSupport.unpark(worker.thread);
+        }
+        return true;
+    }
+
+
+    /**
+     * This method merges the pending updates into the router, from as many
+     * neighbors as have some at once, until the pipeline is stopped
+     */
+    private void applyUpdates(){
+        try {
+            while (this.running) {
+                int count = this.ingress.take(MAX_BATCH);
+                try {
+                    this.router.updateDistanceVectors(this.ingress.getTaken(), count);
+                } catch (RuntimeException e) {
+                    // publishing failed, none of the batch is known to be merged
+                    for(int i = 0; i < count; i++){
+                        this.router.getMetrics().receiveDropped();
+                    }
+                    this.router.getLog().log(RouterLog.Event.BATCH_DROPPED, e.toString());
+                }
+                this.ingress.release();
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+
+    /**
+     * This class decodes the datagrams of the neighbors pinned to it
+     */
+    private class Worker implements Runnable {
+
+        // buffers for the datagrams of this worker
+        final BufferPool buffers;
+
+        // datagrams waiting to be decoded
+        final ArrayBlockingQueue<ByteBuffer> queue;
+
+        // message every datagram is decoded into
+        final RIPPacket update;
+
+        // thread of the worker and flag to show if it is parked waiting for a datagram
+        volatile Thread thread;
+        volatile boolean sleeping;
+
+        Worker() {
+            this.buffers = new BufferPool(DATAGRAMS_PER_WORKER,
+                    SOURCE_SIZE + RouteUpdateListener.MAX_DATAGRAM_SIZE);
+            this.queue = new ArrayBlockingQueue<>(DATAGRAMS_PER_WORKER);
+            this.update = new RIPPacket(0, RIPPacket.MAX_ENTRIES);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                ByteBuffer buffer = this.queue.poll();
+                if (buffer == null) {
+                    // parking instead of a blocking take, whose wait allocates;
+                    // a datagram queued meanwhile is seen or unparks the thread
+                    this.sleeping = true;
+                    if (this.queue.isEmpty() && running) {
+                        LockSupport.park(this);
+                    }
+                    this.sleeping = false;
+                    continue;
+                }
+                int source = buffer.getInt();
+                boolean valid = RIPPacket.decode(buffer, this.update);
+                this.buffers.release(buffer);
+                if (!valid) {
+                    router.getMetrics().decodeFailed();
+                } else if (!ingress.offer(this.update, source)) {
+                    router.getMetrics().receiveDropped();
+                }
+            }
+        }
+    }
+}
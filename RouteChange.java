@@ -0,0 +1,227 @@
+/**
+ * This class describes a change of the best route to a destination, i.e. the
+ * route which is put into the forwarding table. A change of any other path to
+ * the destination is not a route change
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class RouteChange {
+
+    /**
+     * Kinds of the changes
+     */
+    public enum Type {
+        // destination became reachable, either new or un-reachable before
+        ADDED,
+        // best route goes through another next hop, its cost may have changed too
+        NEXT_HOP_CHANGED,
+        // best route goes through the same next hop at another cost
+        COST_CHANGED,
+        // destination became un-reachable
+        WITHDRAWN
+    }
+
+    // kind of the change
+    private final Type type;
+
+    // destination address and prefix length
+    private final int destination;
+    private final int prefixLength;
+
+    // next hop and cost before the change, INFINITY if the destination was un-reachable
+    private final int oldNextHop;
+    private final int oldCost;
+
+    // next hop and cost after the change, INFINITY if the destination is un-reachable
+    private final int newNextHop;
+    private final int newCost;
+
+    // table version in which the change was made
+    private final int version;
+
+    // time of the change in milliseconds of the router's clock
+    private final long time;
+
+    // position of the change in the event stream, 0 before it is published
+    private long sequence;
+
+
+    /**
+     * This constructor initializes a route change
+     * @param type          kind of the change
+     * @param destination   destination address
+     * @param prefixLength  length of the destination's prefix
+     * @param oldNextHop    next hop before the change
+     * @param oldCost       cost before the change
+     * @param newNextHop    next hop after the change
+     * @param newCost       cost after the change
+     * @param version       table version in which the change was made
+     * @param time          time of the change in milliseconds
+     */
+    public RouteChange(Type type, int destination, int prefixLength, int oldNextHop, int oldCost,
+                       int newNextHop, int newCost, int version, long time) {
+        this.type = type;
+        this.destination = destination;
+        this.prefixLength = prefixLength;
+        this.oldNextHop = oldNextHop;
+        this.oldCost = oldCost;
+        this.newNextHop = newNextHop;
+        this.newCost = newCost;
+        this.version = version;
+        this.time = time;
+    }
+
+
+    /**
+     * This method returns the change, if any, between the best routes of a
+     * destination before and after
+     * @param destination   destination address
+     * @param prefixLength  length of the destination's prefix
+     * @param oldNextHop    next hop before
+     * @param oldCost       cost before, INFINITY if the destination was un-reachable or unknown
+     * @param newNextHop    next hop after
+     * @param newCost       cost after, INFINITY if the destination is un-reachable or deleted
+     * @param version       table version in which the change was made
+     * @param time          time of the change in milliseconds
+     * @return the change, null if the best route is the same
+     */
+    public static RouteChange of(int destination, int prefixLength, int oldNextHop, int oldCost,
+                                 int newNextHop, int newCost, int version, long time){
+        Type type;
+        if(oldCost == DistanceVectorTable.INFINITY && newCost == DistanceVectorTable.INFINITY){
+            return null;
+        }else if(oldCost == DistanceVectorTable.INFINITY){
+            type = Type.ADDED;
+        }else if(newCost == DistanceVectorTable.INFINITY){
+            type = Type.WITHDRAWN;
+        }else if(oldNextHop != newNextHop){
+            type = Type.NEXT_HOP_CHANGED;
+        }else if(oldCost != newCost){
+            type = Type.COST_CHANGED;
+        }else{
+            return null;
+        }
+        return new RouteChange(type, destination, prefixLength, oldNextHop, oldCost,
+                newNextHop, newCost, version, time);
+    }
+
+
+    /**
+     * This method returns the kind of the change
+     * @return
+     */
+    public Type getType() {
+        return type;
+    }
+
+
+    /**
+     * This method returns the destination address
+     * @return
+     */
+    public int getDestination() {
+        return destination;
+    }
+
+
+    /**
+     * This method returns the length of the destination's prefix
+     * @return
+     */
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+
+    /**
+     * This method returns the next hop before the change
+     * @return
+     */
+    public int getOldNextHop() {
+        return oldNextHop;
+    }
+
+
+    /**
+     * This method returns the cost before the change
+     * @return
+     */
+    public int getOldCost() {
+        return oldCost;
+    }
+
+
+    /**
+     * This method returns the next hop after the change
+     * @return
+     */
+    public int getNewNextHop() {
+        return newNextHop;
+    }
+
+
+    /**
+     * This method returns the cost after the change
+     * @return
+     */
+    public int getNewCost() {
+        return newCost;
+    }
+
+
+    /**
+     * This method returns the table version in which the change was made
+     * @return
+     */
+    public int getVersion() {
+        return version;
+    }
+
+
+    /**
+     * This method returns the time of the change in milliseconds of the router's clock
+     * @return
+     */
+    public long getTime() {
+        return time;
+    }
+
+
+    /**
+     * This method returns the position of the change in the event stream it was
+     * published on, the first change is 1
+     * @return
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+
+    /**
+     * This method sets the position of the change in the event stream, it is set
+     * once by the stream before the change is handed to any subscriber
+     * @param sequence position of the change
+     */
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+
+    @Override
+    public String toString() {
+        String destinationString = IPv4.toString(this.destination) + "/" + this.prefixLength;
+        switch (this.type){
+            case ADDED:
+                return "ADDED " + destinationString + " via " + IPv4.toString(this.newNextHop) +
+                        " cost " + this.newCost;
+            case WITHDRAWN:
+                return "WITHDRAWN " + destinationString + " was via " + IPv4.toString(this.oldNextHop) +
+                        " cost " + this.oldCost;
+            case NEXT_HOP_CHANGED:
+                return "NEXT_HOP_CHANGED " + destinationString + " via " + IPv4.toString(this.oldNextHop) +
+                        " -> " + IPv4.toString(this.newNextHop) + " cost " + this.oldCost + " -> " + this.newCost;
+            default:
+                return "COST_CHANGED " + destinationString + " via " + IPv4.toString(this.newNextHop) +
+                        " cost " + this.oldCost + " -> " + this.newCost;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+import java.util.Arrays;
+
+/**
+ * This class damps flapping routes as described in RFC 2439. A route, i.e. a
+ * destination prefix through one next hop, gets a penalty every time it is withdrawn
+ * or gets costlier. Routes getting cheaper are not penalized, that is how RIP
+ * converges. The penalty decays exponentially with the half life. When it goes
+ * above the suppress limit the route is suppressed: it is kept un-reachable in
+ * the distance vector, while the costs advertised for it meanwhile are
+ * remembered, until the penalty has decayed below the reuse limit. The penalty
+ * is capped so that no route is suppressed longer than the maximum suppress time.
+ * The penalty is only computed from the time it was last updated when the
+ * route changes or its timer expires, nothing is done for routes without a
+ * history. The history of a route is forgotten once its penalty has decayed
+ * below half the reuse limit. It is only used while holding the router lock
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class RouteDamping {
+
+    /**
+     * This interface is called for every suppressed route which can be used again
+     */
+    public interface Handler {
+
+        /**
+         * This method puts a route back into the distance vector
+         * @param destination   destination address
+         * @param length        length of the destination prefix
+         * @param nextHop       next hop address
+         * @param cost          latest cost advertised for the route, INFINITY if withdrawn
+         */
+        void reused(int destination, int length, int nextHop, int cost);
+    }
+
+    // default half life, suppress limit, reuse limit and maximum suppress time (RFC 2439)
+    public static final long DEFAULT_HALF_LIFE = 15 * 60 * 1000;
+    public static final int DEFAULT_SUPPRESS_LIMIT = 2000;
+    public static final int DEFAULT_REUSE_LIMIT = 750;
+    public static final long DEFAULT_MAX_SUPPRESS_TIME = 60 * 60 * 1000;
+
+    // penalty of a withdrawal and of a cost increase
+    public static final int WITHDRAWAL_PENALTY = 1000;
+    public static final int CHANGE_PENALTY = 500;
+
+    // index of no history, ends the lists
+    public static final int NONE = -1;
+
+    // kinds of the timers of the histories
+    private static final int REUSE_TIMER = 0;
+    private static final int FORGET_TIMER = 1;
+
+    // time in milliseconds in which a penalty decays to half
+    private long halfLife;
+
+    // penalty above which a route is suppressed and below which it is used again
+    private int suppressLimit;
+    private int reuseLimit;
+
+    // time in milliseconds for which a route can be suppressed at most
+    private long maxSuppressTime;
+
+    // highest penalty, it decays to the reuse limit in the maximum suppress time
+    private double ceiling;
+
+    // destination address -> first history of the destination
+    private IntIndexMap destinationIndex;
+
+    // history -> destination, prefix length and next hop of the route
+    private int[] destinations;
+    private int[] lengths;
+    private int[] nextHops;
+
+    // history -> next history of the same destination, or next free history
+    private int[] next;
+
+    // history -> penalty at the time it was last updated
+    private double[] penalties;
+
+    // history -> time in milliseconds the penalty was last updated
+    private long[] updated;
+
+    // history -> whether the route is suppressed
+    private boolean[] suppressed;
+
+    // history -> latest cost advertised for a suppressed route
+    private int[] hiddenCosts;
+
+    // reuse and forget timers of the histories
+    private TimingWheel timers;
+
+    // first free history, NONE if all histories in the arrays are used
+    private int free;
+
+    // number of histories ever taken from the arrays
+    private int used;
+
+    // number of histories and of suppressed routes
+    private int size;
+    private int suppressedCount;
+
+
+    /**
+     * This constructor initializes the damping of a router without any history
+     * @param halfLife          time in milliseconds in which a penalty decays to half
+     * @param suppressLimit     penalty above which a route is suppressed
+     * @param reuseLimit        penalty below which a suppressed route is used again
+     * @param maxSuppressTime   time in milliseconds for which a route can be suppressed at most
+     * @param now               current time in milliseconds
+     */
+    public RouteDamping(long halfLife, int suppressLimit, int reuseLimit, long maxSuppressTime,
+                        long now) {
+        this.halfLife = halfLife;
+        this.suppressLimit = suppressLimit;
+        this.reuseLimit = reuseLimit;
+        this.maxSuppressTime = maxSuppressTime;
+        this.ceiling = reuseLimit * Math.pow(2, (double) maxSuppressTime / halfLife);
+        this.destinationIndex = new IntIndexMap(16);
+        this.destinations = new int[16];
+        this.lengths = new int[16];
+        this.nextHops = new int[16];
+        this.next = new int[16];
+        this.penalties = new double[16];
+        this.updated = new long[16];
+        this.suppressed = new boolean[16];
+        this.hiddenCosts = new int[16];
+        this.timers = new TimingWheel(MyRouter.TIMER_TICK, MyRouter.TIMER_BUCKETS, now);
+        this.free = NONE;
+        this.used = 0;
+        this.size = 0;
+        this.suppressedCount = 0;
+    }
+
+
+    /**
+     * This method returns the time in milliseconds in which a penalty decays to half
+     * @return
+     */
+    public long getHalfLife() {
+        return halfLife;
+    }
+
+
+    /**
+     * This method returns the penalty above which a route is suppressed
+     * @return
+     */
+    public int getSuppressLimit() {
+        return suppressLimit;
+    }
+
+
+    /**
+     * This method returns the penalty below which a suppressed route is used again
+     * @return
+     */
+    public int getReuseLimit() {
+        return reuseLimit;
+    }
+
+
+    /**
+     * This method returns the time in milliseconds for which a route can be suppressed at most
+     * @return
+     */
+    public long getMaxSuppressTime() {
+        return maxSuppressTime;
+    }
+
+
+    /**
+     * This method returns the number of routes which have a history
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * This method returns the number of suppressed routes
+     * @return
+     */
+    public int getSuppressedCount() {
+        return suppressedCount;
+    }
+
+
+    /**
+     * This method filters a new cost of a route. The route is penalized if it
+     * is withdrawn or gets costlier, and is suppressed or stays suppressed if
+     * its penalty is high
+     * @param destination   destination address
+     * @param length        length of the destination prefix
+     * @param nextHop       next hop address
+     * @param oldCost       cost of the route in the distance vector, NO_PATH if there is none
+     * @param cost          new cost of the route, INFINITY if it is withdrawn
+     * @param now           current time in milliseconds
+     * @return cost to be put into the distance vector, INFINITY if the route is suppressed
+     */
+    public int filter(int destination, int length, int nextHop, int oldCost, int cost, long now){
+        int history = this.find(destination, length, nextHop);
+        if(history == NONE){
+            if(penaltyOf(oldCost, cost) == 0){
+                // routes without a history cost nothing
+                return cost;
+            }
+            history = this.add(destination, length, nextHop);
+            this.updated[history] = now;
+        }
+        int previous = this.suppressed[history] ? this.hiddenCosts[history] : oldCost;
+        double penalty = this.decay(history, now) + penaltyOf(previous, cost);
+        this.penalties[history] = Math.min(penalty, this.ceiling);
+        this.updated[history] = now;
+        if(!this.suppressed[history] && this.penalties[history] > this.suppressLimit){
+            this.suppressed[history] = true;
+            this.suppressedCount++;
+        }
+        if(this.suppressed[history]){
+            this.hiddenCosts[history] = cost;
+        }
+        this.scheduleTimer(history);
+        return this.suppressed[history] ? DistanceVectorTable.INFINITY : cost;
+    }
+
+
+    /**
+     * This method takes a withdrawal of a route which is no flap, e.g. because
+     * the route is covered by a summary of the next hop now. The route is not
+     * penalized, and if it is suppressed it stays withdrawn when it is used again
+     * @param destination   destination address
+     * @param length        length of the destination prefix
+     * @param nextHop       next hop address
+     */
+    public void withdrawn(int destination, int length, int nextHop){
+        int history = this.find(destination, length, nextHop);
+        if(history != NONE && this.suppressed[history]){
+            this.hiddenCosts[history] = DistanceVectorTable.INFINITY;
+        }
+    }
+
+
+    /**
+     * This method expires the timers which are due. Suppressed routes whose
+     * penalty has decayed below the reuse limit are handed to the handler
+     * and histories which have decayed enough are forgotten
+     * @param now       current time in milliseconds
+     * @param handler   handler of the routes which are used again
+     */
+    public void advance(final long now, final Handler handler){
+        this.timers.advance(now, new TimingWheel.Handler() {
+            @Override
+            public void expired(int history, int kind) {
+                if(decay(history, now) >= (kind == REUSE_TIMER ? reuseLimit : reuseLimit / 2.0)){
+                    // the timer is rounded to ticks
+                    scheduleTimer(history);
+                    return;
+                }
+                if(kind == REUSE_TIMER){
+                    suppressed[history] = false;
+                    suppressedCount--;
+                    handler.reused(destinations[history], lengths[history], nextHops[history],
+                            hiddenCosts[history]);
+                    scheduleTimer(history);
+                }else{
+                    remove(history);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * This method forgets the history of every route through a next hop, e.g.
+     * when the link to it is removed. Suppressed routes are not used again
+     * @param nextHop next hop address
+     */
+    public void forgetNextHop(int nextHop){
+        for(int history = 0; history < this.used; history++){
+            // free histories are not found
+            if(this.nextHops[history] == nextHop
+                    && this.find(this.destinations[history], this.lengths[history], nextHop) == history){
+                this.remove(history);
+            }
+        }
+    }
+
+
+    /**
+     * This method hands every suppressed route to the handler and forgets all
+     * the histories, when damping is switched off
+     * @param handler handler of the routes which are used again
+     */
+    public void releaseAll(Handler handler){
+        for(int history = 0; history < this.used; history++){
+            if(this.suppressed[history]){
+                handler.reused(this.destinations[history], this.lengths[history],
+                        this.nextHops[history], this.hiddenCosts[history]);
+            }
+        }
+    }
+
+
+    /**
+     * This method returns the penalty of a change of a route's cost
+     * @param oldCost   cost before, NO_PATH or INFINITY if the route was not reachable
+     * @param cost      cost after, INFINITY if the route is withdrawn
+     * @return penalty, 0 if the change is no flap
+     */
+    private static int penaltyOf(int oldCost, int cost){
+        if(oldCost == DistanceVectorTable.NO_PATH || oldCost == DistanceVectorTable.INFINITY){
+            return 0;
+        }
+        if(cost == DistanceVectorTable.INFINITY){
+            return WITHDRAWAL_PENALTY;
+        }
+        return cost > oldCost ? CHANGE_PENALTY : 0;
+    }
+
+
+    /**
+     * This method returns the penalty of a history decayed to a time
+     * @param history   index of the history
+     * @param now       current time in milliseconds
+     * @return penalty
+     */
+    private double decay(int history, long now){
+        long elapsed = Math.max(0, now - this.updated[history]);
+        return this.penalties[history] * Math.pow(0.5, (double) elapsed / this.halfLife);
+    }
+
+
+    /**
+     * This method starts the timer of a history. A suppressed route is looked at
+     * again when its penalty has decayed to the reuse limit, other histories when
+     * their penalty has decayed to half of it
+     * @param history index of the history
+     */
+    private void scheduleTimer(int history){
+        double limit = this.suppressed[history] ? this.reuseLimit : this.reuseLimit / 2.0;
+        double penalty = this.penalties[history];
+        long delay = penalty <= limit ? 0
+                : (long) Math.ceil(this.halfLife * Math.log(penalty / limit) / Math.log(2));
+        this.timers.schedule(history, this.suppressed[history] ? REUSE_TIMER : FORGET_TIMER,
+                this.updated[history] + delay);
+    }
+
+
+    /**
+     * This method finds the history of a route
+     * @param destination   destination address
+     * @param length        length of the destination prefix
+     * @param nextHop       next hop address
+     * @return index of the history, NONE if the route has none
+     */
+    private int find(int destination, int length, int nextHop){
+        if(this.size == 0){
+            return NONE;
+        }
+        int history = this.destinationIndex.get(destination);
+        while(history != NONE && (this.nextHops[history] != nextHop || this.lengths[history] != length)){
+            history = this.next[history];
+        }
+        return history;
+    }
+
+
+    /**
+     * This method adds an empty history for a route
+     * @param destination   destination address
+     * @param length        length of the destination prefix
+     * @param nextHop       next hop address
+     * @return index of the history
+     */
+    private int add(int destination, int length, int nextHop){
+        int history = this.free;
+        if(history != NONE){
+            this.free = this.next[history];
+        }else{
+            if(this.used == this.destinations.length){
+                int capacity = this.used * 2;
+                this.destinations = Arrays.copyOf(this.destinations, capacity);
+                this.lengths = Arrays.copyOf(this.lengths, capacity);
+                this.nextHops = Arrays.copyOf(this.nextHops, capacity);
+                this.next = Arrays.copyOf(this.next, capacity);
+                this.penalties = Arrays.copyOf(this.penalties, capacity);
+                this.updated = Arrays.copyOf(this.updated, capacity);
+                this.suppressed = Arrays.copyOf(this.suppressed, capacity);
+                this.hiddenCosts = Arrays.copyOf(this.hiddenCosts, capacity);
+            }
+            history = this.used++;
+        }
+        int first = this.destinationIndex.get(destination);
+        this.destinations[history] = destination;
+        this.lengths[history] = length;
+        this.nextHops[history] = nextHop;
+        this.next[history] = first;
+        this.penalties[history] = 0;
+        this.suppressed[history] = false;
+        this.destinationIndex.put(destination, history);
+        this.size++;
+        return history;
+    }
+
+
+    /**
+     * This method forgets a history and stops its timer
+     * @param history index of the history
+     */
+    private void remove(int history){
+        int destination = this.destinations[history];
+        int first = this.destinationIndex.get(destination);
+        if(first == history){
+            if(this.next[history] == NONE){
+                this.destinationIndex.remove(destination);
+            }else{
+                this.destinationIndex.put(destination, this.next[history]);
+            }
+        }else{
+            int previous = first;
+            while(this.next[previous] != history){
+                previous = this.next[previous];
+            }
+            this.next[previous] = this.next[history];
+        }
+        if(this.suppressed[history]){
+            this.suppressedCount--;
+        }
+        this.timers.cancel(history);
+        this.suppressed[history] = false;
+        this.next[history] = this.free;
+        this.free = history;
+        this.size--;
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class hands the route changes of a router to its subscribers. Every
+ * subscriber has a bounded queue of its own and a daemon thread which delivers
+ * the changes from it, so a slow subscriber, e.g. one printing to the console,
+ * neither blocks the router nor the other subscribers. Publishing never waits:
+ * when the queue of a subscriber is full the change is dropped for it. Every
+ * change gets the next sequence number of the stream, so a subscriber is told
+ * how many changes it missed exactly where they are missing: before the change
+ * following the gap, or once its queue is empty if no change followed
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class RouteEventStream {
+
+    /**
+     * This interface is implemented by the receivers of route changes
+     */
+    public interface Subscriber {
+
+        /**
+         * This method handles a route change, it is called by the subscriber's own thread
+         * @param change change of the best route to a destination
+         */
+        void routeChanged(RouteChange change);
+
+        /**
+         * This method is told that changes were dropped because the queue was full.
+         * It is called at the position of the gap, i.e. between the last change
+         * delivered before it and the first one after it
+         * @param count number of changes dropped since the last delivered one
+         */
+        void changesDropped(long count);
+    }
+
+    // default number of changes a subscriber's queue holds
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // number of changes a subscriber's queue holds
+    private int capacity;
+
+    // current subscriptions
+    private CopyOnWriteArrayList<Subscription> subscriptions;
+
+    // sequence number of the last change published
+    private long sequence;
+
+
+    /**
+     * This constructor initializes a stream without subscribers
+     * @param capacity number of changes a subscriber's queue holds
+     */
+    public RouteEventStream(int capacity) {
+        this.capacity = capacity;
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        this.sequence = 0;
+    }
+
+
+    /**
+     * This method registers a subscriber and starts its thread
+     * @param subscriber    receiver of the route changes
+     * @param name          name of the subscriber's thread
+     */
+    public void subscribe(Subscriber subscriber, String name){
+        Subscription subscription = new Subscription(subscriber, this.capacity);
+        synchronized (this){
+            // changes published before subscribing are not missed ones
+            subscription.delivered = this.sequence;
+            subscription.lastDropped = this.sequence;
+            this.subscriptions.add(subscription);
+        }
+        Thread thread = new Thread(subscription, "route-events-" + name);
+        thread.setDaemon(true);
+        subscription.thread = thread;
+        thread.start();
+    }
+
+
+    /**
+     * This method removes a subscriber and stops its thread, changes still in
+     * its queue are not delivered
+     * @param subscriber receiver of the route changes
+     */
+    public void unsubscribe(Subscriber subscriber){
+        for(Subscription subscription: this.subscriptions){
+            if(subscription.subscriber == subscriber){
+                this.subscriptions.remove(subscription);
+                subscription.thread.interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * This method removes every subscriber and stops their threads
+     */
+    public void stop(){
+        for(Subscription subscription: this.subscriptions){
+            this.unsubscribe(subscription.subscriber);
+        }
+    }
+
+
+    /**
+     * This method tells if anyone is subscribed, so the router only looks
+     * for route changes when they are wanted
+     * @return true if there is a subscriber
+     */
+    public boolean hasSubscribers(){
+        return !this.subscriptions.isEmpty();
+    }
+
+
+    /**
+     * This method hands a route change to every subscriber without waiting. Changes
+     * are published one at a time, so they reach every queue in sequence order
+     * @param change change of the best route to a destination
+     */
+    public synchronized void publish(RouteChange change){
+        change.setSequence(++this.sequence);
+        for(Subscription subscription: this.subscriptions){
+            if(!subscription.queue.offer(change)){
+                subscription.dropped.incrementAndGet();
+                subscription.lastDropped = this.sequence;
+            }
+        }
+    }
+
+
+    /**
+     * This method returns the number of changes dropped for all the subscribers so far
+     * @return
+     */
+    public long getDropped(){
+        long dropped = 0;
+        for(Subscription subscription: this.subscriptions){
+            dropped += subscription.dropped.get();
+        }
+        return dropped;
+    }
+
+
+    /**
+     * This class holds the queue of a subscriber and delivers the changes from it
+     */
+    private static class Subscription implements Runnable {
+
+        // receiver of the route changes
+        final Subscriber subscriber;
+
+        // changes waiting to be delivered
+        final ArrayBlockingQueue<RouteChange> queue;
+
+        // number of changes dropped so far
+        final AtomicLong dropped;
+
+        // sequence number of the last change dropped, 0 if none was
+        volatile long lastDropped;
+
+        // sequence number of the last change delivered or reported as dropped,
+        // only used by the subscriber's thread
+        long delivered;
+
+        // thread delivering the changes
+        volatile Thread thread;
+
+        Subscription(Subscriber subscriber, int capacity) {
+            this.subscriber = subscriber;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.dropped = new AtomicLong();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    RouteChange change = this.queue.poll();
+                    if (change == null) {
+                        // every change published before the last dropped one was offered
+                        // before it, so with the queue empty they are all dropped too
+                        long lastDropped = this.lastDropped;
+                        if (lastDropped > this.delivered) {
+                            this.reportDropped(lastDropped - this.delivered);
+                            this.delivered = lastDropped;
+                        }
+                        change = this.queue.take();
+                    }
+
+                    // the subscriber learns about the gap before the changes after it
+                    if (change.getSequence() > this.delivered + 1) {
+                        this.reportDropped(change.getSequence() - this.delivered - 1);
+                    }
+                    this.delivered = change.getSequence();
+                    try {
+                        this.subscriber.routeChanged(change);
+                    } catch (RuntimeException e) {
+                        System.out.println("(Route Events) Subscriber failed: " + e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // unsubscribed
+            }
+        }
+
+        /**
+         * This method tells the subscriber about a gap in the changes
+         * @param count number of changes dropped
+         */
+        private void reportDropped(long count) {
+            try {
+                this.subscriber.changesDropped(count);
+            } catch (RuntimeException e) {
+                System.out.println("(Route Events) Subscriber failed: " + e);
+            }
+        }
+    }
+}
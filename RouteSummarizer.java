@@ -0,0 +1,269 @@
+import java.util.Arrays;
+
+/**
+ * This class summarizes the routes of a distance vector before they are
+ * advertised. An aligned block of sibling prefixes of the same length, which
+ * all are in the table and reachable through the same next hop at the same
+ * cost, is advertised as one supernet covering them, e.g. 10.0.0.0/24 to
+ * 10.0.3.0/24 as 10.0.0.0/22. The supernet is a destination of its own in the
+ * distance vector, keyed by its address and length like any other prefix, and
+ * is advertised with the route of its block while the destinations of the
+ * block are covered and withdrawn. When a block breaks up its summary is
+ * withdrawn. Both withdrawals are tagged, so receivers don't count them as
+ * flaps. Summaries are never shorter than the minimum length, only cover
+ * prefixes which are all in the table and never hide a route the table has
+ * for the supernet itself, so nothing is claimed which the router can't reach.
+ * The summary states are kept in the distance vector and are updated
+ * incrementally: only the blocks of destinations whose routes changed since
+ * the last update are looked at again. It is only used while holding the router lock
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class RouteSummarizer {
+
+    // length of the shortest summary
+    private int minimumLength;
+
+    // table version up to which the summaries are up to date
+    private int version;
+
+    // slots whose block is still to be worked out in the running update
+    private int[] stack;
+
+    // number of slots on the stack
+    private int count;
+
+
+    /**
+     * This constructor initializes a summarizer
+     * @param minimumLength length of the shortest summary, 1 to 32
+     */
+    public RouteSummarizer(int minimumLength) {
+        this.minimumLength = minimumLength;
+        this.version = 0;
+    }
+
+
+    /**
+     * This method returns the length of the shortest summary
+     * @return
+     */
+    public int getMinimumLength() {
+        return minimumLength;
+    }
+
+
+    /**
+     * This method summarizes every destination of a table, e.g. when
+     * summarization is switched on or its minimum length changes
+     * @param table distance vector
+     */
+    public void summarizeAll(DistanceVectorTable table){
+        int[] slots = new int[table.size()];
+        for(int slot = 0; slot < slots.length; slot++){
+            slots[slot] = slot;
+        }
+        this.summarize(table, slots, slots.length);
+    }
+
+
+    /**
+     * This method updates the summaries of the destinations whose routes
+     * changed since the last update
+     * @param table distance vector
+     */
+    public void update(DistanceVectorTable table){
+        int count = 0;
+        int slot = table.lastChangedSlot();
+        while(slot != DistanceVectorTable.NONE && table.changeVersionAt(slot) > this.version){
+            count++;
+            slot = table.previousChangedSlot(slot);
+        }
+        int[] slots = new int[count];
+        slot = table.lastChangedSlot();
+        for(int i = 0; i < count; i++){
+            slots[i] = slot;
+            slot = table.previousChangedSlot(slot);
+        }
+        this.summarize(table, slots, count);
+    }
+
+
+    /**
+     * This method advertises every destination of a table on its own again,
+     * when summarization is switched off. The summaries are withdrawn
+     * @param table distance vector
+     */
+    public static void clear(DistanceVectorTable table){
+        for(int slot = 0; slot < table.size(); slot++){
+            int state = table.summaryLengthAt(slot);
+            if(state > 0){
+                table.setSummaryLength(slot, DistanceVectorTable.SUMMARY_WITHDRAWN);
+            }else if(state == DistanceVectorTable.COVERED){
+                table.setSummaryLength(slot, DistanceVectorTable.NOT_SUMMARIZED);
+            }
+        }
+    }
+
+
+    /**
+     * This method works out the block of every given destination. The other
+     * destinations of a block which broke up are looked at again as well
+     * @param table distance vector
+     * @param slots slots of the destinations, this array is reused as the stack
+     * @param count number of destinations
+     */
+    private void summarize(DistanceVectorTable table, int[] slots, int count){
+        // slots whose block has been worked out in this update
+        IntIndexMap done = new IntIndexMap(Math.max(16, count * 2));
+        this.stack = slots;
+        this.count = count;
+        while(this.count > 0){
+            int slot = this.stack[--this.count];
+            if(done.get(slot) != IntIndexMap.MISSING){
+                continue;
+            }
+            int state = table.summaryLengthAt(slot);
+            boolean reachable = table.bestCostAt(slot) != DistanceVectorTable.INFINITY;
+            if(state > 0 && reachable){
+                // a route of its own replaces the summary, its block is worked out again
+                table.setSummaryLength(slot, DistanceVectorTable.NOT_SUMMARIZED);
+                this.release(table, slot, state, slot, done);
+            }else if((state > 0 || state == DistanceVectorTable.SUMMARY_WITHDRAWN) && !reachable){
+                // only a summary, not a destination which can be summarized
+                continue;
+            }
+            int destination = table.destinationAt(slot);
+            int prefixLength = table.prefixLengthAt(slot);
+            int length = this.blockLength(table, slot);
+            int oldLength = this.summaryOf(table, slot);
+            if(oldLength != length && oldLength < prefixLength){
+                // the old summary is withdrawn. Its destinations outside the new block
+                // get their own blocks, their states are only set then, so a
+                // destination which stays covered is not withdrawn again
+                int summary = table.indexOf(destination, oldLength);
+                table.setSummaryLength(summary, DistanceVectorTable.SUMMARY_WITHDRAWN);
+                if(oldLength < length){
+                    this.release(table, summary, prefixLength, slot, done);
+                }
+            }
+
+            // setting the states of the new block, summaries its other
+            // destinations had before are withdrawn
+            int base = destination & IPv4.toMask(length);
+            int components = 1 << (prefixLength - length);
+            for(int i = 0; i < components; i++){
+                int other = table.indexOf(base + (i << (32 - prefixLength)), prefixLength);
+                int otherLength = this.summaryOf(table, other);
+                if(otherLength != length && otherLength < prefixLength){
+                    int summary = table.indexOf(table.destinationAt(other), otherLength);
+                    table.setSummaryLength(summary, DistanceVectorTable.SUMMARY_WITHDRAWN);
+                    if(otherLength < length){
+                        this.release(table, summary, prefixLength, slot, done);
+                    }
+                }
+                table.setSummaryLength(other, components == 1
+                        ? DistanceVectorTable.NOT_SUMMARIZED : DistanceVectorTable.COVERED);
+                done.put(other, 1);
+            }
+            if(components > 1){
+                table.setSummary(base, length, prefixLength);
+            }
+        }
+        this.stack = null;
+        this.version = table.getVersion();
+    }
+
+
+    /**
+     * This method pushes the destinations a summary was made of onto the stack,
+     * except those in the block of the destination being worked out, so their
+     * blocks are worked out again
+     * @param table             distance vector
+     * @param summary           slot of the summary
+     * @param componentLength   prefix length of the destinations it was made of
+     * @param slot              slot of the destination being worked out
+     * @param done              slots whose block has been worked out in this update
+     */
+    private void release(DistanceVectorTable table, int summary, int componentLength, int slot,
+                         IntIndexMap done){
+        int base = table.destinationAt(summary);
+        int components = 1 << (componentLength - table.prefixLengthAt(summary));
+        int mask = IPv4.toMask(this.blockLength(table, slot));
+        if(this.count + components > this.stack.length){
+            this.stack = Arrays.copyOf(this.stack, Math.max(this.stack.length * 2, this.count + components));
+        }
+        for(int i = 0; i < components; i++){
+            int component = base + (i << (32 - componentLength));
+            int other = table.indexOf(component, componentLength);
+            if(other != DistanceVectorTable.NONE && other != slot && done.get(other) == IntIndexMap.MISSING
+                    && (table.prefixLengthAt(slot) != componentLength
+                    || (component & mask) != (table.destinationAt(slot) & mask))){
+                this.stack[this.count++] = other;
+            }
+        }
+    }
+
+
+    /**
+     * This method returns the length of the largest block a destination can be
+     * summarized in. The block is grown one bit at a time for as long as its
+     * sibling block has the same route and no destination of the table has
+     * the prefix of the grown block, whose route the summary would hide
+     * @param table distance vector
+     * @param slot  slot of the destination
+     * @return length of the block, the destination's own prefix length if it can't be summarized
+     */
+    private int blockLength(DistanceVectorTable table, int slot){
+        int prefixLength = table.prefixLengthAt(slot);
+        int cost = table.bestCostAt(slot);
+        if(cost == DistanceVectorTable.INFINITY){
+            return prefixLength;
+        }
+        int nextHop = table.bestHopAt(slot);
+        int destination = table.destinationAt(slot);
+        int length = prefixLength;
+        while(length > this.minimumLength){
+            int summary = table.indexOf(destination, length - 1);
+            if(summary != DistanceVectorTable.NONE
+                    && (table.bestCostAt(summary) != DistanceVectorTable.INFINITY
+                    || (table.summaryLengthAt(summary) > 0 && table.summaryLengthAt(summary) != prefixLength))){
+                return length;
+            }
+
+            // the sibling block has as many destinations as the block grown so far
+            int sibling = (destination & IPv4.toMask(length)) ^ (1 << (32 - length));
+            int components = 1 << (prefixLength - length);
+            for(int i = 0; i < components; i++){
+                int other = table.indexOf(sibling + (i << (32 - prefixLength)), prefixLength);
+                if(other == DistanceVectorTable.NONE
+                        || table.bestCostAt(other) != cost || table.bestHopAt(other) != nextHop){
+                    return length;
+                }
+            }
+            length--;
+        }
+        return length;
+    }
+
+
+    /**
+     * This method returns the length of the summary which covers a destination now
+     * @param table distance vector
+     * @param slot  slot of the destination
+     * @return length of the summary, the destination's own prefix length if there is none
+     */
+    private int summaryOf(DistanceVectorTable table, int slot){
+        int prefixLength = table.prefixLengthAt(slot);
+        if(table.summaryLengthAt(slot) == DistanceVectorTable.COVERED){
+            // the summary is the shorter prefix made of destinations as long as this one
+            int destination = table.destinationAt(slot);
+            for(int length = prefixLength - 1; length >= 0; length--){
+                int summary = table.indexOf(destination, length);
+                if(summary != DistanceVectorTable.NONE && table.summaryLengthAt(summary) == prefixLength){
+                    return length;
+                }
+            }
+        }
+        return prefixLength;
+    }
+}
@@ -1,44 +1,45 @@
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectInputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 /**
  * This class acts as the routing table update message handler
- * It updates the router's routing table as per the messages received
+ * It updates the router's routing table as per the messages received.
+ * Datagrams are read by the router's event loop, which calls receive()
+ * whenever the channel has datagrams waiting. With a receive pipeline the
+ * datagrams are only copied into it and decoded and merged off the event loop
  * @author  Alimuddin Khan aak5031@rit.edu
  */
-public class RouteUpdateListener
-        implements Runnable{
-    // a socket to listen for the incoming messages
-    private DatagramSocket socket;
+public class RouteUpdateListener {
 
-    // port number to listen the messages
-    private int port;
+    // maximum size of a UDP datagram
+    public static final int MAX_DATAGRAM_SIZE = 65536;
+
+    // pool of receive buffers
+    private BufferPool bufferPool;
+
+    // message object reused for decoding every received update
+    private RIPPacket update;
 
     // current router object
     private MyRouter router;
 
-    // flag to decide when to stop listening for the update messages
-    private boolean keepListening;
+    // pipeline the datagrams are handed to, null to serve them on the event loop
+    private ReceivePipeline pipeline;
+
+    // flag to decide when to stop handling the update messages
+    private volatile boolean keepListening;
 
     /**
      * This constructor initializes the Listener Object
      * @param router
      */
-    public RouteUpdateListener(MyRouter router, int port) {
+    public RouteUpdateListener(MyRouter router) {
         this.router = router;
-        this.port = port;
         this.keepListening = true;
-        try {
-            this.socket = new DatagramSocket(this.port);
-        } catch (SocketException e) {
-            System.out.println(this.router.getDateTime() + ": (Listener) Unable to start listener the socket\n" +
-                    "Make sure that " + this.port + " is not used by other sockets");
-        }
+        this.bufferPool = new BufferPool(1, MAX_DATAGRAM_SIZE);
+        this.update = new RIPPacket(0, 0);
     }
 
 
@@ -61,71 +62,72 @@ public class RouteUpdateListener
 
 
     /**
-     * properly closing the update listener socket
+     * Setter for the receive pipeline
+     * @param pipeline pipeline the datagrams are handed to, null to serve them on the event loop
      */
-    public void stopListener(){
-        try {
-            this.socket.close();
-        }catch (NullPointerException e){
+    public void setPipeline(ReceivePipeline pipeline) {
+        this.pipeline = pipeline;
+    }
 
-        }
+
+    /**
+     * properly stopping the update listener, received datagrams are dropped from now on
+     */
+    public void stopListener(){
         this.setKeepListening(false);
     }
 
 
     /**
-     * This method converts the byte array into object MyRouter
-     * @param bytes a byte[] representation of the object
-     * @return returns the Router object
+     * This method converts the byte array into a route update message
+     * @param bytes a byte[] representation of the message
+     * @param length number of bytes received
+     * @return returns the route update message or null if it is not a valid message
      */
-    public   MyRouter convertByteArrayToObject(byte[] bytes){
-        MyRouter object = new MyRouter();
-        ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
-        ObjectInput oin = null;
-        try{
-            oin = new ObjectInputStream(bis);
-            object = (MyRouter) oin.readObject();
-
-        }catch (IOException e){
-        }catch (ClassNotFoundException e){
-        }catch (Exception e){
-        }
-        finally {
-            try {
-                oin.close();
-            } catch (IOException e) {
-            }
-        }
-        return object;
+    public   RIPPacket convertByteArrayToObject(byte[] bytes, int length){
+        return RIPPacket.decode(bytes, length);
     }
 
 
-    @Override
     /**
-     * This method runs in background and servers any available updates
+     * This method reads the datagrams waiting on a non-blocking channel and
+     * serves them. The receive buffer and the message object are reused for every datagram
+     * @param channel       channel to read from
+     * @param maxDatagrams  maximum number of datagrams to read in this call
+     * @return number of datagrams read
+     * @throws IOException if the channel can't be read
      */
-    public  void run() {
-        while (isKeepListening()){
-            byte[] recivedRouterByteArray = new byte[102400];
-            DatagramPacket packet = new DatagramPacket(recivedRouterByteArray, recivedRouterByteArray.length);
-            try {
-                this.socket.receive(packet);
-            } catch (IOException e) {
-                this.keepListening = false;
-                break;
-            }
-            MyRouter rcvRouter = this.convertByteArrayToObject(recivedRouterByteArray);
-            if(rcvRouter != null) {
-                this.router.updateDistanceVector(rcvRouter);
-                if(this.router.getNbrs().size() > 0) {
-
-                    // printing the routing table after every route update message
-                    this.router.printRoutingTable();
-                    this.router.dvchanged = false;
+    public int receive(DatagramChannel channel, int maxDatagrams) throws IOException {
+        ByteBuffer buffer = this.bufferPool.acquire();
+        int received = 0;
+        try {
+            while (received < maxDatagrams && isKeepListening()) {
+                buffer.clear();
+                InetSocketAddress source = (InetSocketAddress) channel.receive(buffer);
+                if (source == null) {
+                    // no more datagrams waiting
+                    break;
+                }
+                received++;
+                this.router.getMetrics().packetReceived();
+                buffer.flip();
+                if (this.pipeline != null) {
+                    // hash code of an IPv4 address is the address itself
+                    if (!this.pipeline.submit(buffer, source.getAddress().hashCode())) {
+                        this.router.getMetrics().receiveDropped();
+                    }
+                } else if (!RIPPacket.decode(buffer, this.update)) {
+                    this.router.getMetrics().decodeFailed();
+                } else {
+                    // route changes are published to the router's subscribers,
+                    // nothing is printed on the receive path
+                    this.router.updateDistanceVector(this.update);
                 }
             }
-
+        } finally {
+            this.bufferPool.release(buffer);
         }
+        return received;
     }
 
 }
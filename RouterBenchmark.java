@@ -0,0 +1,516 @@
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class measures the hot paths of the router, so every performance change
+ * can be compared against the numbers before it. Every benchmark runs for a
+ * number of table sizes and neighbor counts. It is warmed up first, then
+ * measured for a number of fixed-length iterations, and the time and the
+ * bytes allocated per operation are reported. Allocation is read from the
+ * thread's allocation counter, like the gc profiler of JMH does. Operations which
+ * change the table in a way that can't be repeated get their table restored
+ * before every invocation, outside of the measured time
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class RouterBenchmark {
+
+    // IP of the benchmarked router
+    public static final String ROUTER_IP = "192.168.0.1";
+
+    // address of the first neighbor, 172.16.0.1
+    public static final int FIRST_NEIGHBOR = (172 << 24) | (16 << 16) | 1;
+
+    // address of the first destination, 10.0.0.1
+    public static final int FIRST_DESTINATION = (10 << 24) + 1;
+
+    // number of prepared inputs the benchmarks cycle through
+    public static final int INPUTS = 1024;
+
+    // number of datagrams the receive pipeline benchmark keeps waiting to be merged
+    public static final int MAX_OUTSTANDING = 256;
+
+    // log shared by all the benchmarked routers, turned off
+    private static final RouterLog LOG = new RouterLog(RouterLog.DEFAULT_CAPACITY,
+            RouterLog.Level.OFF, new HostNameCache());
+
+    // thread bean reading allocated bytes, null if the JVM can't
+    private static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+
+    // sink of benchmark results, so the JIT can't drop the work
+    private static volatile Object sink;
+
+
+    /**
+     * This class is one benchmark. setUp() builds the state for a table size
+     * and neighbor count, run() is the measured operation
+     */
+    private static abstract class Benchmark {
+
+        // name of the benchmark
+        final String name;
+
+        // flag to show if prepare() has to run before every invocation
+        final boolean perInvocation;
+
+        Benchmark(String name, boolean perInvocation) {
+            this.name = name;
+            this.perInvocation = perInvocation;
+        }
+
+        /**
+         * This method builds the state of the benchmark
+         * @param size      number of destinations
+         * @param neighbors number of neighbors
+         */
+        abstract void setUp(int size, int neighbors);
+
+        /**
+         * This method restores the state before an invocation, it is not measured
+         */
+        void prepare(){
+        }
+
+        /**
+         * This method runs the measured operation once
+         * @param i number of the invocation
+         */
+        abstract void run(int i);
+    }
+
+
+    /**
+     * This method returns the thread bean if it can read allocated bytes
+     * @return
+     */
+    private static com.sun.management.ThreadMXBean allocationBean(){
+        try {
+            com.sun.management.ThreadMXBean bean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if(bean.isThreadAllocatedMemorySupported()){
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        } catch (ClassCastException | UnsupportedOperationException e){
+            // not a HotSpot like JVM
+        }
+        return null;
+    }
+
+
+    /**
+     * This method returns the bytes allocated by the current thread so far
+     * @return bytes or 0 if the JVM can't tell
+     */
+    private static long allocatedBytes(){
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+
+    /**
+     * This method builds a router which has learned every destination from every neighbor
+     * @param size      number of destinations
+     * @param neighbors number of neighbors
+     * @param random    random number generator for the costs
+     * @return
+     */
+    static MyRouter buildRouter(int size, int neighbors, Random random){
+        MyRouter router = new MyRouter(ROUTER_IP, Clock.systemDefaultZone(), LOG);
+        for(int n = 0; n < neighbors; n++){
+            router.addNeighbor2(IPv4.toString(FIRST_NEIGHBOR + n), 1 + n);
+        }
+        for(int n = 0; n < neighbors; n++){
+            router.updateDistanceVector(fullTable(FIRST_NEIGHBOR + n, size, random));
+        }
+        return router;
+    }
+
+
+    /**
+     * This method builds the advertisement of a neighbor which has a route to every destination
+     * @param neighbor  address of the neighbor
+     * @param size      number of destinations
+     * @param random    random number generator for the costs
+     * @return
+     */
+    static RIPPacket fullTable(int neighbor, int size, Random random){
+        RIPPacket packet = new RIPPacket(neighbor, size);
+        for(int i = 0; i < size; i++){
+            packet.addEntry(FIRST_DESTINATION + i, IPv4.toMask(32), neighbor, 1 + random.nextInt(15));
+        }
+        return packet;
+    }
+
+
+    /**
+     * This method returns all the benchmarks
+     * @return
+     */
+    static List<Benchmark> benchmarks(){
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        benchmarks.add(new Benchmark("updateDistanceVector", false) {
+            MyRouter router;
+            RIPPacket[] updates;
+
+            @Override
+            void setUp(int size, int neighbors) {
+                Random random = new Random(1);
+                this.router = buildRouter(size, neighbors, random);
+
+                // datagrams of MAX_ENTRIES routes from random neighbors with new costs
+                this.updates = new RIPPacket[INPUTS];
+                for(int i = 0; i < INPUTS; i++){
+                    int neighbor = FIRST_NEIGHBOR + random.nextInt(neighbors);
+                    this.updates[i] = new RIPPacket(neighbor, RIPPacket.MAX_ENTRIES);
+                    for(int e = 0; e < RIPPacket.MAX_ENTRIES; e++){
+                        this.updates[i].addEntry(FIRST_DESTINATION + random.nextInt(size),
+                                IPv4.toMask(32), neighbor, 1 + random.nextInt(15));
+                    }
+                }
+            }
+
+            @Override
+            void run(int i) {
+                this.router.updateDistanceVector(this.updates[i & (INPUTS - 1)]);
+            }
+        });
+
+        benchmarks.add(new Benchmark("receivePipeline", false) {
+            MyRouter router;
+            ReceivePipeline pipeline;
+            ByteBuffer[] datagrams;
+            int[] senders;
+            long submitted;
+
+            @Override
+            void setUp(int size, int neighbors) {
+                if(this.pipeline != null){
+                    // letting the router of the previous table size go
+                    this.pipeline.stop();
+                }
+                Random random = new Random(1);
+                this.router = buildRouter(size, neighbors, random);
+                this.pipeline = new ReceivePipeline(this.router, Runtime.getRuntime().availableProcessors(),
+                        IngressQueue.DEFAULT_CAPACITY);
+                this.pipeline.start();
+                this.submitted = 0;
+
+                // the same datagrams as updateDistanceVector, encoded
+                this.datagrams = new ByteBuffer[INPUTS];
+                this.senders = new int[INPUTS];
+                for(int i = 0; i < INPUTS; i++){
+                    int neighbor = FIRST_NEIGHBOR + random.nextInt(neighbors);
+                    RIPPacket update = new RIPPacket(neighbor, RIPPacket.MAX_ENTRIES);
+                    for(int e = 0; e < RIPPacket.MAX_ENTRIES; e++){
+                        update.addEntry(FIRST_DESTINATION + random.nextInt(size),
+                                IPv4.toMask(32), neighbor, 1 + random.nextInt(15));
+                    }
+                    byte[] bytes = update.toByteArray();
+                    this.datagrams[i] = ByteBuffer.allocateDirect(bytes.length);
+                    this.datagrams[i].put(bytes);
+                    this.senders[i] = neighbor;
+                }
+            }
+
+            @Override
+            void run(int i) {
+                // the sender is held back instead of overflowing the ingress queue,
+                // so this measures the throughput without drops
+                while(this.submitted - this.pipeline.getIngress().getDelivered() -
+                        this.router.getMetrics().getReceiveDrops() >= MAX_OUTSTANDING){
+                    Thread.yield();
+                }
+                int input = i & (INPUTS - 1);
+                this.datagrams[input].rewind();
+                while(!this.pipeline.submit(this.datagrams[input], this.senders[input])){
+                    Thread.yield();
+                }
+                this.submitted++;
+            }
+        });
+
+        benchmarks.add(new Benchmark("addDestination3", false) {
+            MyRouter router;
+            int[] destinations;
+            int[] hops;
+            int[] costs;
+
+            @Override
+            void setUp(int size, int neighbors) {
+                Random random = new Random(1);
+                this.router = buildRouter(size, neighbors, random);
+                this.destinations = new int[INPUTS];
+                this.hops = new int[INPUTS];
+                this.costs = new int[INPUTS];
+                for(int i = 0; i < INPUTS; i++){
+                    this.destinations[i] = FIRST_DESTINATION + random.nextInt(size);
+                    this.hops[i] = FIRST_NEIGHBOR + random.nextInt(neighbors);
+                    this.costs[i] = 1 + random.nextInt(30);
+                }
+            }
+
+            @Override
+            void run(int i) {
+                int input = i & (INPUTS - 1);
+                this.router.addDestination3(this.destinations[input], this.hops[input], this.costs[input]);
+            }
+        });
+
+        benchmarks.add(new Benchmark("getMinimumNextHopToDestination", false) {
+            MyRouter router;
+            String[] destinations;
+
+            @Override
+            void setUp(int size, int neighbors) {
+                Random random = new Random(1);
+                this.router = buildRouter(size, neighbors, random);
+                this.destinations = new String[INPUTS];
+                for(int i = 0; i < INPUTS; i++){
+                    this.destinations[i] = IPv4.toString(FIRST_DESTINATION + random.nextInt(size));
+                }
+            }
+
+            @Override
+            void run(int i) {
+                sink = this.router.getMinimumNextHopToDestination(this.destinations[i & (INPUTS - 1)]);
+            }
+        });
+
+        benchmarks.add(new Benchmark("updateLocalLinkChange", false) {
+            MyRouter router;
+            String neighbor;
+
+            @Override
+            void setUp(int size, int neighbors) {
+                this.router = buildRouter(size, neighbors, new Random(1));
+                this.neighbor = IPv4.toString(FIRST_NEIGHBOR);
+            }
+
+            @Override
+            void run(int i) {
+                // moving the link cost up and down so costs stay in range
+                this.router.updateLocalLinkChange(this.neighbor, 1 + (i & 1));
+            }
+        });
+
+        benchmarks.add(new Benchmark("removeLocalLink", true) {
+            MyRouter router;
+            String neighbor;
+            RIPPacket table;
+
+            @Override
+            void setUp(int size, int neighbors) {
+                Random random = new Random(1);
+                this.router = buildRouter(size, neighbors, random);
+                this.neighbor = IPv4.toString(FIRST_NEIGHBOR);
+                this.table = fullTable(FIRST_NEIGHBOR, size, random);
+            }
+
+            @Override
+            void prepare() {
+                // adding the neighbor back with all its routes
+                this.router.addNeighbor2(this.neighbor, 1);
+                this.router.updateDistanceVector(this.table);
+            }
+
+            @Override
+            void run(int i) {
+                this.router.removeLocalLink(this.neighbor);
+            }
+        });
+
+        benchmarks.add(new Benchmark("convertObjectToByteArray", false) {
+            MyRouter router;
+
+            @Override
+            void setUp(int size, int neighbors) {
+                this.router = buildRouter(size, neighbors, new Random(1));
+            }
+
+            @Override
+            void run(int i) {
+                // RIPProtocol.convertObjectToByteArray only calls this, without opening a socket
+                sink = RIPPacket.encode(this.router);
+            }
+        });
+
+        benchmarks.add(new Benchmark("convertByteArrayToObject", false) {
+            RouteUpdateListener listener;
+            byte[] message;
+
+            @Override
+            void setUp(int size, int neighbors) {
+                MyRouter router = buildRouter(size, neighbors, new Random(1));
+                this.listener = new RouteUpdateListener(router);
+                this.message = RIPPacket.encode(router);
+            }
+
+            @Override
+            void run(int i) {
+                sink = this.listener.convertByteArrayToObject(this.message, this.message.length);
+            }
+        });
+        return benchmarks;
+    }
+
+
+    /**
+     * This method runs one iteration of a benchmark
+     * @param benchmark     benchmark to be run
+     * @param millis        length of the iteration in milliseconds
+     * @param result        filled with time in nanoseconds, allocated bytes and operations
+     */
+    static void iteration(Benchmark benchmark, long millis, long[] result){
+        long end = System.nanoTime() + millis * 1000000;
+        long nanos = 0;
+        long bytes = 0;
+        int operations = 0;
+        if(benchmark.perInvocation){
+            while(System.nanoTime() < end){
+                benchmark.prepare();
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                benchmark.run(operations++);
+                nanos += System.nanoTime() - start;
+                bytes += allocatedBytes() - allocated;
+            }
+        }else{
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            do {
+                // checking the time every few operations only
+                for(int i = 0; i < 16; i++){
+                    benchmark.run(operations++);
+                }
+            } while(System.nanoTime() < end);
+            nanos = System.nanoTime() - start;
+            bytes = allocatedBytes() - allocated;
+        }
+        result[0] = nanos;
+        result[1] = bytes;
+        result[2] = operations;
+    }
+
+
+    /**
+     * This method parses a comma separated list of numbers
+     * @param list list of numbers
+     * @return
+     */
+    private static int[] parseList(String list){
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for(int i = 0; i < parts.length; i++){
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+
+    /**
+     * This methods prints the correct usage of this program
+     */
+    public static void usage(){
+        System.out.println("Correct Usage : \njava -Xmx8g RouterBenchmark [option=value ...]\n" +
+                "options : sizes=<destinations, default 10,1000,100000,1000000>\n" +
+                "          neighbors=<neighbor counts, default 1,4,16>\n" +
+                "          benchmarks=<names, default all> warmup=<iterations, default 3>\n" +
+                "          iterations=<default 5> time=<ms per iteration, default 1000>");
+    }
+
+
+    /**
+     * This is the main method which runs the benchmarks and prints the results
+     * @param args options
+     */
+    public static void main(String[] args){
+        int[] sizes = {10, 1000, 100000, 1000000};
+        int[] neighborCounts = {1, 4, 16};
+        String names = null;
+        int warmup = 3;
+        int iterations = 5;
+        long millis = 1000;
+        try {
+            for(String arg: args){
+                String[] option = arg.split("=");
+                if(option.length != 2){
+                    usage();
+                    return;
+                }
+                switch (option[0]){
+                    case "sizes":
+                        sizes = parseList(option[1]);
+                        break;
+                    case "neighbors":
+                        neighborCounts = parseList(option[1]);
+                        break;
+                    case "benchmarks":
+                        names = "," + option[1] + ",";
+                        break;
+                    case "warmup":
+                        warmup = Integer.parseInt(option[1]);
+                        break;
+                    case "iterations":
+                        iterations = Integer.parseInt(option[1]);
+                        break;
+                    case "time":
+                        millis = Long.parseLong(option[1]);
+                        break;
+                    default:
+                        usage();
+                        return;
+                }
+            }
+        } catch (NumberFormatException e){
+            usage();
+            return;
+        }
+        if(THREADS == null){
+            System.out.println("WARNING: This JVM can't count allocated bytes, B/op is 0");
+        }
+
+        // the pipeline decodes on a worker per processor and merges on the fork-join pool,
+        // run with -XX:ActiveProcessorCount=<n> to compare core counts
+        System.out.println("Processors: " + Runtime.getRuntime().availableProcessors() +
+                ", fork-join parallelism: " + ForkJoinPool.getCommonPoolParallelism());
+        System.out.printf("%-32s %9s %9s %14s %12s %14s %10s\n", "Benchmark", "size", "neighbors",
+                "ns/op", "+-", "B/op", "ops");
+        long[] result = new long[3];
+        for(Benchmark benchmark: benchmarks()){
+            if(names != null && !names.contains("," + benchmark.name + ",")){
+                continue;
+            }
+            for(int size: sizes){
+                for(int neighbors: neighborCounts){
+                    benchmark.setUp(size, neighbors);
+                    for(int i = 0; i < warmup; i++){
+                        iteration(benchmark, millis, result);
+                    }
+
+                    // mean and standard deviation of ns/op over the iterations
+                    double sum = 0;
+                    double squares = 0;
+                    long bytes = 0;
+                    long operations = 0;
+                    for(int i = 0; i < iterations; i++){
+                        iteration(benchmark, millis, result);
+                        double nanosPerOperation = (double) result[0] / result[2];
+                        sum += nanosPerOperation;
+                        squares += nanosPerOperation * nanosPerOperation;
+                        bytes += result[1];
+                        operations += result[2];
+                    }
+                    double mean = sum / iterations;
+                    double deviation = Math.sqrt(Math.max(0, squares / iterations - mean * mean));
+                    System.out.printf("%-32s %9d %9d %14.1f %12.1f %14.1f %10d\n", benchmark.name,
+                            size, neighbors, mean, deviation, (double) bytes / operations, operations);
+                }
+            }
+        }
+    }
+}
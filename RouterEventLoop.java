@@ -0,0 +1,363 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is the single thread which does all the network work of the router.
+ * It owns one non-blocking DatagramChannel registered with a Selector and in
+ * every wakeup it
+ * 1} drains the received datagrams (several of them per wakeup)
+ * 2} runs the timers which are due, e.g. periodic and triggered updates
+ * 3} sends the queued datagrams, waiting for send readiness when the socket buffer is full
+ * Other threads hand work to the loop through execute(), schedule() and send()
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class RouterEventLoop
+        implements Runnable{
+
+    // maximum number of datagrams read in one wakeup, so timers and sends are not starved
+    public static final int MAX_DATAGRAMS_PER_WAKEUP = 64;
+
+    // selector which tells when the channel is readable or writable
+    private Selector selector;
+
+    // channel used to send and receive route updates
+    private DatagramChannel channel;
+
+    // selection key of the channel
+    private SelectionKey key;
+
+    // handler of received datagrams
+    private RouteUpdateListener listener;
+
+    // metrics which count the sent and dropped datagrams
+    private RouterMetrics metrics;
+
+    // timers ordered by their due time, only touched by the loop thread
+    private PriorityQueue<Timer> timers;
+
+    // work handed over by other threads
+    private ConcurrentLinkedQueue<Runnable> tasks;
+
+    // datagrams handed over to be sent
+    private ConcurrentLinkedQueue<Datagram> outgoing;
+
+    // datagrams waiting for the channel to become writable, only touched by the loop thread
+    private ArrayDeque<Datagram> blocked;
+
+    // thread running the loop
+    private volatile Thread loopThread;
+
+    // flag to decide when to stop the loop
+    private volatile boolean running;
+
+    // sequence number of timers, so timers due at the same time run in order
+    private long timerSequence;
+
+
+    /**
+     * This constructor opens the channel on the given port
+     * @param port      port number to send and receive route updates
+     * @param listener  handler of received datagrams
+     * @param metrics   metrics which count the sent and dropped datagrams
+     * @throws IOException if the channel can't be opened
+     */
+    public RouterEventLoop(int port, RouteUpdateListener listener, RouterMetrics metrics)
+            throws IOException {
+        this.listener = listener;
+        this.metrics = metrics;
+        this.timers = new PriorityQueue<>();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.outgoing = new ConcurrentLinkedQueue<>();
+        this.blocked = new ArrayDeque<>();
+        this.running = true;
+        this.timerSequence = 0;
+        this.selector = Selector.open();
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(port));
+        this.channel.configureBlocking(false);
+        this.key = this.channel.register(this.selector, SelectionKey.OP_READ);
+    }
+
+
+    /**
+     * This method runs a task in the loop thread
+     * @param task task to be run
+     */
+    public void execute(Runnable task){
+        if(Thread.currentThread() == this.loopThread){
+            task.run();
+        }else{
+            this.tasks.add(task);
+            this.selector.wakeup();
+        }
+    }
+
+
+    /**
+     * This method runs a task in the loop thread after a delay
+     * @param task          task to be run
+     * @param delayMillis   delay in milliseconds
+     */
+    public void schedule(Runnable task, long delayMillis){
+        final Timer timer = new Timer(task,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        this.execute(new Runnable() {
+            @Override
+            public void run() {
+                timer.sequence = timerSequence++;
+                timers.add(timer);
+            }
+        });
+    }
+
+
+    /**
+     * This method queues a datagram to be sent by the loop
+     * @param data          content of the datagram
+     * @param destination   address and port of the receiver
+     */
+    public void send(byte[] data, InetSocketAddress destination){
+        this.send(data, destination, null);
+    }
+
+
+    /**
+     * This method queues a datagram to be sent by the loop to a neighbor,
+     * the neighbor's send latency and failures are recorded
+     * @param data          content of the datagram
+     * @param destination   address and port of the receiver
+     * @param neighbor      state of the receiving neighbor, null if it is not a neighbor
+     */
+    public void send(byte[] data, InetSocketAddress destination, Neighbor neighbor){
+        this.send(ByteBuffer.wrap(data), destination, neighbor);
+    }
+
+
+    /**
+     * This method queues a datagram held in a buffer, e.g. a direct buffer which
+     * is sent several times. The buffer is read from its position to its limit
+     * and must not be changed until the datagram has been sent
+     * @param data          content of the datagram
+     * @param destination   address and port of the receiver
+     * @param neighbor      state of the receiving neighbor, null if it is not a neighbor
+     */
+    public void send(ByteBuffer data, InetSocketAddress destination, Neighbor neighbor){
+        if(neighbor != null){
+            neighbor.sendQueued();
+        }
+        this.sendReserved(data, destination, neighbor);
+    }
+
+
+    /**
+     * This method queues a datagram which has already been counted as queued to
+     * the neighbor by Neighbor.sendQueued(), e.g. while holding the neighbor's
+     * lock so its cached buffer is not reused before the datagram is sent
+     * @param data          content of the datagram
+     * @param destination   address and port of the receiver
+     * @param neighbor      state of the receiving neighbor, null if it is not a neighbor
+     */
+    public void sendReserved(ByteBuffer data, InetSocketAddress destination, Neighbor neighbor){
+        this.outgoing.add(new Datagram(data, destination, neighbor));
+        if(Thread.currentThread() == this.loopThread){
+            this.flush();
+        }else{
+            this.selector.wakeup();
+        }
+    }
+
+
+    /**
+     * This method stops the loop and closes the channel
+     */
+    public void stop(){
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+
+    @Override
+    /**
+     * This method runs the loop until it is stopped
+     */
+    public void run() {
+        this.loopThread = Thread.currentThread();
+        try {
+            while (this.running) {
+                long timeout = this.selectTimeout();
+                if (timeout < 0) {
+                    this.selector.selectNow();
+                } else {
+                    this.selector.select(timeout);
+                }
+                if (this.key.isValid() && this.key.isReadable()) {
+                    this.listener.receive(this.channel, MAX_DATAGRAMS_PER_WAKEUP);
+                }
+                this.runTasks();
+                this.runTimers();
+                this.flush();
+                this.selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            System.out.println("(Event Loop) Unable to continue: " + e.getMessage());
+        } finally {
+            try {
+                this.channel.close();
+                this.selector.close();
+            } catch (IOException e) {
+
+            }
+        }
+    }
+
+
+    /**
+     * This method returns how long select may block, i.e. until the next timer is due
+     * @return timeout in milliseconds, 0 means no timeout, -1 means don't block
+     */
+    private long selectTimeout(){
+        if(!this.tasks.isEmpty() || (!this.outgoing.isEmpty() && this.blocked.isEmpty())){
+            return -1;
+        }
+        Timer next = this.timers.peek();
+        if(next == null){
+            return 0;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(next.due - System.nanoTime());
+        return millis <= 0 ? -1 : millis;
+    }
+
+
+    /**
+     * This method runs the tasks handed over by other threads
+     */
+    private void runTasks(){
+        Runnable task;
+        while((task = this.tasks.poll()) != null){
+            this.runSafely(task);
+        }
+    }
+
+
+    /**
+     * This method runs the timers which are due
+     */
+    private void runTimers(){
+        long now = System.nanoTime();
+        while(!this.timers.isEmpty() && this.timers.peek().due - now <= 0){
+            this.runSafely(this.timers.poll().task);
+        }
+    }
+
+
+    /**
+     * This method runs a task, a failing task doesn't stop the loop
+     * @param task task to be run
+     */
+    private void runSafely(Runnable task){
+        try {
+            task.run();
+        } catch (RuntimeException e){
+            System.out.println("(Event Loop) Task failed: " + e);
+        }
+    }
+
+
+    /**
+     * This method sends the queued datagrams until the socket buffer is full.
+     * Remaining datagrams are sent once the channel becomes writable
+     */
+    private void flush(){
+        Datagram datagram;
+        while((datagram = this.outgoing.poll()) != null){
+            this.blocked.add(datagram);
+        }
+        while((datagram = this.blocked.peek()) != null){
+            try {
+                if(this.channel.send(datagram.data, datagram.destination) == 0){
+                    // socket buffer is full
+                    break;
+                }
+                this.metrics.packetSent();
+                if(datagram.neighbor != null){
+                    datagram.neighbor.sendCompleted(System.nanoTime() - datagram.queuedAt);
+                }
+            } catch (IOException e){
+                this.metrics.packetDropped();
+                if(datagram.neighbor != null){
+                    datagram.neighbor.sendFailed();
+                }
+                System.out.println("(Event Loop) Unable to send the update to " +
+                        datagram.destination.getAddress().getHostAddress());
+            }
+            this.blocked.poll();
+        }
+        if(this.key.isValid()){
+            this.key.interestOps(this.blocked.isEmpty() ? SelectionKey.OP_READ
+                    : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+
+    /**
+     * This class holds a task and the time it is due
+     */
+    private static class Timer implements Comparable<Timer> {
+
+        // task to be run
+        Runnable task;
+
+        // System.nanoTime() at which the task is due
+        long due;
+
+        // order in which the timer was added
+        long sequence;
+
+        Timer(Runnable task, long due) {
+            this.task = task;
+            this.due = due;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            if(this.due != other.due){
+                return this.due - other.due < 0 ? -1 : 1;
+            }
+            return Long.compare(this.sequence, other.sequence);
+        }
+    }
+
+
+    /**
+     * This class holds a datagram waiting to be sent
+     */
+    private static class Datagram {
+
+        // content of the datagram
+        ByteBuffer data;
+
+        // address and port of the receiver
+        InetSocketAddress destination;
+
+        // state of the receiving neighbor, null if it is not a neighbor
+        Neighbor neighbor;
+
+        // System.nanoTime() at which the datagram was queued
+        long queuedAt;
+
+        Datagram(ByteBuffer data, InetSocketAddress destination, Neighbor neighbor) {
+            this.data = data;
+            this.destination = destination;
+            this.neighbor = neighbor;
+            this.queuedAt = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class logs the events of the router without slowing down route processing.
+ * An event is written into a preallocated ring buffer as its type, a raw
+ * System.currentTimeMillis() timestamp and up to three int arguments (addresses,
+ * costs) plus an optional text. A background thread turns the events into lines,
+ * i.e. formats the time, converts addresses and looks up host names, and writes
+ * them to the console or a file. When the buffer is full events are dropped and
+ * counted instead of making the router wait. Events below the level chosen at
+ * runtime are skipped before anything is written. The writer thread parks while
+ * the buffer is empty and is unparked by the next event, so an idle log costs
+ * no wake ups
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class RouterLog
+        implements Runnable{
+
+    /**
+     * Levels of the events, from the most to the least verbose
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    /**
+     * Types of the events. The pattern is filled by the kinds of its arguments in
+     * order: A an int address, H the host name of an int address, N an int number
+     * and T the text of the event
+     */
+    public enum Event {
+        NEIGHBOR_INVALID(Level.WARN, "T",
+                "FAILURE: (Addition of Neighbor): %s is not a valid IPv4 host"),
+        NEIGHBOR_EXISTS(Level.WARN, "A",
+                "FAILURE: (Addition of Neighbor): %s is already in the neighbor's list\n" +
+                "use 'update' command to change the link cost"),
+        NEIGHBOR_ADDED(Level.DEBUG, "A",
+                "(Destination Addition) : Added neighbor %s in the destination list"),
+        UNREACHABLE_THROUGH(Level.DEBUG, "AA",
+                "(Distance Vector Update) %s is now unreachable through %s"),
+        NEW_DESTINATION(Level.INFO, "HA",
+                "(Found New destination) Adding destination %s via %s"),
+        NEW_MIN_PATH(Level.INFO, "HA",
+                "(Cost updation ) Found new min Path to  %s via %s"),
+        NOT_A_NEIGHBOR(Level.DEBUG, "TAT",
+                "(LocalLinkChange)%s is not a neighbor of %s,\n" +
+                " hence no effect of %s's local link change on this router"),
+        LINK_REMOVED(Level.DEBUG, "T",
+                "(LocalLinkRemoval) :  Removed %s from neighbor list"),
+        LINK_NOT_REMOVED(Level.DEBUG, "T",
+                "(LocalLinkRemoval) :  Can't remove local link to %s as we don't have it as neighbor"),
+        ROUTE_TIMEOUT(Level.INFO, "HA",
+                "(Route Timeout) Route to %s via %s has not been refreshed, it is un-reachable through it now"),
+        ROUTE_DELETED(Level.DEBUG, "A",
+                "(Garbage Collection) Deleted un-reachable destination %s"),
+        UPDATE_DROPPED(Level.WARN, "AT",
+                "FAILURE: (Distance Vector Update) Dropped the update of %s: %s"),
+        BATCH_DROPPED(Level.WARN, "T",
+                "FAILURE: (Receive Pipeline) Unable to merge the updates: %s");
+
+        // level of the event
+        final Level level;
+
+        // kinds of the arguments filling the pattern
+        final String kinds;
+
+        // pattern of the line
+        final String pattern;
+
+        Event(Level level, String kinds, String pattern) {
+            this.level = level;
+            this.kinds = kinds;
+            this.pattern = pattern;
+        }
+    }
+
+    // default number of events the buffer holds, a power of two
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    // format of the time stamps
+    public static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    // time in nanoseconds stop() waits between checks of the events left to print
+    private static final long IDLE_NANOS = 1000000;
+
+    // capacity - 1, to turn a sequence into a buffer index
+    private int mask;
+
+    // slot -> sequence of the event written into it, -1 before the first one
+    private AtomicLongArray published;
+
+    // slot -> fields of the event
+    private long[] times;
+    private Event[] events;
+    private int[] arguments;
+    private String[] texts;
+
+    // sequence the next event gets
+    private AtomicLong nextSequence;
+
+    // sequence of the next event the writer thread prints, only written by that thread
+    private volatile long consumed;
+
+    // number of events dropped because the buffer was full
+    private AtomicLong dropped;
+
+    // minimum level of the events which are logged
+    private volatile Level level;
+
+    // where the lines are written
+    private volatile PrintStream out;
+
+    // cache used to print host names
+    private HostNameCache hostNames;
+
+    // flag to decide when to stop the writer thread
+    private volatile boolean running;
+
+    // writer thread and flag to show if it is parked waiting for an event
+    private Thread writer;
+    private volatile boolean sleeping;
+
+
+    /**
+     * This constructor initializes the log and starts its writer thread
+     * @param capacity  number of events the buffer holds, rounded up to a power of two
+     * @param level     minimum level of the events which are logged
+     * @param hostNames cache used to print host names
+     */
+    public RouterLog(int capacity, Level level, HostNameCache hostNames) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for(int i = 0; i < size; i++){
+            this.published.set(i, -1);
+        }
+        this.times = new long[size];
+        this.events = new Event[size];
+        this.arguments = new int[size * 3];
+        this.texts = new String[size];
+        this.nextSequence = new AtomicLong();
+        this.consumed = 0;
+        this.dropped = new AtomicLong();
+        this.level = level;
+        this.out = System.out;
+        this.hostNames = hostNames;
+        this.running = true;
+        this.sleeping = false;
+        this.writer = new Thread(this, "router-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+
+    /**
+     * This method returns the minimum level of the events which are logged
+     * @return
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+
+    /**
+     * This method sets the minimum level of the events which are logged
+     * @param level
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+
+    /**
+     * This method checks if events of a level are logged
+     * @param level level of the events
+     * @return
+     */
+    public boolean isEnabled(Level level){
+        return level.compareTo(this.level) >= 0 && level != Level.OFF;
+    }
+
+
+    /**
+     * This method sets where the lines are written, e.g. System.out or a file.
+     * The writer thread closes the previous stream unless it is System.out
+     * @param out stream the lines are written to
+     */
+    public void setOutput(PrintStream out) {
+        this.out = out;
+        LockSupport.unpark(this.writer);
+    }
+
+
+    /**
+     * This method returns the cache used to print host names
+     * @return
+     */
+    public HostNameCache getHostNameCache() {
+        return hostNames;
+    }
+
+
+    /**
+     * This method returns number of events dropped because the buffer was full
+     * @return
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+
+    /**
+     * This method logs an event with int arguments
+     * @param event type of the event
+     * @param arg0  first int argument
+     * @param arg1  second int argument
+     * @param arg2  third int argument
+     */
+    public void log(Event event, int arg0, int arg1, int arg2){
+        this.log(event, arg0, arg1, arg2, null);
+    }
+
+
+    /**
+     * This method logs an event with a text
+     * @param event type of the event
+     * @param text  text of the event
+     */
+    public void log(Event event, String text){
+        this.log(event, 0, 0, 0, text);
+    }
+
+
+    /**
+     * This method logs an event. It only writes the fields into the buffer,
+     * nothing is formatted here
+     * @param event type of the event
+     * @param arg0  first int argument
+     * @param arg1  second int argument
+     * @param arg2  third int argument
+     * @param text  text of the event, may be null
+     */
+    public void log(Event event, int arg0, int arg1, int arg2, String text){
+        if(!this.isEnabled(event.level)){
+            return;
+        }
+
+        // claiming a sequence, unless the writer thread is a whole buffer behind
+        long sequence;
+        do {
+            sequence = this.nextSequence.get();
+            if(sequence - this.consumed > this.mask){
+                this.dropped.incrementAndGet();
+                return;
+            }
+        } while(!this.nextSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & this.mask;
+        this.times[slot] = System.currentTimeMillis();
+        this.events[slot] = event;
+        this.arguments[slot * 3] = arg0;
+        this.arguments[slot * 3 + 1] = arg1;
+        this.arguments[slot * 3 + 2] = arg2;
+        this.texts[slot] = text;
+
+        // the volatile write makes the fields visible to the writer thread
+        this.published.set(slot, sequence);
+        if(this.sleeping){
+            LockSupport.unpark(this.writer);
+        }
+    }
+
+
+    @Override
+    /**
+     * This method runs the writer thread, which formats and prints the events in order
+     */
+    public void run() {
+        PrintStream out = this.out;
+        while(this.running){
+            if(out != this.out){
+                // switching to the new stream
+                if(out != System.out){
+                    out.close();
+                }
+                out = this.out;
+            }
+            boolean wrote = false;
+            long sequence = this.consumed;
+            int slot = (int) sequence & this.mask;
+            while(this.published.get(slot) == sequence){
+                out.println(this.format(slot));
+                this.texts[slot] = null;
+                this.consumed = ++sequence;
+                slot = (int) sequence & this.mask;
+                wrote = true;
+            }
+            if(wrote){
+                out.flush();
+            }else{
+                // the flag is set before checking again, so an event published
+                // meanwhile either is seen here or unparks the thread
+                this.sleeping = true;
+                if(this.published.get(slot) != sequence && this.running && out == this.out){
+                    LockSupport.park(this);
+                }
+                this.sleeping = false;
+            }
+        }
+    }
+
+
+    /**
+     * This method stops the writer thread once it has printed what is in the buffer
+     */
+    public void stop(){
+        long deadline = System.nanoTime() + 1000 * IDLE_NANOS;
+        while(this.consumed < this.nextSequence.get() && System.nanoTime() < deadline){
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+        this.running = false;
+        LockSupport.unpark(this.writer);
+    }
+
+
+    /**
+     * This method formats an event in the buffer into a line
+     * @param slot slot of the event
+     * @return
+     */
+    private String format(int slot){
+        Event event = this.events[slot];
+        Object[] values = new Object[event.kinds.length()];
+        int argument = 0;
+        for(int i = 0; i < values.length; i++){
+            char kind = event.kinds.charAt(i);
+            if(kind == 'T'){
+                values[i] = this.texts[slot];
+                continue;
+            }
+            int value = this.arguments[slot * 3 + argument++];
+            if(kind == 'A'){
+                values[i] = IPv4.toString(value);
+            }else if(kind == 'H'){
+                values[i] = this.hostNames.getHostName(IPv4.toString(value));
+            }else{
+                values[i] = value;
+            }
+        }
+        return formatTime(this.times[slot]) + ": " + String.format(event.pattern, values);
+    }
+
+
+    /**
+     * This method formats a System.currentTimeMillis() time stamp
+     * @param millis time stamp
+     * @return time in yyyy-MM-dd HH:mm:ss
+     */
+    public static String formatTime(long millis){
+        return TIME_FORMAT.format(Instant.ofEpochMilli(millis));
+    }
+}
@@ -0,0 +1,347 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class is the registry of the router's control plane metrics. Counters
+ * are LongAdders, which stripe their cells over the updating threads, and
+ * latencies go into lock-free histograms, so updating a metric never blocks
+ * the receive path. Gauges are read from the router's latest snapshot when
+ * they are asked for. Once registered, the metrics, the histograms and every
+ * neighbor are MBeans of the platform MBean server under the RIPProtocol domain
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class RouterMetrics
+        implements RouterMetricsMBean{
+
+    // domain of the MBeans
+    public static final String DOMAIN = "RIPProtocol";
+
+    // router whose gauges are read
+    private MyRouter router;
+
+    // number of datagrams received, sent and dropped
+    private LongAdder packetsReceived;
+    private LongAdder packetsSent;
+    private LongAdder packetsDropped;
+
+    // number of received datagrams which were not valid route updates
+    private LongAdder decodeFailures;
+
+    // number of received datagrams dropped because the receive pipeline was
+    // full or their update could not be merged
+    private LongAdder receiveDrops;
+
+    // number of received updates coalesced with a pending one of the same neighbor
+    private LongAdder updatesCoalesced;
+
+    // number of best route changes
+    private LongAdder routesChanged;
+
+    // number of triggered updates sent
+    private LongAdder triggeredUpdatesSent;
+
+    // time taken by updateDistanceVector
+    private LatencyHistogram updateLatency;
+
+    // time taken to take route updates from the table and to encode them into datagrams,
+    // recorded by every encode path: periodic, triggered and full table
+    private LatencyHistogram serializationLatency;
+
+    // server the MBeans are registered with, null if they are not
+    private volatile MBeanServer server;
+
+
+    /**
+     * This constructor initializes the metrics of a router, they are not registered yet
+     * @param router router whose gauges are read
+     */
+    public RouterMetrics(MyRouter router) {
+        this.router = router;
+        this.packetsReceived = new LongAdder();
+        this.packetsSent = new LongAdder();
+        this.packetsDropped = new LongAdder();
+        this.decodeFailures = new LongAdder();
+        this.receiveDrops = new LongAdder();
+        this.updatesCoalesced = new LongAdder();
+        this.routesChanged = new LongAdder();
+        this.triggeredUpdatesSent = new LongAdder();
+        this.updateLatency = new LatencyHistogram("updateDistanceVector");
+        this.serializationLatency = new LatencyHistogram("serialization");
+        this.server = null;
+    }
+
+
+    /**
+     * This method records a received datagram
+     */
+    public void packetReceived(){
+        this.packetsReceived.increment();
+    }
+
+
+    /**
+     * This method records a sent datagram
+     */
+    public void packetSent(){
+        this.packetsSent.increment();
+    }
+
+
+    /**
+     * This method records a datagram which could not be sent
+     */
+    public void packetDropped(){
+        this.packetsDropped.increment();
+    }
+
+
+    /**
+     * This method records a received datagram which was not a valid route update
+     */
+    public void decodeFailed(){
+        this.decodeFailures.increment();
+    }
+
+
+    /**
+     * This method records a received datagram dropped because the receive pipeline was
+     * full or its update could not be merged
+     */
+    public void receiveDropped(){
+        this.receiveDrops.increment();
+    }
+
+
+    /**
+     * This method records a received update coalesced with a pending one of the same neighbor
+     */
+    public void updateCoalesced(){
+        this.updatesCoalesced.increment();
+    }
+
+
+    /**
+     * This method records changes of best routes
+     * @param count number of changes
+     */
+    public void routesChanged(long count){
+        this.routesChanged.add(count);
+    }
+
+
+    /**
+     * This method records a triggered update
+     */
+    public void triggeredUpdateSent(){
+        this.triggeredUpdatesSent.increment();
+    }
+
+
+    /**
+     * This method returns the histogram of the time taken by updateDistanceVector
+     * @return
+     */
+    public LatencyHistogram getUpdateLatency() {
+        return updateLatency;
+    }
+
+
+    /**
+     * This method returns the histogram of the time taken to take route updates
+     * from the table and to encode them, the sends are not included
+     * @return
+     */
+    public LatencyHistogram getSerializationLatency() {
+        return serializationLatency;
+    }
+
+
+    @Override
+    public long getPacketsReceived() {
+        return packetsReceived.sum();
+    }
+
+
+    @Override
+    public long getPacketsSent() {
+        return packetsSent.sum();
+    }
+
+
+    @Override
+    public long getPacketsDropped() {
+        return packetsDropped.sum();
+    }
+
+
+    @Override
+    public long getDecodeFailures() {
+        return decodeFailures.sum();
+    }
+
+
+    @Override
+    public long getReceiveDrops() {
+        return receiveDrops.sum();
+    }
+
+
+    @Override
+    public long getUpdatesCoalesced() {
+        return updatesCoalesced.sum();
+    }
+
+
+    @Override
+    public long getRoutesChanged() {
+        return routesChanged.sum();
+    }
+
+
+    @Override
+    public long getTriggeredUpdatesSent() {
+        return triggeredUpdatesSent.sum();
+    }
+
+
+    @Override
+    public int getRouteCount() {
+        return this.router.getSnapshot().size();
+    }
+
+
+    @Override
+    public int getNeighborCount() {
+        return this.router.getNeighbors().length;
+    }
+
+
+    @Override
+    public int getTableVersion() {
+        return this.router.getSnapshot().getVersion();
+    }
+
+
+    /**
+     * This method registers the metrics, the histograms and the current
+     * neighbors with the platform MBean server
+     */
+    public void register(){
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(DOMAIN + ":type=Router"));
+            server.registerMBean(this.updateLatency, latencyName(this.updateLatency));
+            server.registerMBean(this.serializationLatency, latencyName(this.serializationLatency));
+        } catch (JMException e){
+            System.out.println("(Metrics) Unable to register the MBeans: " + e.getMessage());
+            return;
+        }
+        this.server = server;
+        for(Neighbor neighbor: this.router.getNeighbors()){
+            this.neighborAdded(neighbor);
+        }
+    }
+
+
+    /**
+     * This method removes all the MBeans from the server
+     */
+    public void unregister(){
+        MBeanServer server = this.server;
+        if(server == null){
+            return;
+        }
+        this.server = null;
+        try {
+            for(ObjectName name: server.queryNames(new ObjectName(DOMAIN + ":*"), null)){
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e){
+            System.out.println("(Metrics) Unable to unregister the MBeans: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * This method registers the MBean of a new neighbor, if the metrics are registered
+     * @param neighbor state of the neighbor
+     */
+    public void neighborAdded(Neighbor neighbor){
+        MBeanServer server = this.server;
+        if(server == null){
+            return;
+        }
+        try {
+            ObjectName name = neighborName(neighbor);
+            if(!server.isRegistered(name)){
+                server.registerMBean(neighbor, name);
+            }
+        } catch (JMException e){
+            System.out.println("(Metrics) Unable to register neighbor " + neighbor.getIP() +
+                    ": " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * This method removes the MBean of a neighbor which is no longer a neighbor
+     * @param neighbor state of the neighbor
+     */
+    public void neighborRemoved(Neighbor neighbor){
+        MBeanServer server = this.server;
+        if(server == null){
+            return;
+        }
+        try {
+            ObjectName name = neighborName(neighbor);
+            if(server.isRegistered(name)){
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e){
+            System.out.println("(Metrics) Unable to unregister neighbor " + neighbor.getIP() +
+                    ": " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * This method prints the metrics
+     */
+    public void print(){
+        System.out.println("Packets  received: " + this.getPacketsReceived() + "  sent: " +
+                this.getPacketsSent() + "  dropped: " + this.getPacketsDropped() +
+                "  decode failures: " + this.getDecodeFailures() +
+                "  receive drops: " + this.getReceiveDrops() +
+                "  coalesced: " + this.getUpdatesCoalesced());
+        System.out.println("Routes   count: " + this.getRouteCount() + "  changed: " +
+                this.getRoutesChanged() + "  table version: " + this.getTableVersion() +
+                "  triggered updates: " + this.getTriggeredUpdatesSent());
+        System.out.println(this.updateLatency);
+        System.out.println(this.serializationLatency);
+    }
+
+
+    /**
+     * This method returns the name of a neighbor's MBean
+     * @param neighbor state of the neighbor
+     * @return
+     * @throws JMException if the name is not valid
+     */
+    private static ObjectName neighborName(Neighbor neighbor) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Neighbor,address=" + neighbor.getIP());
+    }
+
+
+    /**
+     * This method returns the name of a histogram's MBean
+     * @param histogram latency histogram
+     * @return
+     * @throws JMException if the name is not valid
+     */
+    private static ObjectName latencyName(LatencyHistogram histogram) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Latency,name=" + histogram.getName());
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * This interface is the JMX view of the router's control plane metrics
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public interface RouterMetricsMBean {
+
+    /**
+     * This method returns number of datagrams received
+     * @return
+     */
+    long getPacketsReceived();
+
+    /**
+     * This method returns number of datagrams sent
+     * @return
+     */
+    long getPacketsSent();
+
+    /**
+     * This method returns number of datagrams which could not be sent and were dropped
+     * @return
+     */
+    long getPacketsDropped();
+
+    /**
+     * This method returns number of received datagrams which were not valid route updates
+     * @return
+     */
+    long getDecodeFailures();
+
+    /**
+     * This method returns number of received datagrams dropped because the receive pipeline was full
+     * @return
+     */
+    long getReceiveDrops();
+
+    /**
+     * This method returns number of received updates coalesced with a pending one of the same neighbor
+     * @return
+     */
+    long getUpdatesCoalesced();
+
+    /**
+     * This method returns number of best route changes
+     * @return
+     */
+    long getRoutesChanged();
+
+    /**
+     * This method returns number of triggered updates sent
+     * @return
+     */
+    long getTriggeredUpdatesSent();
+
+    /**
+     * This method returns number of destinations in the routing table
+     * @return
+     */
+    int getRouteCount();
+
+    /**
+     * This method returns number of neighbors
+     * @return
+     */
+    int getNeighborCount();
+
+    /**
+     * This method returns the version of the routing table
+     * @return
+     */
+    int getTableVersion();
+}
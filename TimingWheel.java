@@ -0,0 +1,242 @@
+import java.util.Arrays;
+
+/**
+ * This class is a hashed timing wheel of timers keyed by int, e.g. route ids of destinations.
+ * Time is cut into ticks and the wheel has a power of two number of buckets, a
+ * timer is put in the bucket of the tick it is due at. Buckets are doubly linked
+ * lists, so starting, moving and cancelling a timer costs O(1) however many timers
+ * there are, and advancing the wheel only visits the buckets of the ticks which
+ * have passed. Timers due more than one turn of the wheel later stay in their
+ * bucket until their turn comes. Every key has at most one timer, which also has
+ * a kind chosen by the caller. Timers are kept in parallel arrays with a free list
+ * instead of one object per timer. The wheel is not thread safe, the router only
+ * uses it while holding its lock
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class TimingWheel {
+
+    // index of no timer, ends the lists
+    public static final int NONE = -1;
+
+    /**
+     * This interface is called for every timer which expires
+     */
+    public interface Handler {
+
+        /**
+         * This method handles an expired timer, which has already been removed
+         * from the wheel. It may start a new timer for the same key
+         * @param key   key of the timer
+         * @param kind  kind of the timer
+         */
+        void expired(int key, int kind);
+    }
+
+    // length of a tick in milliseconds
+    private long tickMillis;
+
+    // number of buckets - 1, to turn a tick into a bucket
+    private int mask;
+
+    // bucket -> first timer in it, NONE if empty
+    private int[] heads;
+
+    // key -> timer
+    private IntIndexMap index;
+
+    // timer -> key, kind and the tick it is due at
+    private int[] keys;
+    private int[] kinds;
+    private long[] ticks;
+
+    // timer -> previous and next timer in its bucket, or next free timer
+    private int[] previous;
+    private int[] next;
+
+    // first free timer, NONE if all timers in the arrays are used
+    private int free;
+
+    // number of timers ever taken from the arrays
+    private int used;
+
+    // number of running timers
+    private int size;
+
+    // next tick whose bucket is processed
+    private long currentTick;
+
+
+    /**
+     * This constructor initializes an empty wheel
+     * @param tickMillis    length of a tick in milliseconds
+     * @param buckets       number of buckets, rounded up to a power of two
+     * @param now           current time in milliseconds
+     */
+    public TimingWheel(long tickMillis, int buckets, long now) {
+        int size = Integer.highestOneBit(Math.max(2, buckets - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.heads = new int[size];
+        Arrays.fill(this.heads, NONE);
+        this.index = new IntIndexMap(16);
+        this.keys = new int[16];
+        this.kinds = new int[16];
+        this.ticks = new long[16];
+        this.previous = new int[16];
+        this.next = new int[16];
+        this.free = NONE;
+        this.used = 0;
+        this.size = 0;
+        this.currentTick = now / tickMillis + 1;
+    }
+
+
+    /**
+     * This method returns number of running timers
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * This method returns the kind of the timer of a key
+     * @param key key of the timer
+     * @return kind or NONE if the key has no timer
+     */
+    public int kindOf(int key){
+        int timer = this.index.get(key);
+        return timer == NONE ? NONE : this.kinds[timer];
+    }
+
+
+    /**
+     * This method starts the timer of a key, replacing the one it had. The timer
+     * expires in the first tick which starts at or after the deadline
+     * @param key       key of the timer
+     * @param kind      kind of the timer, must not be negative
+     * @param deadline  time in milliseconds the timer is due at
+     */
+    public void schedule(int key, int kind, long deadline){
+        int timer = this.index.get(key);
+        if(timer != NONE){
+            this.unlink(timer);
+        }else{
+            timer = this.allocate();
+            this.index.put(key, timer);
+            this.size++;
+        }
+
+        // ticks which are being or have been processed can't take new timers
+        long tick = Math.max((deadline + this.tickMillis - 1) / this.tickMillis, this.currentTick);
+        this.keys[timer] = key;
+        this.kinds[timer] = kind;
+        this.ticks[timer] = tick;
+
+        // adding the timer at the head of its bucket
+        int bucket = (int) tick & this.mask;
+        this.previous[timer] = NONE;
+        this.next[timer] = this.heads[bucket];
+        if(this.heads[bucket] != NONE){
+            this.previous[this.heads[bucket]] = timer;
+        }
+        this.heads[bucket] = timer;
+    }
+
+
+    /**
+     * This method stops the timer of a key
+     * @param key key of the timer
+     */
+    public void cancel(int key){
+        int timer = this.index.remove(key);
+        if(timer != NONE){
+            this.unlink(timer);
+            this.release(timer);
+        }
+    }
+
+
+    /**
+     * This method processes the buckets of all the ticks which have passed
+     * and hands the expired timers to the handler
+     * @param now       current time in milliseconds
+     * @param handler   handler of the expired timers
+     */
+    public void advance(long now, Handler handler){
+        long lastTick = now / this.tickMillis;
+
+        // after a long pause every bucket is visited once
+        long endTick = Math.min(lastTick, this.currentTick + this.mask);
+        while(this.currentTick <= endTick){
+            int bucket = (int) this.currentTick & this.mask;
+            this.currentTick++;
+            int timer = this.heads[bucket];
+            while(timer != NONE){
+                int following = this.next[timer];
+                if(this.ticks[timer] <= lastTick){
+                    int key = this.keys[timer];
+                    int kind = this.kinds[timer];
+                    this.index.remove(key);
+                    this.unlink(timer);
+                    this.release(timer);
+                    handler.expired(key, kind);
+                }
+                timer = following;
+            }
+        }
+        this.currentTick = Math.max(this.currentTick, lastTick + 1);
+    }
+
+
+    /**
+     * This method takes a timer out of its bucket
+     * @param timer index of the timer
+     */
+    private void unlink(int timer){
+        int previous = this.previous[timer];
+        int next = this.next[timer];
+        if(previous != NONE){
+            this.next[previous] = next;
+        }else{
+            this.heads[(int) this.ticks[timer] & this.mask] = next;
+        }
+        if(next != NONE){
+            this.previous[next] = previous;
+        }
+    }
+
+
+    /**
+     * This method returns a free timer, growing the arrays if needed
+     * @return index of the timer
+     */
+    private int allocate(){
+        if(this.free != NONE){
+            int timer = this.free;
+            this.free = this.next[timer];
+            return timer;
+        }
+        if(this.used == this.keys.length){
+            int capacity = this.used << 1;
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.ticks = Arrays.copyOf(this.ticks, capacity);
+            this.previous = Arrays.copyOf(this.previous, capacity);
+            this.next = Arrays.copyOf(this.next, capacity);
+        }
+        return this.used++;
+    }
+
+
+    /**
+     * This method puts a timer back on the free list
+     * @param timer index of the timer
+     */
+    private void release(int timer){
+        this.next[timer] = this.free;
+        this.free = timer;
+        this.size--;
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class schedules triggered updates as described in RFC 2453 section 3.10.1.
+ * A route change asks for an update, which is sent after a short coalescing
+ * delay so that a burst of changes goes out as one message. After an update has
+ * been sent further updates are held for a random time between the minimum and
+ * maximum hold time, changes made meanwhile are sent together once it expires.
+ * Updates are sent by a timer on the router's event loop
+ * @author Alimuddin Khan (aak5031@rit.edu)
+ */
+public class TriggeredUpdateScheduler {
+
+    // RIP protocol object which sends the updates
+    private RIPProtocol protocol;
+
+    // event loop which runs the timer of the updates
+    private RouterEventLoop eventLoop;
+
+    // time in milliseconds for which changes are collected before sending
+    private int coalesceDelay;
+
+    // minimum time in milliseconds between two triggered updates
+    private int minHoldTime;
+
+    // maximum time in milliseconds between two triggered updates
+    private int maxHoldTime;
+
+    // System.nanoTime() before which no triggered update can be sent
+    private volatile long holdUntil;
+
+    // flag to show if an update has already been scheduled
+    private AtomicBoolean pending;
+
+    // random number generator for the hold time
+    private Random random;
+
+
+    /**
+     * This constructor initializes the scheduler
+     * @param protocol      RIP protocol object which sends the updates
+     * @param eventLoop     event loop which runs the timer of the updates
+     * @param coalesceDelay time in milliseconds for which changes are collected before sending
+     * @param minHoldTime   minimum time in milliseconds between two triggered updates
+     * @param maxHoldTime   maximum time in milliseconds between two triggered updates
+     */
+    public TriggeredUpdateScheduler(RIPProtocol protocol, RouterEventLoop eventLoop,
+                                    int coalesceDelay, int minHoldTime, int maxHoldTime) {
+        this.protocol = protocol;
+        this.eventLoop = eventLoop;
+        this.coalesceDelay = coalesceDelay;
+        this.minHoldTime = minHoldTime;
+        this.maxHoldTime = maxHoldTime;
+        this.holdUntil = System.nanoTime();
+        this.pending = new AtomicBoolean(false);
+        this.random = new Random();
+    }
+
+
+    /**
+     * This method sets the coalescing delay and the hold time range
+     * @param coalesceDelay time in milliseconds for which changes are collected before sending
+     * @param minHoldTime   minimum time in milliseconds between two triggered updates
+     * @param maxHoldTime   maximum time in milliseconds between two triggered updates
+     */
+    public void setDelays(int coalesceDelay, int minHoldTime, int maxHoldTime){
+        this.coalesceDelay = coalesceDelay;
+        this.minHoldTime = minHoldTime;
+        this.maxHoldTime = maxHoldTime;
+    }
+
+
+    /**
+     * This method returns the coalescing delay in milliseconds
+     * @return
+     */
+    public int getCoalesceDelay() {
+        return coalesceDelay;
+    }
+
+
+    /**
+     * This method returns the minimum hold time in milliseconds
+     * @return
+     */
+    public int getMinHoldTime() {
+        return minHoldTime;
+    }
+
+
+    /**
+     * This method returns the maximum hold time in milliseconds
+     * @return
+     */
+    public int getMaxHoldTime() {
+        return maxHoldTime;
+    }
+
+
+    /**
+     * This method asks for a triggered update. It returns at once, if an
+     * update is already scheduled the change will be part of it
+     */
+    public void trigger(){
+        if(!this.pending.compareAndSet(false, true)){
+            return;
+        }
+        long holdLeft = TimeUnit.NANOSECONDS.toMillis(this.holdUntil - System.nanoTime());
+        long delay = Math.max(this.coalesceDelay, holdLeft);
+        this.eventLoop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                sendTriggeredUpdate();
+            }
+        }, delay);
+    }
+
+
+    /**
+     * This method sends the triggered update and starts the hold time
+     */
+    private void sendTriggeredUpdate(){
+        int holdTime = this.minHoldTime;
+        if(this.maxHoldTime > this.minHoldTime){
+            holdTime += this.random.nextInt(this.maxHoldTime - this.minHoldTime + 1);
+        }
+        this.holdUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(holdTime);
+
+        // changes made from here on will schedule the next update
+        this.pending.set(false);
+        this.protocol.sendTriggeredUpdate();
+    }
+}